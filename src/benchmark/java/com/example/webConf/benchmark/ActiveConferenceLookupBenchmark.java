@@ -0,0 +1,111 @@
+package com.example.webConf.benchmark;
+
+import com.example.webConf.dto.conference.ActiveConference;
+import com.example.webConf.model.conference.Conference;
+import com.example.webConf.model.userJoinConference.UserConferenceJoin;
+import com.example.webConf.repository.UserConferenceJoinRepository;
+import com.example.webConf.service.impl.ConferenceSessionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/// Active conferences of one user with "rows" rows in user_conference_join (10 conferences per user): the old lookup
+/// (every join row loaded, whatever the user), the per-user query on the unique (user_id, conference_id) index, and
+/// ConferenceSessionService.getActiveConferences answering from its cache (a few hot users, primed in the setup).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ActiveConferenceLookupBenchmark {
+    private static final int CONFERENCES_PER_USER = 10;
+    private static final int HOT_USERS = 100;
+    private static final String CONFERENCES_SQL = "INSERT INTO conference (id, conference_date) " +
+            "SELECT 'benchmark-' || g, current_date FROM generate_series(0, " + (CONFERENCES_PER_USER - 1) + ") g";
+    private static final String USERS_SQL = "INSERT INTO users (id, name, email, user_name) " +
+            "SELECT g, 'Benchmark', 'benchmark-' || g || '@example.com', 'Benchmark' FROM generate_series(0, ? - 1) g";
+    private static final String JOINS_SQL = "INSERT INTO user_conference_join (user_id, conference_id, sessions, join_time) " +
+            "SELECT g / " + CONFERENCES_PER_USER + ", 'benchmark-' || (g % " + CONFERENCES_PER_USER + "), 1, now() FROM generate_series(0, ? - 1) g";
+
+    @Param({"1000", "10000", "100000"})
+    public long rows;
+
+    private ThrowawayDatabase database;
+    private UserConferenceJoinRepository userConferenceJoinRepository;
+    private ConferenceSessionService conferenceSessionService;
+    private TransactionTemplate transactionTemplate;
+    private long users;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = ThrowawayDatabase.start();
+        userConferenceJoinRepository = database.bean(UserConferenceJoinRepository.class);
+        conferenceSessionService = database.bean(ConferenceSessionService.class);
+        transactionTemplate = database.bean(TransactionTemplate.class);
+        JdbcTemplate jdbcTemplate = database.bean(JdbcTemplate.class);
+        users = Math.max(1, rows / CONFERENCES_PER_USER);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(CONFERENCES_SQL);
+            jdbcTemplate.update(USERS_SQL, users);
+            jdbcTemplate.update(JOINS_SQL, rows);
+            jdbcTemplate.execute("ANALYZE user_conference_join");
+        });
+        for (long userId = 0; userId < Math.min(HOT_USERS, users); userId++) {
+            conferenceSessionService.getActiveConferences(userId);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @State(Scope.Thread)
+    public static class User {
+        private final Random random = new Random();
+
+        long any(ActiveConferenceLookupBenchmark benchmark) {
+            return (long) (random.nextDouble() * benchmark.users);
+        }
+
+        long hot(ActiveConferenceLookupBenchmark benchmark) {
+            return random.nextInt((int) Math.min(HOT_USERS, benchmark.users));
+        }
+    }
+
+    /// The old findUserActiveConferences: findAllUserConferenceJoins read the whole table, then mapped to the conferences
+    @Benchmark
+    public List<Conference> fullTableRead() {
+        return transactionTemplate.execute(status -> userConferenceJoinRepository.findAll().stream()
+                .map(UserConferenceJoin::getConference)
+                .toList());
+    }
+
+    @Benchmark
+    public List<ActiveConference> indexedQuery(User user) {
+        return userConferenceJoinRepository.findActiveConferencesByUserId(user.any(this));
+    }
+
+    @Benchmark
+    public List<ActiveConference> cached(User user) {
+        return conferenceSessionService.getActiveConferences(user.hot(this));
+    }
+}
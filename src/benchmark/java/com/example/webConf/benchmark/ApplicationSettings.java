@@ -0,0 +1,32 @@
+package com.example.webConf.benchmark;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+
+/// application.properties for the benchmarks that build services without a context (same keys and salts as the app)
+final class ApplicationSettings {
+    private static final Properties PROPERTIES = load();
+
+    private ApplicationSettings() {
+    }
+
+    static String get(String key) {
+        String value = PROPERTIES.getProperty(key);
+        if (value == null) {
+            throw new IllegalStateException("Property " + key + " is not set in application.properties");
+        }
+        return value.trim();
+    }
+
+    private static Properties load() {
+        try {
+            return PropertiesLoaderUtils.loadProperties(new ClassPathResource("application.properties"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
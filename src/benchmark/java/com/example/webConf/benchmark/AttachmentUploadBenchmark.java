@@ -0,0 +1,104 @@
+package com.example.webConf.benchmark;
+
+import com.example.webConf.model.attachment.Attachment;
+import com.example.webConf.model.chat.Chat;
+import com.example.webConf.model.user.UserEntity;
+import com.example.webConf.repository.AttachmentRepository;
+import com.example.webConf.repository.ChatRepository;
+import com.example.webConf.repository.UserEntityRepository;
+import com.example.webConf.service.AttachmentService;
+import com.example.webConf.service.storage.BlobStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/// Concurrent attachment uploads through AttachmentService.saveAttachment (blob staged and committed, quota charged,
+/// reference counted, row inserted) vs the old flow, which then loaded the row in a second transaction and wrote it back
+/// whole with its URLs (updateAttachmentUrls, the URL columns are gone, the other columns are written the same way).
+/// SampleTime reports the percentiles (p95) next to the average. Every upload has its own random content (no deduplication).
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SampleTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class AttachmentUploadBenchmark {
+    private static final int CONTENT_BYTES = 1024;
+    private static final String UPDATE_SQL = "UPDATE attachment SET file_name = ?, file_type = ?, timestamp = ?, storage_key = ?, " +
+            "file_size = ?, data = NULL, chat_id = ?, user_id = ? WHERE id = ?";
+
+    private ThrowawayDatabase database;
+    private AttachmentService attachmentService;
+    private AttachmentRepository attachmentRepository;
+    private BlobStore blobStore;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private Chat chat;
+    private UserEntity user;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = ThrowawayDatabase.start();
+        attachmentService = database.bean(AttachmentService.class);
+        attachmentRepository = database.bean(AttachmentRepository.class);
+        blobStore = database.bean(BlobStore.class);
+        jdbcTemplate = database.bean(JdbcTemplate.class);
+        transactionTemplate = database.bean(TransactionTemplate.class);
+        user = database.bean(UserEntityRepository.class)
+                .save(UserEntity.builder().name("Benchmark").email("benchmark@example.com").build());
+        chat = database.bean(ChatRepository.class)
+                .save(Chat.builder().participants(new ArrayList<>()).type(Chat.ChatType.SINGLE).build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Upload {
+        private final Random random = new Random();
+        private final byte[] content = new byte[CONTENT_BYTES];
+
+        BlobStore.StagedBlob stage(BlobStore blobStore) throws IOException {
+            random.nextBytes(content);
+            return blobStore.stage(new ByteArrayInputStream(content));
+        }
+    }
+
+    @Benchmark
+    public Attachment singleInsert(Upload upload) throws Exception {
+        return attachmentService.saveAttachment(upload.stage(blobStore), "benchmark.bin", "application/octet-stream", chat, user);
+    }
+
+    @Benchmark
+    public Attachment insertThenUrlUpdate(Upload upload) throws Exception {
+        Attachment saved = singleInsert(upload);
+        transactionTemplate.executeWithoutResult(status -> {
+            Attachment attachment = attachmentRepository.findById(saved.getId()).orElseThrow();
+            jdbcTemplate.update(UPDATE_SQL, attachment.getFileName(), attachment.getFileType(), Timestamp.valueOf(attachment.getTimestamp()),
+                    attachment.getStorageKey(), attachment.getFileSize(), chat.getId(), user.getId(), attachment.getId());
+        });
+        return saved;
+    }
+}
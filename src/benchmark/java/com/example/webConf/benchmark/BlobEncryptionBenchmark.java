@@ -0,0 +1,138 @@
+package com.example.webConf.benchmark;
+
+import com.example.webConf.service.storage.SegmentedBlobCipher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/// Attachment blobs written and read plain vs encrypted (SegmentedBlobCipher with the configured segment size), in a
+/// temporary directory: a whole blob written, read back, and a 1 MB range read from its middle the way a ranged
+/// download does (skip, then copy). Plain blobs are read through FileSystemResource like AttachmentController serves them.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlobEncryptionBenchmark {
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Param({"false", "true"})
+    public boolean encrypted;
+
+    @Param({"16"})
+    public int megabytes;
+
+    private SegmentedBlobCipher cipher;
+    private byte[] block;
+    private long size;
+    private Path directory;
+    private Path written;
+    private Resource blob;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        cipher = new SegmentedBlobCipher(true, "",
+                Integer.parseInt(ApplicationSettings.get("attachment.encryption.segment-size")),
+                ApplicationSettings.get("jasypt.encryptor.password"),
+                ApplicationSettings.get("message.cipher.key-salt"));
+        block = new byte[MEGABYTE]; // random, so nothing below (disk, filesystem) can compress it
+        new Random(42).nextBytes(block);
+        size = (long) megabytes * MEGABYTE;
+        directory = Files.createTempDirectory("webConf-blob-benchmark");
+        written = directory.resolve("written");
+        Path stored = directory.resolve("stored");
+        write(stored);
+        blob = encrypted ? cipher.open(stored) : new FileSystemResource(stored);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        return write(written);
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        return read(0, size);
+    }
+
+    @Benchmark
+    public long rangedRead() throws IOException {
+        return read(size / 2, Math.min(MEGABYTE, size));
+    }
+
+    private long write(Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            InputStream content = new RepeatingInputStream(block, size);
+            return encrypted ? cipher.encrypt(content, out) : content.transferTo(out);
+        }
+    }
+
+    private long read(long offset, long length) throws IOException {
+        long remaining = length;
+        try (InputStream in = blob.getInputStream()) {
+            in.skipNBytes(offset);
+            int read;
+            while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                remaining -= read;
+            }
+        }
+        return length - remaining;
+    }
+
+    /// "size" bytes of the same random block over and over (no heap for the whole content)
+    private static class RepeatingInputStream extends InputStream {
+        private final byte[] block;
+        private long remaining;
+
+        private RepeatingInputStream(byte[] block, long size) {
+            this.block = block;
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int position = (int) ((block.length - remaining % block.length) % block.length);
+            int count = (int) Math.min(Math.min(length, remaining), block.length - position);
+            System.arraycopy(block, position, buffer, offset, count);
+            remaining -= count;
+            return count;
+        }
+    }
+}
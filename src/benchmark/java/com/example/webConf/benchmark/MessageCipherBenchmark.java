@@ -0,0 +1,87 @@
+package com.example.webConf.benchmark;
+
+import com.example.webConf.service.impl.EncoderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/// Message cipher engines (AES-GCM and the legacy Jasypt PBE) through EncoderService, built with the configured
+/// password, algorithm and salt: one message encrypted, one decrypted, and a page of history decrypted the way
+/// the chat reads it (decryptAll, across cores). Nothing is written.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageCipherBenchmark {
+    private static final int HISTORY_PAGE = 200;
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ 0123456789 .,!?";
+
+    @Param({"aes-gcm", "jasypt"})
+    public String engine;
+
+    @Param({"200", "2000"})
+    public int textLength;
+
+    private EncoderService encoderService;
+    private String text;
+    private String cipherText;
+    private List<String> history;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        encoderService = new EncoderService(
+                ApplicationSettings.get("jasypt.encryptor.password"),
+                ApplicationSettings.get("jasypt.encryptor.algorithm"),
+                engine,
+                ApplicationSettings.get("message.cipher.key-salt"));
+        Random random = new Random(42);
+        text = randomText(random);
+        cipherText = encoderService.encryptText(text);
+        history = new ArrayList<>(HISTORY_PAGE);
+        for (int i = 0; i < HISTORY_PAGE; i++) {
+            history.add(encoderService.encryptText(randomText(random)));
+        }
+        if (!text.equals(encoderService.decryptText(cipherText))) {
+            throw new IllegalStateException(engine + " does not return the encrypted text");
+        }
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return encoderService.encryptText(text);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return encoderService.decryptText(cipherText);
+    }
+
+    @Benchmark
+    public List<String> decryptHistoryPage() {
+        return encoderService.decryptAll(history);
+    }
+
+    private String randomText(Random random) {
+        StringBuilder builder = new StringBuilder(textLength);
+        for (int i = 0; i < textLength; i++) {
+            builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return builder.toString();
+    }
+}
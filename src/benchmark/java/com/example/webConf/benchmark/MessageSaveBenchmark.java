@@ -0,0 +1,141 @@
+package com.example.webConf.benchmark;
+
+import com.example.webConf.config.message.MessageType;
+import com.example.webConf.model.chat.Chat;
+import com.example.webConf.model.chat.Message;
+import com.example.webConf.repository.ChatRepository;
+import com.example.webConf.service.ChatService;
+import com.example.webConf.service.MessageService;
+import com.example.webConf.service.impl.EncoderService;
+import com.example.webConf.service.impl.MessageIdAllocator;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Hibernate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/// Saving one chat message into a chat holding "history" messages: the old saveMessage (chat loaded with its whole
+/// history, merged back with updateChat, then the message inserted) vs appendMessage (one INSERT with references only).
+/// The chat has no participants or conference, real chats load and merge those too (old path only).
+/// Messages saved during an iteration are deleted after it, so every iteration sees the same history.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MessageSaveBenchmark {
+    private static final DateTimeFormatter PUB_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int FILL_BATCH_SIZE = 1_000;
+    private static final String FILL_SQL = "INSERT INTO message (id, text, author, pub_date, type, chat_id) VALUES (?, ?, 'history', ?, 'CHAT', ?)";
+    private static final String CLEAN_UP_SQL = "DELETE FROM message WHERE chat_id = ? AND author = 'benchmark'";
+
+    @Param({"0", "1000", "10000"})
+    public int history;
+
+    private ThrowawayDatabase database;
+    private MessageService messageService;
+    private ChatService chatService;
+    private MessageIdAllocator idAllocator;
+    private EncoderService encoderService;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private EntityManager entityManager;
+    private Long chatId;
+    private int sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = ThrowawayDatabase.start();
+        messageService = database.bean(MessageService.class);
+        chatService = database.bean(ChatService.class);
+        idAllocator = database.bean(MessageIdAllocator.class);
+        encoderService = database.bean(EncoderService.class);
+        jdbcTemplate = database.bean(JdbcTemplate.class);
+        transactionTemplate = database.bean(TransactionTemplate.class);
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(database.bean(EntityManagerFactory.class));
+        chatId = database.bean(ChatRepository.class)
+                .save(Chat.builder().participants(new ArrayList<>()).type(Chat.ChatType.SINGLE).build())
+                .getId();
+        fill();
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteSaved() {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(CLEAN_UP_SQL, chatId));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    /// The old saveMessage: messages were fetched eagerly with the chat and merged back with it
+    @Benchmark
+    public Message loadAndMerge() {
+        Chat chat = transactionTemplate.execute(status -> {
+            Chat loaded = entityManager.find(Chat.class, chatId);
+            Hibernate.initialize(loaded.getMessages());
+            return loaded;
+        });
+        Message message = message();
+        message.setChat(chat);
+        message.setId(idAllocator.nextId()); // ids are assigned for both paths now (was the pooled sequence generator)
+        message.setText(encoderService.encryptText(message.getText()));
+        chatService.updateChat(chat);
+        transactionTemplate.executeWithoutResult(status -> entityManager.persist(message));
+        return message;
+    }
+
+    @Benchmark
+    public Message append() {
+        return messageService.appendMessage(message(), chatId, null);
+    }
+
+    private void fill() {
+        String text = encoderService.encryptText("Benchmark history");
+        String pubDate = LocalDateTime.now().format(PUB_DATE);
+        for (int filled = 0; filled < history; filled += FILL_BATCH_SIZE) {
+            List<Long> ids = new ArrayList<>();
+            for (int i = filled; i < Math.min(history, filled + FILL_BATCH_SIZE); i++) {
+                ids.add(idAllocator.nextId());
+            }
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(FILL_SQL, ids, ids.size(), (ps, id) -> {
+                ps.setLong(1, id);
+                ps.setString(2, text);
+                ps.setString(3, pubDate);
+                ps.setLong(4, chatId);
+            }));
+        }
+    }
+
+    private Message message() {
+        Message message = new Message();
+        message.setText("Benchmark message " + sequence++);
+        message.setAuthor("benchmark");
+        message.setType(MessageType.CHAT);
+        message.setPubDate(LocalDateTime.now().format(PUB_DATE));
+        return message;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.webConf.benchmark;
+
+import com.example.webConf.WebConferencesApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/// The application started on an empty Postgres container, for the benchmarks that need the database.
+/// Nothing touches a real deployment: the schema is created by ddl-auto, attachments go to a temporary directory,
+/// background jobs are off, and the container and directory are discarded on close. Needs Docker.
+public final class ThrowawayDatabase implements AutoCloseable {
+    private static final String POSTGRES_IMAGE = "postgres:16-alpine";
+
+    private final PostgreSQLContainer<?> postgres;
+    private final Path storageRoot;
+    private final ConfigurableApplicationContext context;
+
+    private ThrowawayDatabase(PostgreSQLContainer<?> postgres, Path storageRoot, ConfigurableApplicationContext context) {
+        this.postgres = postgres;
+        this.storageRoot = storageRoot;
+        this.context = context;
+    }
+
+    /// "properties" (key=value) override the defaults below
+    public static ThrowawayDatabase start(String... properties) throws IOException {
+        PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(POSTGRES_IMAGE);
+        postgres.start();
+        Path storageRoot = Files.createTempDirectory("webConf-benchmark");
+        List<String> settings = new ArrayList<>(List.of(
+                "server.port=0",
+                "spring.datasource.url=" + postgres.getJdbcUrl(),
+                "spring.datasource.username=" + postgres.getUsername(),
+                "spring.datasource.password=" + postgres.getPassword(),
+                "attachment.storage.root=" + storageRoot,
+                "attachment.quota.user-bytes=0",
+                "attachment.quota.chat-bytes=0",
+                "attachment.thumbnail.enabled=false",
+                "attachment.lo-collector.enabled=false",
+                "attachment.migration.resume-on-startup=false",
+                "chat.re-encryption.resume-on-startup=false",
+                "conference.lifecycle.enabled=false",
+                "logging.level.root=WARN"));
+        settings.addAll(List.of(properties));
+        try {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(WebConferencesApplication.class)
+                    .properties(settings.toArray(String[]::new))
+                    .run();
+            return new ThrowawayDatabase(postgres, storageRoot, context);
+        } catch (RuntimeException e) {
+            postgres.stop();
+            FileSystemUtils.deleteRecursively(storageRoot);
+            throw e;
+        }
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            context.close();
+        } finally {
+            postgres.stop();
+            FileSystemUtils.deleteRecursively(storageRoot);
+        }
+    }
+}
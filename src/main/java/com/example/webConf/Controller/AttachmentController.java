@@ -1,27 +1,36 @@
 package com.example.webConf.controller;
 
 import com.example.webConf.config.exception.ChatException;
+import com.example.webConf.dto.AttachmentMetadata;
 import com.example.webConf.dto.AttachmentUploadResponse;
+import com.example.webConf.dto.ChunkedUploadStatus;
 import com.example.webConf.model.attachment.Attachment;
+import com.example.webConf.model.attachment.ChunkedUpload;
 import com.example.webConf.model.chat.Chat;
 import com.example.webConf.model.user.UserEntity;
 import com.example.webConf.security.SecurityUtil;
 import com.example.webConf.service.AttachmentService;
 import com.example.webConf.service.ChatService;
 import com.example.webConf.service.UserEntityService;
+import com.example.webConf.service.impl.AttachmentUrlSigner;
+import com.example.webConf.service.impl.ChunkedUploadService;
+import com.example.webConf.service.impl.ThumbnailService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.Optional;
 
 @RestController
 @RequiredArgsConstructor
@@ -32,6 +41,12 @@ public class AttachmentController {
     private final ChatService chatService;
     private final UserEntityService userService;
     private final AttachmentService attachmentService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final ThumbnailService thumbnailService;
+    private final AttachmentUrlSigner attachmentUrlSigner;
+
+    @Value("${attachment.download.cache-max-age-seconds}")
+    private long cacheMaxAgeSeconds;
 
     @PostMapping("/upload/{projectId}")
     public ResponseEntity<Object> uploadFile(@RequestParam("file") MultipartFile file,
@@ -44,53 +59,217 @@ public class AttachmentController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
         attachment = attachmentService.saveAttachment(file, chat, user);
+        return ResponseEntity.status(HttpStatus.OK).body(uploadResponse(attachment));
+    }
+
+    /// Chunked, resumable upload: init -> PUT parts -> complete (files above the multipart limit, unreliable connections)
+    @PostMapping("/upload/{projectId}/chunked")
+    public ResponseEntity<ChunkedUploadStatus> initChunkedUpload(@PathVariable("projectId") Long projectId,
+                                                                 @RequestParam("fileName") String fileName,
+                                                                 @RequestParam(value = "fileType", required = false) String fileType,
+                                                                 @RequestParam("size") long size) {
+        Chat chat = chatService.findById(projectId).orElseThrow(() -> new ChatException("Chat not found"));
+        UserEntity user = userService.findByEmail(SecurityUtil.getSessionUserEmail()).orElseThrow(() -> new ChatException("User not found"));
+        if (!chat.getParticipants().contains(user)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(chunkedUploadService.init(chat, user, fileName, fileType, size));
+    }
+
+    /// Where to continue after a dropped connection
+    @GetMapping("/upload/chunked/{uploadId}")
+    public ResponseEntity<ChunkedUploadStatus> getChunkedUpload(@PathVariable("uploadId") String uploadId) throws Exception {
+        ChunkedUpload upload = chunkedUploadService.getUpload(uploadId, currentUser());
+        return ResponseEntity.ok(chunkedUploadService.getStatus(upload));
+    }
+
+    /// Raw bytes of one part, streamed from the request into the blob store
+    @PutMapping("/upload/chunked/{uploadId}")
+    public ResponseEntity<ChunkedUploadStatus> uploadChunk(@PathVariable("uploadId") String uploadId,
+                                                           @RequestParam("offset") long offset,
+                                                           HttpServletRequest request) throws Exception {
+        ChunkedUpload upload = chunkedUploadService.getUpload(uploadId, currentUser());
+        return ResponseEntity.ok(chunkedUploadService.writeChunk(upload, offset, request.getContentLengthLong(), request.getInputStream()));
+    }
+
+    @PostMapping("/upload/chunked/{uploadId}/complete")
+    public ResponseEntity<Object> completeChunkedUpload(@PathVariable("uploadId") String uploadId) throws Exception {
+        UserEntity user = currentUser();
+        ChunkedUpload upload = chunkedUploadService.getUpload(uploadId, user);
+        Chat chat = chatService.findById(upload.getChatId()).orElseThrow(() -> new ChatException("Chat not found"));
+        if (!chat.getParticipants().contains(user)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Attachment attachment = chunkedUploadService.complete(upload, chat, user);
+        return ResponseEntity.status(HttpStatus.OK).body(uploadResponse(attachment));
+    }
+
+    @DeleteMapping("/upload/chunked/{uploadId}")
+    public ResponseEntity<Void> abortChunkedUpload(@PathVariable("uploadId") String uploadId) throws Exception {
+        chunkedUploadService.abort(chunkedUploadService.getUpload(uploadId, currentUser()));
+        return ResponseEntity.noContent().build();
+    }
+
+    private AttachmentUploadResponse uploadResponse(Attachment attachment) {
+        // derived from the id, nothing is written back to the attachment row
         String downloadUrl = ServletUriComponentsBuilder.fromCurrentContextPath()
-                .path("/files/download/")
-                .path(String.valueOf(attachment.getId()))
+                .path(attachment.getDownloadUrl())
                 .toUriString();
         String viewUrl = ServletUriComponentsBuilder.fromCurrentContextPath()
-                .path("/files/view/")
-                .path(String.valueOf(attachment.getId()))
+                .path(attachment.getViewUrl())
                 .toUriString();
 
-        log.info("Download URL: " + downloadUrl);
-        log.info("View URL: " + viewUrl);
+        // the uploader is a chat participant -> signed URLs for the preview, the stored ones stay session checked
+        AttachmentMetadata metadata = new AttachmentMetadata(attachment.getId(), attachment.getFileName(), attachment.getFileType(),
+                attachment.getStorageKey(), attachment.getFileSize(), attachment.getTimestamp(), attachment.getChat().getId());
+        if (metadata.getStorageKey() != null) {
+            downloadUrl = attachmentUrlSigner.sign(AttachmentUrlSigner.Mode.DOWNLOAD, metadata);
+            viewUrl = attachmentUrlSigner.sign(AttachmentUrlSigner.Mode.VIEW, metadata);
+        }
+        return new AttachmentUploadResponse(attachment.getId(), attachment.getFileName(), downloadUrl, viewUrl);
+    }
 
-        attachmentService.updateAttachmentUrls(attachment.getId(), downloadUrl, viewUrl); // update attachment url
-        AttachmentUploadResponse attachmentUploadResponse = new AttachmentUploadResponse(attachment.getId(), attachment.getFileName(), attachment.getDownloadUrl(), attachment.getViewUrl());
-        return ResponseEntity.status(HttpStatus.OK).body(attachmentUploadResponse);
+    private UserEntity currentUser() {
+        return userService.findByEmail(SecurityUtil.getSessionUserEmail()).orElseThrow(() -> new ChatException("User not found"));
     }
 
     // download file
     @GetMapping("/download/{fileId}")
-    public ResponseEntity<Resource> downloadFile(@PathVariable("fileId") Long fileId) throws Exception // method will return file content and file metadata
+    public ResponseEntity<Resource> downloadFile(@PathVariable("fileId") Long fileId, WebRequest request) throws Exception // method will return file content and file metadata
     {
-        Attachment attachment = attachmentService.getAttachment(fileId);
-        UserEntity currentUser = userService.findByEmail(SecurityUtil.getSessionUserEmail()).orElseThrow(() -> new ChatException("User not found"));
-        Chat chat = attachment.getChat();
-        if (currentUser == null || !chat.getParticipants().contains(currentUser))
-            forbittenAction();
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(attachment.getFileType()))
-                .header(HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment;filename=\"" + attachment.getFileName() + "\"")
-                .body(new ByteArrayResource(attachment.getData()));
+        return serveFile(fileId, request, true);
     }
 
     // Display file contents
     @GetMapping("/view/{fileId}")
-    public ResponseEntity<Resource> viewFile(@PathVariable("fileId") Long fileId) throws Exception {
-        UserEntity currentUser = userService.findByEmail(SecurityUtil.getSessionUserEmail()).orElseThrow(() -> new ChatException("User not found"));
-        Chat chat = attachmentService.getAttachment(fileId).getChat();
-        if (currentUser == null || !chat.getParticipants().contains(currentUser))
-            forbittenAction();
-        Attachment attachment = attachmentService.getAttachment(fileId);
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(attachment.getFileType())) // ->  converts a string representation of a file type to a MediaType object
-                .body(new ByteArrayResource(attachment.getData()));
-    }
-
-    private ResponseEntity<?> forbittenAction() {
+    public ResponseEntity<Resource> viewFile(@PathVariable("fileId") Long fileId, WebRequest request) throws Exception {
+        return serveFile(fileId, request, false);
+    }
+
+    /// Downscaled preview of an image, the full image (redirect) until the thumbnail is generated
+    @GetMapping("/thumbnail/{fileId}")
+    public ResponseEntity<Resource> thumbnailFile(@PathVariable("fileId") Long fileId, WebRequest request) throws Exception {
+        AttachmentMetadata metadata = attachmentService.getAttachmentMetadata(fileId);
+        if (!attachmentService.isVisibleTo(fileId, SecurityUtil.getSessionUserEmail()))
+            return forbittenAction();
+
+        Optional<Resource> thumbnail = thumbnailService.find(metadata.getStorageKey());
+        if (thumbnail.isEmpty()) {
+            thumbnailService.submit(metadata.getStorageKey(), metadata.getFileType()); // dropped from a full queue or an old file
+            URI viewUrl = ServletUriComponentsBuilder.fromCurrentContextPath()
+                    .path("/files/view/")
+                    .path(String.valueOf(fileId))
+                    .build()
+                    .toUri();
+            return ResponseEntity.status(HttpStatus.FOUND).location(viewUrl).cacheControl(CacheControl.noStore()).build();
+        }
+        String eTag = "\"" + metadata.getStorageKey() + "-" + ThumbnailService.VARIANT + "\"";
+        return conditionalResponse(request, eTag, lastModified(metadata), cacheMaxAgeSeconds, MediaType.IMAGE_JPEG, null, thumbnail::get);
+    }
+
+    /// Signed URL (AttachmentUrlSigner): the signature is the permission, everything else comes from the URL -> no database access.
+    /// Expired URLs fall back to the session checked endpoints.
+    @GetMapping("/signed/{mode}/{fileId}")
+    public ResponseEntity<Resource> signedFile(@PathVariable("mode") String modePath,
+                                               @PathVariable("fileId") Long fileId,
+                                               @RequestParam("key") String key,
+                                               @RequestParam(value = "name", defaultValue = "") String name,
+                                               @RequestParam(value = "type", defaultValue = "") String type,
+                                               @RequestParam("expires") long expires,
+                                               @RequestParam("signature") String signature,
+                                               WebRequest request) throws Exception {
+        AttachmentUrlSigner.Mode mode = AttachmentUrlSigner.Mode.fromPath(modePath).orElse(null);
+        if (mode == null) {
+            return ResponseEntity.notFound().build();
+        }
+        AttachmentUrlSigner.Verification verification = attachmentUrlSigner.verify(mode, fileId, key, name, type, expires, signature);
+        if (verification == AttachmentUrlSigner.Verification.INVALID) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (verification == AttachmentUrlSigner.Verification.EXPIRED) {
+            URI sessionUrl = ServletUriComponentsBuilder.fromCurrentContextPath()
+                    .path("/files/" + mode.path() + "/")
+                    .path(String.valueOf(fileId))
+                    .build()
+                    .toUri();
+            return ResponseEntity.status(HttpStatus.FOUND).location(sessionUrl).cacheControl(CacheControl.noStore()).build();
+        }
+
+        AttachmentMetadata metadata = new AttachmentMetadata(fileId, name, type.isEmpty() ? null : type, key, null, null, null);
+        long maxAgeSeconds = Math.min(cacheMaxAgeSeconds, attachmentUrlSigner.remainingSeconds(expires));
+        if (mode == AttachmentUrlSigner.Mode.THUMBNAIL) {
+            Optional<Resource> thumbnail = thumbnailService.find(key);
+            if (thumbnail.isEmpty()) {
+                thumbnailService.submit(key, metadata.getFileType());
+                URI viewUrl = URI.create(attachmentUrlSigner.sign(AttachmentUrlSigner.Mode.VIEW, metadata));
+                return ResponseEntity.status(HttpStatus.FOUND).location(viewUrl).cacheControl(CacheControl.noStore()).build();
+            }
+            String eTag = "\"" + key + "-" + ThumbnailService.VARIANT + "\"";
+            return conditionalResponse(request, eTag, -1, maxAgeSeconds, MediaType.IMAGE_JPEG, null, thumbnail::get);
+        }
+        return serveContent(metadata, request, mode == AttachmentUrlSigner.Mode.DOWNLOAD, -1, maxAgeSeconds,
+                () -> attachmentService.loadBlob(key)); // not the transactional loadContent -> no connection is taken
+    }
+
+    /// Permission and caching headers come from the metadata row, the content is opened only when the client has no valid copy.
+    /// Range requests (seeking in video / pdf previews) are answered by Spring from the returned resource.
+    private ResponseEntity<Resource> serveFile(Long fileId, WebRequest request, boolean asAttachment) throws Exception {
+        AttachmentMetadata metadata = attachmentService.getAttachmentMetadata(fileId);
+        if (!attachmentService.isVisibleTo(fileId, SecurityUtil.getSessionUserEmail()))
+            return forbittenAction();
+        return serveContent(metadata, request, asAttachment, lastModified(metadata), cacheMaxAgeSeconds,
+                () -> attachmentService.loadContent(metadata));
+    }
+
+    private ResponseEntity<Resource> serveContent(AttachmentMetadata metadata, WebRequest request, boolean asAttachment,
+                                                  long lastModified, long maxAgeSeconds, ContentLoader content) throws Exception {
+        MediaType contentType = metadata.getFileType() != null ? MediaType.parseMediaType(metadata.getFileType()) : MediaType.APPLICATION_OCTET_STREAM; // ->  converts a string representation of a file type to a MediaType object
+        ContentDisposition disposition = asAttachment
+                ? ContentDisposition.attachment().filename(metadata.getFileName(), StandardCharsets.UTF_8).build()
+                : null;
+        return conditionalResponse(request, eTag(metadata), lastModified, maxAgeSeconds, contentType, disposition, content);
+    }
+
+    private ResponseEntity<Resource> conditionalResponse(WebRequest request, String eTag, long lastModified, long maxAgeSeconds, MediaType contentType,
+                                                         ContentDisposition disposition, ContentLoader content) throws Exception {
+        CacheControl cacheControl = CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds)).cachePrivate(); // files are behind a login
+        if (request.checkNotModified(eTag, lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(contentType)
+                .eTag(eTag)
+                .cacheControl(cacheControl);
+        if (lastModified >= 0) {
+            response.lastModified(lastModified);
+        }
+        if (disposition != null) {
+            response.header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString());
+        }
+        return response.body(content.load());
+    }
+
+    private long lastModified(AttachmentMetadata metadata) {
+        return metadata.getTimestamp() != null
+                ? metadata.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : -1;
+    }
+
+    /// Contents never change: the SHA-256 storage key is a strong validator, old large object rows use their id
+    private String eTag(AttachmentMetadata metadata) {
+        return "\"" + (metadata.getStorageKey() != null ? metadata.getStorageKey() : "lo-" + metadata.getId()) + "\"";
+    }
+
+    @FunctionalInterface
+    private interface ContentLoader {
+        Resource load() throws Exception;
+    }
+
+    private <T> ResponseEntity<T> forbittenAction() {
         String redirectUrl = "/home";
         URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
                 .path(redirectUrl)
@@ -3,25 +3,31 @@ package com.example.webConf.controller;
 import com.example.webConf.config.exception.AuthException;
 import com.example.webConf.config.exception.ConferenceException;
 import com.example.webConf.dto.conference.ConferenceDto;
+import com.example.webConf.dto.conference.ConferenceRoster;
+import com.example.webConf.dto.message.MessagePage;
 import com.example.webConf.mappers.ConferenceMapper;
-import com.example.webConf.model.chat.Message;
 import com.example.webConf.model.conference.Conference;
 import com.example.webConf.model.devices.ConferenceDevices;
 import com.example.webConf.model.user.UserEntity;
-import com.example.webConf.model.userJoinConference.UserConferenceJoin;
 import com.example.webConf.repository.ConferenceDeviceRepository;
 import com.example.webConf.repository.ConferenceRepository;
-import com.example.webConf.repository.UserConferenceJoinRepository;
 import com.example.webConf.repository.UserEntityRepository;
 import com.example.webConf.service.ConferenceDevicesService;
 import com.example.webConf.service.ConferenceService;
 import com.example.webConf.service.MessageService;
 import com.example.webConf.service.UserEntityService;
+import com.example.webConf.service.event.UserAccountChangedEvent;
+import com.example.webConf.service.impl.AttachmentUrlSigner;
+import com.example.webConf.service.impl.ChatAccessTokenService;
+import com.example.webConf.service.impl.ChatSyncService;
+import com.example.webConf.service.impl.ConferenceRosterService;
+import com.example.webConf.service.impl.ConferenceSessionService;
 import com.example.webConf.service.impl.EncoderService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
@@ -34,9 +40,9 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
 import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Controller
@@ -48,10 +54,15 @@ public class ConferenceController {
     private final ConferenceDeviceRepository devicesRepository;
     private final UserEntityRepository userEntityRepository;
     private final ConferenceService conferenceService;
-    private final UserConferenceJoinRepository userConferenceJoinRepository;
     private final UserEntityService userService;
     private final ObjectMapper objectMapper;
     private final MessageService messageService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChatSyncService chatSyncService;
+    private final AttachmentUrlSigner attachmentUrlSigner;
+    private final ChatAccessTokenService chatAccessTokenService;
+    private final ConferenceRosterService conferenceRosterService;
+    private final ConferenceSessionService conferenceSessionService;
 
     @GetMapping("/join")
     public String joinConference(@RequestParam(value = "userName", required = false) String userName,
@@ -72,14 +83,9 @@ public class ConferenceController {
         ///  Find user
         Optional<UserEntity> user = userService.findUserByUsername(userName);
         if (user.isPresent()) {
-            log.info("Create userJoin object for {} user: {} and conference: {}", user.get().getAccountType().toString(), user.get().getId(), conference.getId());
-            UserConferenceJoin userConferenceJoin = UserConferenceJoin.builder()
-                    .user(user.get())
-                    .conference(conference)
-                    .joinTime(LocalDateTime.now())
-                    .build();
-
-            userConferenceJoinRepository.save(userConferenceJoin);
+            log.info("Add conference session for {} user: {} and conference: {}", user.get().getAccountType().toString(), user.get().getId(), conference.getId());
+            conferenceSessionService.join(conference.getId(), user.get().getId());
+            conferenceRosterService.join(conference.getId(), user.get().getUserName());
         } else {
             log.warn("User account not found with username: {}", userName);
         }
@@ -107,9 +113,7 @@ public class ConferenceController {
         UserEntity user = userService.findUserByUsername(userName).orElseThrow(() -> new AuthException("User not found"));
         /// Find conference
         Conference conference = conferenceRepository.findById(conferenceId).orElseThrow(() -> new ConferenceException("Conference not found"));
-        Optional<UserConferenceJoin> conferenceJoin = userService.findUserConferenceJoin(user, conference);
-
-        if (conferenceJoin.isEmpty()) {
+        if (!conferenceSessionService.isInConference(conference.getId(), user.getId())) {
             throw new ConferenceException("You are not a member of a conference");
         }
 
@@ -120,9 +124,15 @@ public class ConferenceController {
 
         ///  Chat logic
         if (conference.getChat() != null) {
-            List<Message> messages = messageService.findAllChatMessage(conference.getChat().getId());
-            model.addAttribute("messagesJson", objectMapper.writeValueAsString(messages));
+            // sync cursors before the page -> whatever happens while it is read is synced after the connect
+            model.addAttribute("lastChatEventId", chatSyncService.lastEventId(conference.getChat().getId()));
+            model.addAttribute("chatSyncCursor", chatSyncService.cursor());
+            MessagePage page = messageService.findChatMessagesPage(conference.getChat().getId(), null, null, null);
+            attachmentUrlSigner.signAll(conference.getChat().getId(), page.getMessages());
+            model.addAttribute("messagesJson", objectMapper.writeValueAsString(page.getMessages()));
+            model.addAttribute("hasMoreMessages", page.isHasMore());
             model.addAttribute("chatId", conference.getChat().getId());
+            model.addAttribute("chatAccessToken", chatAccessTokenService.issue(conference.getChat().getId(), user.getId()));
         }
 
         /// Find user's devices
@@ -162,7 +172,11 @@ public class ConferenceController {
                 throw new ConferenceException("User not found in Permanent Accounts with name: |" + parts[0] + "| and surname: |" + parts[1] + "|");
             }
             log.info("Removing user ({}) from active conferense ({}) users", optionalUser.get().getId(), conference.get().getId());
-            userService.removeUserConferenceJoin(optionalUser.get(), conference.get());
+            if (conferenceSessionService.leave(conference.get().getId(), optionalUser.get().getId())) {
+                conferenceRosterService.leave(conference.get().getId(), optionalUser.get().getUserName());
+            } else {
+                log.error("User-Conference Join not found, can't remove it.");
+            }
         }
 
         /// Find in Temporary Accounts
@@ -171,36 +185,40 @@ public class ConferenceController {
             /// Find in Temporary Accounts
             optionalUser = userEntityRepository.findFirstByUserNameIgnoreCaseAndAccountType(username, UserEntity.AccountType.TEMPORARY);
             // Find Coference Joib Object
-            if (userService.findUserConferenceJoin(optionalUser.get(), conference.get()).isPresent()) {
-                userService.removeUserConferenceJoin(optionalUser.get(), conference.get());
+            if (conferenceSessionService.leave(conference.get().getId(), optionalUser.get().getId())) {
+                conferenceRosterService.leave(conference.get().getId(), optionalUser.get().getUserName());
             }
             userEntityRepository.delete(optionalUser.get()); // delete temporary account
+            eventPublisher.publishEvent(new UserAccountChangedEvent(optionalUser.get().getId()));
         }
 
         return "redirect:/home";
     }
 
-    /// Method for updating count of same user in conference
+    /// Live roster of the conference, the conference page follows its changes on "/topic/conference/{id}/roster"
+    @GetMapping("/{conferenceId}/roster")
+    @ResponseBody
+    public ConferenceRoster getRoster(@PathVariable String conferenceId) {
+        return conferenceRosterService.snapshot(conferenceId);
+    }
+
+    /// Join counts of all participants (user name -> count) in one query
+    @GetMapping("/{conferenceId}/joinCounts")
+    @ResponseBody
+    public Map<String, Long> getJoinCounts(@PathVariable String conferenceId) {
+        return conferenceService.countJoins(conferenceId);
+    }
+
+    /// Count of same user in conference (from the live roster, no query)
     @GetMapping("/updateUserJoinCount")
     @ResponseBody
     public Integer updateUserJoinCount(@RequestParam(value = "userName", required = false) String userName,
                                        @RequestParam("conferenceId") String conferenceId) {
-        log.info("Updating user join count for user: {}, conference: {}", userName, conferenceId);
         if (userName == null || userName.isEmpty() || userName.equals("undefined")) {
             log.error("Missing required parameters - userName: {}", userName);
             return null;
         }
-        /// Find conference
-        Conference conference = conferenceService.findById(conferenceId).orElseThrow(() -> new ConferenceException("Conference not found"));
-        ///  Find user by username
-        Optional<UserEntity> userEntity = userService.findUserByUsername(userName);
-        if (userEntity.isEmpty() || conference == null) {
-            log.error("User or Conference not found");
-            return null;
-        }
-        Integer count = userService.countUserConferenceJoinByUserAndConference(userEntity.get(), conference);
-        log.info("User has join count: {}", count);
-        return count;
+        return conferenceRosterService.count(conferenceId, userName);
     }
 
     /// Get conferences by id
@@ -1,6 +1,16 @@
 package com.example.webConf.controller;
 
 import com.example.webConf.config.exception.AuthException;
+import com.example.webConf.dto.AttachmentMigrationStatus;
+import com.example.webConf.dto.AttachmentStorageStats;
+import com.example.webConf.dto.LargeObjectCollectorStats;
+import com.example.webConf.dto.StorageUsageStats;
+import com.example.webConf.dto.conference.ActiveConference;
+import com.example.webConf.dto.conference.ConferenceLifecycleStats;
+import com.example.webConf.dto.message.MessageCacheStats;
+import com.example.webConf.dto.message.ReEncryptionStatus;
+import com.example.webConf.dto.message.RecentBufferStats;
+import com.example.webConf.dto.message.WriteBehindStats;
 import com.example.webConf.dto.registration.RegistrationDto;
 import com.example.webConf.model.conference.Conference;
 import com.example.webConf.model.role.RoleEntity;
@@ -10,6 +20,15 @@ import com.example.webConf.repository.RoleRepository;
 import com.example.webConf.security.SecurityUtil;
 import com.example.webConf.service.ConferenceService;
 import com.example.webConf.service.UserEntityService;
+import com.example.webConf.service.impl.AttachmentBlobService;
+import com.example.webConf.service.impl.AttachmentMigrationService;
+import com.example.webConf.service.impl.ConferenceLifecycleService;
+import com.example.webConf.service.impl.LargeObjectCollector;
+import com.example.webConf.service.impl.StorageQuotaService;
+import com.example.webConf.service.impl.MessageReEncryptionService;
+import com.example.webConf.service.impl.MessageTextCache;
+import com.example.webConf.service.impl.MessageWriteBehindService;
+import com.example.webConf.service.impl.RecentMessageBuffer;
 import jakarta.annotation.PostConstruct;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -22,6 +41,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Controller
 @RequestMapping("/control")
@@ -31,6 +51,15 @@ public class ControlController { // Controller for admin control page
     private final UserEntityService userService;
     private final RoleRepository roleRepository;
     private final ConferenceService conferenceService;
+    private final MessageWriteBehindService messageWriteBehindService;
+    private final MessageReEncryptionService messageReEncryptionService;
+    private final MessageTextCache messageTextCache;
+    private final RecentMessageBuffer recentMessageBuffer;
+    private final AttachmentMigrationService attachmentMigrationService;
+    private final AttachmentBlobService attachmentBlobService;
+    private final LargeObjectCollector largeObjectCollector;
+    private final StorageQuotaService storageQuotaService;
+    private final ConferenceLifecycleService conferenceLifecycleService;
     private RoleEntity adminRole;
     private RoleEntity creatorRole;
 
@@ -53,14 +82,16 @@ public class ControlController { // Controller for admin control page
         ///  Finding user conferences
         List<Conference> userConferences = conferenceService.findUserConferences(user);
         ///  Finding user Active Conferences
-        List<Conference> activeConferences = conferenceService.findUserActiveConferences(user.getId());
+        Set<String> activeConferenceIds = conferenceService.findUserActiveConferences(user.getId()).stream()
+                .map(ActiveConference::getConferenceId)
+                .collect(Collectors.toSet());
 
         ///  Finding all users
         List<UserEntity> users = userService.findAllUsers();
 
         model.addAttribute("conferences", conferences);
         model.addAttribute("userConferences", userConferences);
-        model.addAttribute("activeConferences", activeConferences);
+        model.addAttribute("activeConferenceIds", activeConferenceIds);
         model.addAttribute("users", users);
         model.addAttribute("userName", user.getUserName());
         model.addAttribute("user", user);
@@ -183,4 +214,140 @@ public class ControlController { // Controller for admin control page
         userService.editSettings(settings);
         return ResponseEntity.ok(null);
     }
+
+    /// Chat message write-behind metrics (queue depth, flush latency)
+    @GetMapping("/stats/messageWriteBehind")
+    @ResponseBody
+    public WriteBehindStats getMessageWriteBehindStats() {
+        checkAdminAccess();
+        return messageWriteBehindService.getStats();
+    }
+
+    /// Decrypted message cache metrics (hit rate, evictions, size)
+    @GetMapping("/stats/messageCache")
+    @ResponseBody
+    public MessageCacheStats getMessageCacheStats() {
+        checkAdminAccess();
+        return messageTextCache.getStats();
+    }
+
+    /// Off-heap recent message buffer metrics (hit rate, slabs in use)
+    @GetMapping("/stats/recentMessages")
+    @ResponseBody
+    public RecentBufferStats getRecentBufferStats() {
+        checkAdminAccess();
+        return recentMessageBuffer.getStats();
+    }
+
+    /// Message re-encryption job (progress, start / pause / reset)
+    @GetMapping("/stats/reEncryption")
+    @ResponseBody
+    public ReEncryptionStatus getReEncryptionStatus() {
+        checkAdminAccess();
+        return messageReEncryptionService.getStatus();
+    }
+
+    @PostMapping("/reEncryption/start")
+    @ResponseBody
+    public ReEncryptionStatus startReEncryption() {
+        UserEntity currentUser = checkAdminAccess();
+        log.info("User with id {} started message re-encryption", currentUser.getId());
+        return messageReEncryptionService.start();
+    }
+
+    @PostMapping("/reEncryption/stop")
+    @ResponseBody
+    public ReEncryptionStatus stopReEncryption() {
+        UserEntity currentUser = checkAdminAccess();
+        log.info("User with id {} stopped message re-encryption", currentUser.getId());
+        return messageReEncryptionService.stop();
+    }
+
+    @PostMapping("/reEncryption/reset")
+    @ResponseBody
+    public ReEncryptionStatus resetReEncryption() {
+        UserEntity currentUser = checkAdminAccess();
+        log.info("User with id {} reset message re-encryption checkpoint", currentUser.getId());
+        return messageReEncryptionService.reset();
+    }
+
+    /// Attachment storage (blob store usage, bytes saved by deduplication)
+    @GetMapping("/stats/attachmentStorage")
+    @ResponseBody
+    public AttachmentStorageStats getAttachmentStorageStats() {
+        checkAdminAccess();
+        return attachmentBlobService.getStats();
+    }
+
+    /// Attachment large object -> blob store migration (progress, start / pause / reset)
+    @GetMapping("/stats/attachmentMigration")
+    @ResponseBody
+    public AttachmentMigrationStatus getAttachmentMigrationStatus() {
+        checkAdminAccess();
+        return attachmentMigrationService.getStatus();
+    }
+
+    @PostMapping("/attachmentMigration/start")
+    @ResponseBody
+    public AttachmentMigrationStatus startAttachmentMigration() {
+        UserEntity currentUser = checkAdminAccess();
+        log.info("User with id {} started attachment migration", currentUser.getId());
+        return attachmentMigrationService.start();
+    }
+
+    @PostMapping("/attachmentMigration/stop")
+    @ResponseBody
+    public AttachmentMigrationStatus stopAttachmentMigration() {
+        UserEntity currentUser = checkAdminAccess();
+        log.info("User with id {} stopped attachment migration", currentUser.getId());
+        return attachmentMigrationService.stop();
+    }
+
+    @PostMapping("/attachmentMigration/reset")
+    @ResponseBody
+    public AttachmentMigrationStatus resetAttachmentMigration() {
+        UserEntity currentUser = checkAdminAccess();
+        log.info("User with id {} reset attachment migration checkpoint", currentUser.getId());
+        return attachmentMigrationService.reset();
+    }
+
+    /// Orphaned Postgres large objects (reclaimed bytes, manual run / dry run)
+    @GetMapping("/stats/largeObjects")
+    @ResponseBody
+    public LargeObjectCollectorStats getLargeObjectCollectorStats() {
+        checkAdminAccess();
+        return largeObjectCollector.getStats();
+    }
+
+    @PostMapping("/largeObjects/collect")
+    @ResponseBody
+    public LargeObjectCollectorStats collectLargeObjects(@RequestParam(value = "dryRun", defaultValue = "true") boolean dryRun) {
+        UserEntity currentUser = checkAdminAccess();
+        log.info("User with id {} started the large object collector (dry run: {})", currentUser.getId(), dryRun);
+        return largeObjectCollector.start(dryRun);
+    }
+
+    /// Biggest attachment storage consumers (summary counters, no scan of the attachments)
+    @GetMapping("/stats/storageUsage")
+    @ResponseBody
+    public StorageUsageStats getStorageUsage(@RequestParam(value = "limit", defaultValue = "10") int limit) {
+        checkAdminAccess();
+        return storageQuotaService.getTopConsumers(Math.min(limit, 100));
+    }
+
+    /// Conferences by lifecycle state and what closing idle ones removed
+    @GetMapping("/stats/conferenceLifecycle")
+    @ResponseBody
+    public ConferenceLifecycleStats getConferenceLifecycleStats() {
+        checkAdminAccess();
+        return conferenceLifecycleService.getStats();
+    }
+
+    private UserEntity checkAdminAccess() {
+        UserEntity currentUser = userService.findByEmail(SecurityUtil.getSessionUserEmail()).orElseThrow(() -> new AuthException("Illegal access"));
+        if (!currentUser.getRoles().contains(adminRole) && !currentUser.getRoles().contains(creatorRole)) {
+            throw new AuthException("Illegal access");
+        }
+        return currentUser;
+    }
 }
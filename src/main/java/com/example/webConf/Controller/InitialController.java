@@ -4,6 +4,7 @@ import com.example.webConf.config.exception.AuthException;
 import com.example.webConf.config.exception.ChatException;
 import com.example.webConf.config.exception.ConferenceException;
 import com.example.webConf.config.relationship.RelationshipStatus;
+import com.example.webConf.dto.conference.ActiveConference;
 import com.example.webConf.dto.devices.DeviceSelectionDTO;
 import com.example.webConf.dto.relationship.UserRelationshipView;
 import com.example.webConf.mappers.UserEntityMapper;
@@ -29,6 +30,8 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Controller
 @Slf4j
@@ -53,7 +56,9 @@ public class InitialController {
             if (user != null) {
                 List<Conference> conferences = conferenceService.findConferencesByUser(user.getId());
                 List<Conference> userConferences = conferenceService.findUserConferences(user);
-                List<Conference> activeConference = conferenceService.findUserActiveConferences(user.getId());
+                Set<String> activeConferenceIds = conferenceService.findUserActiveConferences(user.getId()).stream()
+                        .map(ActiveConference::getConferenceId)
+                        .collect(Collectors.toSet());
                 log.info("Size of past conferences: {}", conferences.size());
                 List<String> userConferenceIds = userConferences.stream()
                         .map(Conference::getId)
@@ -62,7 +67,7 @@ public class InitialController {
                 model.addAttribute("pastConferences", conferences);
                 model.addAttribute("userConferenceIds", userConferenceIds);
                 model.addAttribute("isAuthorized", true);
-                model.addAttribute("activeConferences", activeConference);
+                model.addAttribute("activeConferenceIds", activeConferenceIds);
 
                 /// User logic
                 // invitations
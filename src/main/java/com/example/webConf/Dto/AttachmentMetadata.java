@@ -0,0 +1,21 @@
+package com.example.webConf.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/// Attachment row without its content (downloads decide on headers and permissions from this)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttachmentMetadata {
+    private Long id;
+    private String fileName;
+    private String fileType;
+    private String storageKey;
+    private Long fileSize;
+    private LocalDateTime timestamp;
+    private Long chatId;
+}
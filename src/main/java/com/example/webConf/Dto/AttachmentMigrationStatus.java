@@ -0,0 +1,32 @@
+package com.example.webConf.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/// Progress of the attachment large object -> blob store migration (shown on the admin control page)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttachmentMigrationStatus {
+    public enum State { IDLE, RUNNING, STOPPING, STOPPED, COMPLETED, FAILED }
+
+    private State state;
+    private long lastId;          // checkpoint
+    private long maxId;           // highest attachment id when the run was started
+    private long processed;       // rows read (all runs since the last reset)
+    private long migrated;        // rows moved to the blob store in this run
+    private long failed;          // rows whose large object could not be read in this run
+    private long remaining;       // rows still stored as large objects when the run was started
+    private long bytesMigrated;   // in this run
+    private double progressPercent;
+    private double bytesPerSecond;
+    private long maxBytesPerSecond;
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+    private String lastError;
+}
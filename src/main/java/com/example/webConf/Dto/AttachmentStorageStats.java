@@ -0,0 +1,25 @@
+package com.example.webConf.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/// Attachment storage usage and what deduplication saves (shown on the admin control page)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttachmentStorageStats {
+    private long blobs;               // distinct contents in the blob store
+    private long references;          // attachments pointing to them
+    private long storedBytes;         // bytes on disk
+    private long logicalBytes;        // bytes the attachments would take without deduplication
+    private long savedBytes;
+    private double savedPercent;
+    private long largeObjects;        // attachments still stored in Postgres (not migrated)
+    private long deduplicatedUploads; // uploads since start whose content was already stored
+    private long deduplicatedBytes;
+    private long uploads;             // uploads saved since start
+    private double averageUploadMillis; // time of the save transaction (quota, reference count and the attachment insert)
+}
@@ -0,0 +1,19 @@
+package com.example.webConf.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/// State of a chunked upload, the client continues with a PUT at "received"
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkedUploadStatus {
+    private String uploadId;
+    private String fileName;
+    private long size;
+    private long received;
+    private long chunkSize;  // largest part the server accepts
+}
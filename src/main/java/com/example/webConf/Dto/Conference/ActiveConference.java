@@ -0,0 +1,19 @@
+package com.example.webConf.dto.conference;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/// Conference a user has open sessions in (projection of UserConferenceJoinRepository, no entity graph loaded)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ActiveConference {
+    private String conferenceId;
+    private LocalDate conferenceDate;
+    private int sessions;
+    private LocalDateTime lastJoin;
+}
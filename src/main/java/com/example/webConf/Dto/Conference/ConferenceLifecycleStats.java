@@ -0,0 +1,21 @@
+package com.example.webConf.dto.conference;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/// Conferences tracked by the lifecycle (admin control page)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConferenceLifecycleStats {
+    private boolean enabled;
+    private long created;        // nobody joined yet
+    private long live;
+    private long idle;           // empty, closed after the grace period
+    private long ended;          // closed since start
+    private long compactedJoins; // join rows deleted when closing
+    private long graceMinutes;
+}
@@ -0,0 +1,20 @@
+package com.example.webConf.dto.conference;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/// Snapshot of the live roster of a conference, later changes arrive as RosterChange with a higher version
+/// (version 0 in relay broker mode, see RosterChange)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConferenceRoster {
+    private String conferenceId;
+    private long version;
+    private Map<String, Integer> counts; // user name -> times the user is in the conference
+}
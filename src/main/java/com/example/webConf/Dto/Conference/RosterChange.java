@@ -0,0 +1,19 @@
+package com.example.webConf.dto.conference;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/// One roster change, published on "/topic/conference/{id}/roster".
+/// Versions follow each other without gaps -> a client that misses one reloads the snapshot.
+/// Version 0 (relay broker mode): the count was read from user_conference_join, instances share no sequence, applied as is.
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RosterChange {
+    private long version;
+    private String userName;
+    private int count; // 0 -> the user left
+}
@@ -0,0 +1,14 @@
+package com.example.webConf.dto.conference;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/// Open joins of one user in a conference (GROUP BY projection of UserConferenceJoinRepository)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserJoinCount {
+    private String userName;
+    private long joins;
+}
@@ -0,0 +1,26 @@
+package com.example.webConf.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/// Orphaned large object collector runs (shown on the admin control page)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LargeObjectCollectorStats {
+    private boolean running;
+    private boolean lastRunDryRun;    // dry run -> found and bytes are what a real run would reclaim
+    private LocalDateTime lastRunStartedAt;
+    private LocalDateTime lastRunFinishedAt;
+    private long lastRunFound;        // large objects no attachment row references
+    private long lastRunUnlinked;
+    private long lastRunBytes;
+    private long totalUnlinked;       // since start of the application
+    private long totalBytesReclaimed;
+    private String lastError;
+}
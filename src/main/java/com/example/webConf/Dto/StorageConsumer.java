@@ -0,0 +1,19 @@
+package com.example.webConf.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/// One chat or user in the storage usage list of the admin control page
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StorageConsumer {
+    private Long id;
+    private String name;
+    private long bytes;
+    private long files;
+    private double quotaPercent; // 0 when there is no quota
+}
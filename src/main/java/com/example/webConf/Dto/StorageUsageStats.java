@@ -0,0 +1,23 @@
+package com.example.webConf.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/// Biggest attachment storage consumers, read from the "storage_usage" counters
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StorageUsageStats {
+    private long userQuotaBytes; // 0 -> unlimited
+    private long chatQuotaBytes;
+    @Builder.Default
+    private List<StorageConsumer> users = new ArrayList<>();
+    @Builder.Default
+    private List<StorageConsumer> chats = new ArrayList<>();
+}
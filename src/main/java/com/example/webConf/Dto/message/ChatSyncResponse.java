@@ -0,0 +1,24 @@
+package com.example.webConf.dto.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/// What a client missed while it was disconnected: delete / clear events first, then the newer messages
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSyncResponse {
+    @Builder.Default
+    private List<MessageView> events = new ArrayList<>();   // same shape as the live DELETE / CLEAR notifications
+    @Builder.Default
+    private List<MessageView> messages = new ArrayList<>(); // oldest -> newest
+    private Long lastEventId;
+    private String cursor;                                  // sent back with the next sync (ChatSyncService)
+    private boolean hasMore;                                // more newer messages -> sync again
+}
@@ -0,0 +1,24 @@
+package com.example.webConf.dto.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/// Metrics of the decrypted message text cache
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageCacheStats {
+    private boolean enabled;
+    private long entries;
+    private long weightBytes;   // estimated size of the cached texts
+    private long maxBytes;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long evictions;
+    private long evictedBytes;
+    private long invalidations;
+}
@@ -0,0 +1,22 @@
+package com.example.webConf.dto.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/// One keyset page of chat history, messages are always ordered from oldest to newest
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessagePage {
+    @Builder.Default
+    private List<MessageView> messages = new ArrayList<>();
+    private Long oldestId; // cursor for the "before" parameter
+    private Long newestId; // cursor for the "after" parameter
+    private boolean hasMore; // more messages exist in the requested direction
+}
@@ -2,17 +2,22 @@ package com.example.webConf.dto.message;
 
 import com.example.webConf.config.message.MessageType;
 import com.example.webConf.dto.AttachmentUploadResponse;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Embedded;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.regex.Pattern;
+
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class MessageView {
+    private static final Pattern THUMBNAIL_EXTENSIONS = Pattern.compile("\\.(jpg|jpeg|png|bmp)$", Pattern.CASE_INSENSITIVE);
+
     private Long id;
     private String text;
     private String author;
@@ -21,4 +26,52 @@ public class MessageView {
     private boolean invitation;
     @Embedded
     private AttachmentUploadResponse attachmentUploadResponse;
+
+    ///  Attached file (same fields as in Message, so the chat scripts can render both)
+    private Long fileId;
+    private String fileName;
+    private String viewUrl;
+    private String downloadUrl;
+
+    ///  Signed preview URL (AttachmentUrlSigner), the plain one is derived from the file name
+    private String thumbnailUrl;
+
+    ///  DELETE / CLEAR notifications: id of the chat event (clients send the last one when they sync after a reconnect)
+    private Long eventId;
+
+    ///  Transaction that inserted the message (delta sync cursor), never sent to clients
+    @JsonIgnore
+    private Long txId;
+
+    ///  Small preview of image files (ThumbnailService), the chat shows it instead of the full image
+    public String getThumbnailUrl() {
+        if (thumbnailUrl != null) {
+            return thumbnailUrl;
+        }
+        if (fileId == null || fileName == null || !THUMBNAIL_EXTENSIONS.matcher(fileName).find()) {
+            return null;
+        }
+        return "/files/thumbnail/" + fileId;
+    }
+
+    ///  Used by history page projections in MessageRepository (no Message entity is loaded)
+    public MessageView(Long id, String text, String author, String pubDate, MessageType type,
+                       Long fileId, String fileName, String viewUrl, String downloadUrl) {
+        this.id = id;
+        this.text = text;
+        this.author = author;
+        this.pubDate = pubDate;
+        this.type = type;
+        this.fileId = fileId;
+        this.fileName = fileName;
+        this.viewUrl = viewUrl;
+        this.downloadUrl = downloadUrl;
+    }
+
+    ///  Used by the delta sync projection in MessageRepository
+    public MessageView(Long id, String text, String author, String pubDate, MessageType type,
+                       Long fileId, String fileName, String viewUrl, String downloadUrl, Long txId) {
+        this(id, text, author, pubDate, type, fileId, fileName, viewUrl, downloadUrl);
+        this.txId = txId;
+    }
 }
@@ -0,0 +1,32 @@
+package com.example.webConf.dto.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/// Progress of the message re-encryption job (shown on the admin control page)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReEncryptionStatus {
+    public enum State { IDLE, RUNNING, STOPPING, STOPPED, COMPLETED, FAILED }
+
+    private State state;
+    private String targetCipher;
+    private long lastId;        // checkpoint
+    private long maxId;         // highest message id when the run was started
+    private long processed;     // rows read (all runs since the last reset)
+    private long reEncrypted;   // rows rewritten in this run
+    private long skipped;       // rows already in the target format in this run
+    private long failed;        // rows that could not be decrypted in this run
+    private double progressPercent;
+    private double rowsPerSecond;
+    private int maxRowsPerSecond;
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+    private String lastError;
+}
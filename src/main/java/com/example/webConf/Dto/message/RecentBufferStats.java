@@ -0,0 +1,28 @@
+package com.example.webConf.dto.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/// Metrics of the off-heap recent message buffer
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecentBufferStats {
+    private boolean enabled;
+    private long chats;
+    private int capacity;        // messages per chat
+    private int slotBytes;
+    private int allocatedSlabs;
+    private int maxSlabs;
+    private long offHeapBytes;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long appends;
+    private long invalidations;
+    private long evictions;
+    private long slabShortages;  // miss while every slab was in use -> page was served from the table only
+}
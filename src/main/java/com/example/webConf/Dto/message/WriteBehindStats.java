@@ -0,0 +1,25 @@
+package com.example.webConf.dto.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/// Metrics of the message write-behind pipeline (for tuning under load)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WriteBehindStats {
+    private boolean enabled;
+    private int queueDepth;
+    private int queueCapacity;
+    private long enqueued;
+    private long flushed;
+    private long flushes;
+    private long failed;
+    private long synchronousFallbacks; // queue was full -> message was saved on the caller thread
+    private long lastFlushMillis;
+    private long maxFlushMillis;
+    private double avgFlushMillis;
+}
@@ -81,7 +81,7 @@ public class UserEntity {
     private List<Chat> chats = new ArrayList<>();
     ///  Messages
     @JsonIgnore
-    @OneToMany(mappedBy = "user", fetch = FetchType.EAGER, cascade = CascadeType.ALL , orphanRemoval = true)  // one user --> many comments in comment side i have @ ManyToone annotation
+    @OneToMany(mappedBy = "user", fetch = FetchType.LAZY, cascade = CascadeType.ALL , orphanRemoval = true)  // one user --> many comments in comment side i have @ ManyToone annotation
     private List<Message> messages = new ArrayList<>();
 
     ///  UserName logic
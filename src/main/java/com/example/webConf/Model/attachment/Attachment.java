@@ -20,22 +20,30 @@ public class Attachment {
     private Long id;
     private String fileName;
     private String fileType;
-    private String downloadUrl;
-    private String viewUrl;
     private LocalDateTime timestamp;
+    private String storageKey; // blob store key, null for old rows whose content is still a large object in "data"
+    private Long fileSize;
 
 
     // that a class property must be mapped to a larger object in the database.
+    // (only filled for rows uploaded before the blob store, AttachmentMigrationService moves them out)
     @Lob
     @Column(columnDefinition = "oid")
     private byte[] data;
 
-    public Attachment(String fileName, String fileType, byte[] data, String downloadUrl ,String viewUrl) {
+    public Attachment(String fileName, String fileType, byte[] data) {
         this.fileName = fileName;
         this.fileType = fileType;
         this.data = data;
-        this.downloadUrl=downloadUrl;
-        this.viewUrl= viewUrl;
+    }
+
+    /// URLs follow from the id -> an upload is a single insert (old rows keep their unused url columns)
+    public String getDownloadUrl() {
+        return id != null ? "/files/download/" + id : null;
+    }
+
+    public String getViewUrl() {
+        return id != null ? "/files/view/" + id : null;
     }
 
     @ToString.Exclude
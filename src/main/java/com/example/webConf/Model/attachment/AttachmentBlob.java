@@ -0,0 +1,25 @@
+package com.example.webConf.model.attachment;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/// One stored content (blob store key) and the number of attachments pointing to it
+@Entity
+@Table(name = "attachment_blob")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttachmentBlob {
+    @Id
+    @Column(length = 64)
+    private String storageKey;
+    private Long size;
+    private Long refCount;
+    private LocalDateTime createdAt;
+}
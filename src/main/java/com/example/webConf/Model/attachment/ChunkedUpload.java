@@ -0,0 +1,30 @@
+package com.example.webConf.model.attachment;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/// Chunked upload in progress (the bytes received so far are a part file of the blob store)
+@Entity
+@Table(name = "chunked_upload", indexes = @Index(name = "idx_chunked_upload_updated_at", columnList = "updated_at"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkedUpload {
+    @Id
+    @Column(length = 36)
+    private String uploadId;
+    private Long chatId;
+    private Long userId;
+    private String fileName;
+    private String fileType;
+    private Long size;        // announced by the client on init
+    private Long received;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
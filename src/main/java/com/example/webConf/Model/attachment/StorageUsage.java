@@ -0,0 +1,42 @@
+package com.example.webConf.model.attachment;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/// Attachment bytes and files of one chat or one user, kept up to date on every save / delete (StorageQuotaService)
+@Entity
+@Table(name = "storage_usage", indexes = @Index(name = "idx_storage_usage_top", columnList = "owner_type, bytes"))
+@IdClass(StorageUsage.Key.class)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StorageUsage {
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private OwnerType ownerType;
+    @Id
+    private Long ownerId;
+    private Long bytes;
+    private Long files;
+    private LocalDateTime updatedAt;
+
+    public enum OwnerType {
+        CHAT, USER
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private OwnerType ownerType;
+        private Long ownerId;
+    }
+}
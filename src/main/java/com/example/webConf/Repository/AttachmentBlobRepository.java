@@ -0,0 +1,34 @@
+package com.example.webConf.repository;
+
+import com.example.webConf.model.attachment.AttachmentBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface AttachmentBlobRepository extends JpaRepository<AttachmentBlob, String> {
+
+    /// Insert or increment in one statement -> concurrent uploads of the same content can not lose a reference.
+    /// The row stays locked until the transaction ends.
+    @Modifying
+    @Query(value = "INSERT INTO attachment_blob (storage_key, size, ref_count, created_at) VALUES (:key, :size, 1, now()) " +
+            "ON CONFLICT (storage_key) DO UPDATE SET ref_count = attachment_blob.ref_count + 1", nativeQuery = true)
+    void addReference(@Param("key") String storageKey, @Param("size") long size);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM AttachmentBlob b WHERE b.storageKey = :key")
+    Optional<AttachmentBlob> findForUpdate(@Param("key") String storageKey);
+
+    /// Counts for rows stored before reference counting existed
+    @Modifying
+    @Query(value = "INSERT INTO attachment_blob (storage_key, size, ref_count, created_at) " +
+            "SELECT a.storage_key, MAX(a.file_size), COUNT(*), now() FROM attachment a WHERE a.storage_key IS NOT NULL GROUP BY a.storage_key " +
+            "ON CONFLICT (storage_key) DO NOTHING", nativeQuery = true)
+    int insertMissingReferences();
+}
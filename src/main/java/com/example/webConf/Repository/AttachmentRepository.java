@@ -1,14 +1,36 @@
 package com.example.webConf.repository;
 
+import com.example.webConf.dto.AttachmentMetadata;
 import com.example.webConf.model.attachment.Attachment;
 import com.example.webConf.model.chat.Chat;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
 
     List<Attachment> findAllByChat(Chat chat);
+
+    /// Never touches the "data" large object
+    @Query("SELECT new com.example.webConf.dto.AttachmentMetadata(a.id, a.fileName, a.fileType, a.storageKey, a.fileSize, a.timestamp, a.chat.id) " +
+            "FROM Attachment a WHERE a.id = :id")
+    Optional<AttachmentMetadata> findMetadataById(@Param("id") Long id);
+
+    @Query("SELECT new com.example.webConf.dto.AttachmentMetadata(a.id, a.fileName, a.fileType, a.storageKey, a.fileSize, a.timestamp, a.chat.id) " +
+            "FROM Attachment a WHERE a.id IN :ids")
+    List<AttachmentMetadata> findAllMetadataByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT CASE WHEN COUNT(a) > 0 THEN true ELSE false END FROM Attachment a JOIN a.chat c JOIN c.participants p " +
+            "WHERE a.id = :id AND p.email = :email")
+    boolean isVisibleTo(@Param("id") Long id, @Param("email") String email);
+
+    /// Content of a row that still keeps it as a large object
+    @Query("SELECT a.data FROM Attachment a WHERE a.id = :id")
+    byte[] findDataById(@Param("id") Long id);
 }
@@ -0,0 +1,14 @@
+package com.example.webConf.repository;
+
+import com.example.webConf.model.attachment.ChunkedUpload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ChunkedUploadRepository extends JpaRepository<ChunkedUpload, String> {
+
+    List<ChunkedUpload> findAllByUpdatedAtBefore(LocalDateTime cutoff);
+}
@@ -31,4 +31,7 @@ public interface ConferenceRepository extends JpaRepository<Conference, String>
 
     @Query("SELECT c FROM Conference c JOIN c.users u WHERE c.id LIKE CONCAT('%', :conferenceId, '%') AND u.id = :userId")
     List<Conference> searchUserConferences(@Param("conferenceId") String conferenceId, @Param("userId") Long userId);
+
+    @Query("SELECT c.chat.id FROM Conference c WHERE c.id = :conferenceId")
+    Long findChatIdById(@Param("conferenceId") String conferenceId);
 }
@@ -0,0 +1,40 @@
+package com.example.webConf.repository;
+
+import com.example.webConf.model.attachment.StorageUsage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface StorageUsageRepository extends JpaRepository<StorageUsage, StorageUsage.Key> {
+
+    /// Insert or add in one statement (no lost update between concurrent uploads)
+    @Modifying
+    @Query(value = "INSERT INTO storage_usage (owner_type, owner_id, bytes, files, updated_at) VALUES (:type, :id, :bytes, :files, now()) " +
+            "ON CONFLICT (owner_type, owner_id) DO UPDATE SET bytes = GREATEST(0, storage_usage.bytes + EXCLUDED.bytes), " +
+            "files = GREATEST(0, storage_usage.files + EXCLUDED.files), updated_at = now()", nativeQuery = true)
+    void add(@Param("type") String ownerType, @Param("id") Long ownerId, @Param("bytes") long bytes, @Param("files") long files);
+
+    /// Adds only while the total stays within "quota": 0 rows -> over quota (the row must exist, see add)
+    @Modifying
+    @Query(value = "UPDATE storage_usage SET bytes = bytes + :bytes, files = files + 1, updated_at = now() " +
+            "WHERE owner_type = :type AND owner_id = :id AND bytes + :bytes <= :quota", nativeQuery = true)
+    int addWithinQuota(@Param("type") String ownerType, @Param("id") Long ownerId, @Param("bytes") long bytes, @Param("quota") long quota);
+
+    /// Biggest consumers, read from the (owner_type, bytes) index
+    List<StorageUsage> findAllByOwnerTypeAndBytesGreaterThanOrderByBytesDesc(StorageUsage.OwnerType ownerType, long bytes, Pageable pageable);
+
+    /// One time counts for attachments saved before the counters existed (rows still in Postgres count once migrated)
+    @Modifying
+    @Query(value = "INSERT INTO storage_usage (owner_type, owner_id, bytes, files, updated_at) " +
+            "SELECT 'CHAT', a.chat_id, SUM(COALESCE(a.file_size, 0)), COUNT(*), now() FROM attachment a WHERE a.chat_id IS NOT NULL GROUP BY a.chat_id " +
+            "UNION ALL " +
+            "SELECT 'USER', a.user_id, SUM(COALESCE(a.file_size, 0)), COUNT(*), now() FROM attachment a WHERE a.user_id IS NOT NULL GROUP BY a.user_id " +
+            "ON CONFLICT (owner_type, owner_id) DO NOTHING", nativeQuery = true)
+    int insertMissingUsage();
+}
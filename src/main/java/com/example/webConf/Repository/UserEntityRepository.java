@@ -1,5 +1,6 @@
 package com.example.webConf.repository;
 
+import com.example.webConf.config.message.StompSender;
 import com.example.webConf.model.user.UserEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -32,4 +33,11 @@ public interface UserEntityRepository extends JpaRepository<UserEntity, Long> {
 
     Optional<UserEntity> findFirstByUserNameIgnoreCase(String username);
     Optional<UserEntity> findFirstByUserNameIgnoreCaseAndAccountType(String username , UserEntity.AccountType accountType);
+
+    ///  STOMP sender identity (no user entity and no eager collections are loaded)
+    @Query("SELECT new com.example.webConf.config.message.StompSender(u.id, u.email, u.userName, u.surname, u.accountType) FROM UserEntity u WHERE u.email = :email ORDER BY u.id")
+    List<StompSender> findStompSenderByEmail(@Param("email") String email);
+
+    @Query("SELECT new com.example.webConf.config.message.StompSender(u.id, u.email, u.userName, u.surname, u.accountType) FROM UserEntity u WHERE UPPER(u.userName) = UPPER(:userName) ORDER BY u.id")
+    List<StompSender> findStompSenderByUserName(@Param("userName") String userName);
 }
\ No newline at end of file
@@ -1,10 +1,13 @@
 package com.example.webConf.service;
 
 
+import com.example.webConf.dto.AttachmentMetadata;
 import com.example.webConf.model.attachment.Attachment;
 import com.example.webConf.model.chat.Chat;
 import com.example.webConf.model.user.UserEntity;
+import com.example.webConf.service.storage.BlobStore;
 import jakarta.transaction.Transactional;
+import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
@@ -13,12 +16,24 @@ public interface AttachmentService {
 
     Attachment saveAttachment(MultipartFile file, Chat chat, UserEntity user) throws Exception;
 
-    @Transactional
-    void updateAttachmentUrls(Long id, String downloadUrl, String viewUrl);
+    /// Attachment for content that is already staged in the blob store (chunked uploads)
+    Attachment saveAttachment(BlobStore.StagedBlob blob, String fileName, String fileType, Chat chat, UserEntity user) throws Exception;
 
     @Transactional
     Attachment getAttachment(Long fileId) throws Exception;
 
+    AttachmentMetadata getAttachmentMetadata(Long fileId) throws Exception;
+
+    /// The user takes part in the chat the file was sent to
+    boolean isVisibleTo(Long fileId, String email);
+
+    /// File content, streamed from the blob store (or the old large object)
+    @Transactional
+    Resource loadContent(AttachmentMetadata metadata) throws Exception;
+
+    /// Content of a blob store key (signed URLs, nothing is read from the database)
+    Resource loadBlob(String storageKey) throws Exception;
+
     @Transactional
     List<Attachment> findAllByChat(Chat chat);
 
@@ -1,5 +1,6 @@
 package com.example.webConf.service;
 
+import com.example.webConf.dto.conference.ActiveConference;
 import com.example.webConf.dto.conference.ConferenceDto;
 import com.example.webConf.model.chat.Chat;
 import com.example.webConf.model.conference.Conference;
@@ -8,6 +9,7 @@ import com.example.webConf.model.user.UserEntity;
 import org.springframework.http.ResponseEntity;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface ConferenceService {
@@ -21,7 +23,7 @@ public interface ConferenceService {
 
     void deleteUnusedConferences();
 
-    List<Conference> findUserActiveConferences(Long id);
+    List<ActiveConference> findUserActiveConferences(Long id);
 
     List<Conference> findAllConferences();
 
@@ -38,4 +40,7 @@ public interface ConferenceService {
     void addUser(String userName, String identifier);
 
     List<Conference> findUserConferences(UserEntity userEntity);
+
+    /// User name -> open joins of all users of the conference (one GROUP BY, shared by concurrent callers)
+    Map<String, Long> countJoins(String conferenceId);
 }
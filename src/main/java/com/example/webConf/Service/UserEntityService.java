@@ -19,10 +19,6 @@ public interface UserEntityService {
 
     Optional<UserEntity> findUserByNameAndSurname(String name, String surname);
 
-    Integer countUserConferenceJoinByUserAndConference(UserEntity userEntity, Conference conference);
-
-    void removeUserConferenceJoin(UserEntity userEntity, Conference conference);
-
     Optional<UserConferenceJoin> findUserConferenceJoin(UserEntity userEntity, Conference conference);
 
     Optional<UserEntity> findById(Long id);
@@ -42,6 +38,4 @@ public interface UserEntityService {
     void editSettings(Map<String, String> settings);
 
     List<SettingsEntity> getSettings();
-
-    List<UserConferenceJoin> findAllUserConferenceJoins(UserEntity userEntity);
 }
@@ -0,0 +1,91 @@
+package com.example.webConf.service.cipher;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/// AES-256-GCM engine. The key is derived once (PBKDF2) and every thread reuses its own Cipher instance.
+/// Cipher text format: "v1:" + Base64(iv | encrypted text | tag)
+public class AesGcmMessageCipher implements MessageCipher {
+    public static final String PREFIX = "v1:";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+    private static final int KEY_DERIVATION_ITERATIONS = 210_000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SecretKey key;
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(AesGcmMessageCipher::newCipher);
+
+    public AesGcmMessageCipher(SecretKey key) {
+        this.key = key;
+    }
+
+    public AesGcmMessageCipher(String password, String salt) {
+        this(deriveKey(password, salt));
+    }
+
+    public static SecretKey deriveKey(String password, String salt) {
+        try {
+            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt.getBytes(StandardCharsets.UTF_8), KEY_DERIVATION_ITERATIONS, 256);
+            byte[] keyBytes = factory.generateSecret(spec).getEncoded();
+            spec.clearPassword();
+            return new SecretKeySpec(keyBytes, "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to derive message key", e);
+        }
+    }
+
+    @Override
+    public String prefix() {
+        return PREFIX;
+    }
+
+    @Override
+    public String encrypt(String text) {
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+            byte[] encrypted = cipher.doFinal(text.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer result = ByteBuffer.allocate(IV_LENGTH + encrypted.length).put(iv).put(encrypted);
+            return PREFIX + Base64.getEncoder().encodeToString(result.array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to encrypt message", e);
+        }
+    }
+
+    @Override
+    public String decrypt(String cipherText) {
+        if (!cipherText.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("Not an " + PREFIX + " cipher text");
+        }
+        byte[] data = Base64.getDecoder().decode(cipherText.substring(PREFIX.length()));
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, data, 0, IV_LENGTH));
+            byte[] plain = cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH);
+            return new String(plain, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to decrypt message", e);
+        }
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM is not available", e);
+        }
+    }
+}
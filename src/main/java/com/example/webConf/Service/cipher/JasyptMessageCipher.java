@@ -0,0 +1,31 @@
+package com.example.webConf.service.cipher;
+
+import org.jasypt.encryption.pbe.PooledPBEStringEncryptor;
+
+/// Legacy engine (Jasypt PBE), cipher texts have no version prefix.
+/// Kept to read existing rows, the pool lets several threads decrypt at the same time.
+public class JasyptMessageCipher implements MessageCipher {
+    private final PooledPBEStringEncryptor encryptor;
+
+    public JasyptMessageCipher(String password, String algorithm, int poolSize) {
+        encryptor = new PooledPBEStringEncryptor();
+        encryptor.setPassword(password);
+        encryptor.setAlgorithm(algorithm);
+        encryptor.setPoolSize(poolSize);
+    }
+
+    @Override
+    public String prefix() {
+        return "";
+    }
+
+    @Override
+    public String encrypt(String text) {
+        return encryptor.encrypt(text);
+    }
+
+    @Override
+    public String decrypt(String cipherText) {
+        return encryptor.decrypt(cipherText);
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.webConf.service.cipher;
+
+/// Engine used by EncoderService to encrypt chat message text
+public interface MessageCipher {
+
+    /// Version prefix of produced cipher texts ("" for the legacy unversioned format)
+    String prefix();
+
+    String encrypt(String text);
+
+    String decrypt(String cipherText);
+}
@@ -1,19 +1,25 @@
 package com.example.webConf.service.impl;
 
 import com.example.webConf.config.exception.ChatException;
+import com.example.webConf.config.exception.UploadException;
+import com.example.webConf.dto.AttachmentMetadata;
 import com.example.webConf.model.attachment.Attachment;
 import com.example.webConf.model.chat.Chat;
 import com.example.webConf.model.user.UserEntity;
 import com.example.webConf.repository.AttachmentRepository;
 import com.example.webConf.repository.ChatRepository;
 import com.example.webConf.service.AttachmentService;
-import jakarta.persistence.EntityNotFoundException;
+import com.example.webConf.service.storage.BlobStore;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -23,48 +29,96 @@ public class AttachmentServiceImpl implements AttachmentService {
 
     private final AttachmentRepository attachmentRepository;
     private final ChatRepository chatRepository;
+    private final BlobStore blobStore;
+    private final AttachmentBlobService attachmentBlobService;
+    private final TransactionTemplate transactionTemplate;
+    private final ThumbnailService thumbnailService;
+    private final AttachmentUrlSigner attachmentUrlSigner;
+    private final StorageQuotaService storageQuotaService;
 
     @Override
     public Attachment saveAttachment(MultipartFile file, Chat chat, UserEntity user) throws Exception {
         String fileName = StringUtils.cleanPath(file.getOriginalFilename());
-        try {
-            if (fileName.contains("..")) {
-                throw new Exception("Filename contains invalid path sequence" + fileName);
-            }
+        if (fileName.contains("..")) {
+            throw new Exception("Filename contains invalid path sequence" + fileName);
+        }
+        BlobStore.StagedBlob blob;
+        // streamed (and hashed) from the multipart part to the blob store, the content is never held in memory
+        try (InputStream content = file.getInputStream()) {
+            blob = blobStore.stage(content);
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new Exception("Could not save File: " + fileName);
+        }
+        return saveAttachment(blob, fileName, file.getContentType(), chat, user);
+    }
 
+    @Override
+    public Attachment saveAttachment(BlobStore.StagedBlob blob, String fileName, String fileType, Chat chat, UserEntity user) throws Exception {
+        try {
             Attachment attachment = new Attachment(fileName,
-                    file.getContentType(),
-                    file.getBytes(),
-                    null,
+                    fileType,
                     null
             );
 
+            attachment.setStorageKey(blob.key());
+            attachment.setFileSize(blob.size());
             attachment.setChat(chat);
             attachment.setUser(user);
             attachment.setTimestamp(LocalDateTime.now());
 
-            return attachmentRepository.save(attachment);
+            // identical content already uploaded anywhere -> only the reference count grows
+            long started = System.nanoTime();
+            Attachment saved = transactionTemplate.execute(status -> {
+                storageQuotaService.charge(chat.getId(), user.getId(), blob.size()); // over quota -> nothing is stored
+                attachmentBlobService.addReference(blob);
+                return attachmentRepository.save(attachment);
+            });
+            attachmentBlobService.recordUpload(System.nanoTime() - started);
+            thumbnailService.submit(blob.key(), fileType);
+            return saved;
+        } catch (UploadException exception) {
+            throw exception;
         } catch (Exception exception) {
             exception.printStackTrace();
             throw new Exception("Could not save File: " + fileName);
+        } finally {
+            blobStore.discard(blob);
         }
     }
     @Transactional
     @Override
-    public void updateAttachmentUrls(Long id, String downloadUrl, String viewUrl) {
-        Attachment attachment = attachmentRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException("Attachment not found"));
-        attachment.setDownloadUrl(downloadUrl);
-        attachment.setViewUrl(viewUrl);
-        attachmentRepository.save(attachment);
+    public Attachment getAttachment(Long fileId) throws Exception {
+        return attachmentRepository.findById(fileId).orElseThrow(() -> new Exception("File not found with id " + fileId));
 
     }
 
+    @Override
+    public AttachmentMetadata getAttachmentMetadata(Long fileId) throws Exception {
+        return attachmentRepository.findMetadataById(fileId).orElseThrow(() -> new Exception("File not found with id " + fileId));
+    }
+
+    @Override
+    public boolean isVisibleTo(Long fileId, String email) {
+        return email != null && attachmentRepository.isVisibleTo(fileId, email);
+    }
+
     @Transactional
     @Override
-    public Attachment getAttachment(Long fileId) throws Exception {
-        return attachmentRepository.findById(fileId).orElseThrow(() -> new Exception("File not found with id " + fileId));
+    public Resource loadContent(AttachmentMetadata metadata) throws Exception {
+        if (metadata.getStorageKey() != null) {
+            return loadBlob(metadata.getStorageKey());
+        }
+        byte[] data = attachmentRepository.findDataById(metadata.getId()); // not migrated yet
+        if (data == null) {
+            throw new Exception("File content not found for id " + metadata.getId());
+        }
+        return new ByteArrayResource(data);
+    }
 
+    @Override
+    public Resource loadBlob(String storageKey) throws Exception {
+        return blobStore.get(storageKey); // opened only when the response is written
     }
 
     @Transactional
@@ -80,5 +134,12 @@ public class AttachmentServiceImpl implements AttachmentService {
         Attachment attachment = getAttachment(fileId);
         chat.getAttachments().remove(attachment);
         attachmentRepository.delete(attachment);
+        attachmentUrlSigner.evict(fileId); // no new URLs, issued ones run out with their expiry
+        storageQuotaService.release(chatId, attachment.getUser() != null ? attachment.getUser().getId() : null,
+                attachment.getFileSize() != null ? attachment.getFileSize() : 0);
+
+        if (attachment.getStorageKey() != null) {
+            attachmentBlobService.removeReference(attachment.getStorageKey()); // the blob goes with its last reference
+        }
     }
 }
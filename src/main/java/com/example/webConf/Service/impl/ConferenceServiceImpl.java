@@ -2,6 +2,7 @@ package com.example.webConf.service.impl;
 
 import com.example.webConf.config.exception.AuthException;
 import com.example.webConf.config.exception.ConferenceException;
+import com.example.webConf.dto.conference.ActiveConference;
 import com.example.webConf.dto.conference.ConferenceDto;
 import com.example.webConf.mappers.ConferenceMapper;
 import com.example.webConf.model.chat.Chat;
@@ -24,9 +25,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
@@ -36,10 +38,14 @@ public class ConferenceServiceImpl implements ConferenceService {
     private final UserEntityService userService;
     private final UserEntityRepository userRepository;
     private final ConferenceDeviceRepository conferenceDeviceRepository;
-    private final UserEntityService userEntityService;
     private final RoleRepository roleRepository;
     private final SettingsEntityRepository settingsEntityRepository;
     private final ApplicationContext context;
+    private final UserConferenceJoinRepository userConferenceJoinRepository;
+    private final ConferenceLifecycleService conferenceLifecycleService;
+    private final ConferenceSessionService conferenceSessionService;
+    /// Join counts being computed, callers for the same conference wait for the same query
+    private final Map<String, CompletableFuture<Map<String, Long>>> joinCountsInFlight = new ConcurrentHashMap<>();
     private RoleEntity adminRole;
     private RoleEntity creatorRole;
 
@@ -83,6 +89,7 @@ public class ConferenceServiceImpl implements ConferenceService {
             throw new Exception("Error while saving conference");
         }
         log.info("Successfully saved conference");
+        conferenceLifecycleService.created(savedConference.getId());
         return savedConference.getId();
     }
 
@@ -126,6 +133,7 @@ public class ConferenceServiceImpl implements ConferenceService {
                 conferenceDeviceRepository.deleteAllByConference(conference);
 
                 conferenceRepository.delete(conference);
+                conferenceSessionService.forget(conference.getId());
             }
 
             log.info("Successfully deleted {} unused conferences", unusedConferences.size());
@@ -136,9 +144,8 @@ public class ConferenceServiceImpl implements ConferenceService {
     }
 
     @Override
-    public List<Conference> findUserActiveConferences(Long id) {
-        UserEntity userEntity = userEntityService.findById(id).get();
-        return userService.findAllUserConferenceJoins(userEntity).stream().map(UserConferenceJoin::getConference).toList();
+    public List<ActiveConference> findUserActiveConferences(Long id) {
+        return conferenceSessionService.getActiveConferences(id);
     }
 
     @Override
@@ -245,4 +252,29 @@ public class ConferenceServiceImpl implements ConferenceService {
     public List<Conference> findUserConferences(UserEntity userEntity) {
         return conferenceRepository.findAllByUsersContains(userEntity);
     }
+
+    @Override
+    public Map<String, Long> countJoins(String conferenceId) {
+        CompletableFuture<Map<String, Long>> computation = new CompletableFuture<>();
+        CompletableFuture<Map<String, Long>> running = joinCountsInFlight.putIfAbsent(conferenceId, computation);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            Map<String, Long> counts = new HashMap<>();
+            userConferenceJoinRepository.countJoinsByConferenceId(conferenceId)
+                    .forEach(joinCount -> counts.put(joinCount.getUserName(), joinCount.getJoins()));
+            computation.complete(Collections.unmodifiableMap(counts));
+        } catch (RuntimeException e) {
+            computation.completeExceptionally(e);
+            throw e;
+        } finally {
+            joinCountsInFlight.remove(conferenceId, computation); // later callers see later joins
+        }
+        return computation.join();
+    }
 }
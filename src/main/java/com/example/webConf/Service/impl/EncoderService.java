@@ -1,31 +1,73 @@
 package com.example.webConf.service.impl;
 
-import lombok.RequiredArgsConstructor;
-import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+import com.example.webConf.service.cipher.AesGcmMessageCipher;
+import com.example.webConf.service.cipher.JasyptMessageCipher;
+import com.example.webConf.service.cipher.MessageCipher;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-@RequiredArgsConstructor
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Slf4j
 @Service
 public class EncoderService {
-    private final StandardPBEStringEncryptor encryptor;
+    private static final int PARALLEL_DECRYPT_THRESHOLD = 32; // smaller lists are not worth splitting across cores
+
+    private final MessageCipher legacyCipher;
+    private final MessageCipher aesGcmCipher;
+    private final MessageCipher currentCipher; // used for all new cipher texts
 
     @Autowired
     public EncoderService(@Value("${jasypt.encryptor.password}") String password,
-                          @Value("${jasypt.encryptor.algorithm}") String algorithm) {
-        encryptor = new StandardPBEStringEncryptor();
-        encryptor.setPassword(password);
-        encryptor.setAlgorithm(algorithm);
+                          @Value("${jasypt.encryptor.algorithm}") String algorithm,
+                          @Value("${message.cipher.engine}") String engine,
+                          @Value("${message.cipher.key-salt}") String keySalt) {
+        legacyCipher = new JasyptMessageCipher(password, algorithm, Runtime.getRuntime().availableProcessors());
+        aesGcmCipher = new AesGcmMessageCipher(password, keySalt);
+        currentCipher = "jasypt".equalsIgnoreCase(engine) ? legacyCipher : aesGcmCipher;
+        log.info("Message cipher engine: {}", currentEngineName());
     }
 
 
     public String encryptText(String text) {
-        return encryptor.encrypt(text);
+        return text == null ? null : currentCipher.encrypt(text);
     }
 
+    /// Versioned cipher texts go to their engine, unversioned ones are old Jasypt rows
     public String decryptText(String text) {
-        return encryptor.decrypt(text);
+        if (text == null) {
+            return null;
+        }
+        return text.startsWith(AesGcmMessageCipher.PREFIX) ? aesGcmCipher.decrypt(text) : legacyCipher.decrypt(text);
+    }
+
+    /// Decrypt a whole history, spread across cores for big lists (keeps the order)
+    public List<String> decryptAll(List<String> texts) {
+        if (texts.size() < PARALLEL_DECRYPT_THRESHOLD) {
+            return texts.stream().map(this::decryptText).collect(Collectors.toList());
+        }
+        return texts.parallelStream().map(this::decryptText).collect(Collectors.toList());
+    }
+
+    /// True when the cipher text was produced by the configured engine (nothing to re-encrypt)
+    public boolean isCurrentFormat(String text) {
+        if (text == null) {
+            return true;
+        }
+        boolean versioned = text.startsWith(AesGcmMessageCipher.PREFIX);
+        return currentCipher == aesGcmCipher ? versioned : !versioned;
+    }
+
+    /// Move a cipher text to the configured engine
+    public String reEncrypt(String text) {
+        return encryptText(decryptText(text));
+    }
+
+    public String currentEngineName() {
+        return currentCipher.getClass().getSimpleName();
     }
 
-}
\ No newline at end of file
+}
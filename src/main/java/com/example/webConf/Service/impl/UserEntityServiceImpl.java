@@ -14,8 +14,10 @@ import com.example.webConf.repository.UserEntityRepository;
 import com.example.webConf.security.SecurityUtil;
 import com.example.webConf.service.MessageService;
 import com.example.webConf.service.UserEntityService;
+import com.example.webConf.service.event.UserAccountChangedEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -37,11 +39,14 @@ public class UserEntityServiceImpl implements UserEntityService {
     private final SettingsEntityRepository settingsEntityRepository;
     private final PasswordEncoder passwordEncoder;
     private final MessageService messageService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ConferenceSessionService conferenceSessionService;
 
     @Autowired
     public UserEntityServiceImpl(UserEntityRepository userEntityRepository,
                                  UserEntityMapper userEntityMapper, UserConferenceJoinRepository userConderenceJoinRepository, ConferenceRepository conferenceRepository, SettingsEntityRepository settingsEntityRepository, PasswordEncoder passwordEncoder,
-                                 @Lazy MessageService messageService) {
+                                 @Lazy MessageService messageService, ApplicationEventPublisher eventPublisher,
+                                 ConferenceSessionService conferenceSessionService) {
         this.userEntityRepository = userEntityRepository;
         this.userEntityMapper = userEntityMapper;
         this.userConderenceJoinRepository = userConderenceJoinRepository;
@@ -49,6 +54,8 @@ public class UserEntityServiceImpl implements UserEntityService {
         this.settingsEntityRepository = settingsEntityRepository;
         this.passwordEncoder = passwordEncoder;
         this.messageService = messageService;
+        this.eventPublisher = eventPublisher;
+        this.conferenceSessionService = conferenceSessionService;
     }
 
     @Override
@@ -78,16 +85,6 @@ public class UserEntityServiceImpl implements UserEntityService {
     }
 
 
-    @Override
-    public void removeUserConferenceJoin(UserEntity userEntity, Conference conference) {
-        Optional<UserConferenceJoin> userConferenceJoin = userConderenceJoinRepository.findFirstByUserAndConference(userEntity, conference);
-        if (userConferenceJoin.isEmpty()) {
-            log.error("User-Conference Join not found, can't remove it.");
-            return;
-        }
-        userConderenceJoinRepository.delete(userConferenceJoin.get());
-    }
-
     @Override
     public Optional<UserConferenceJoin> findUserConferenceJoin(UserEntity userEntity, Conference conference) {
         return userConderenceJoinRepository.findFirstByUserAndConference(userEntity, conference);
@@ -113,12 +110,12 @@ public class UserEntityServiceImpl implements UserEntityService {
         }
         for (UserEntity temporaryUser : temporaryUsers) {
             for (Conference conference : temporaryUser.getConferences()) {
-                if (findUserConferenceJoin(temporaryUser, conference).isPresent()) {
-                    removeUserConferenceJoin(temporaryUser, conference);
-                }
+                findUserConferenceJoin(temporaryUser, conference).ifPresent(this::deleteUserConferenceJoin);
                 conference.getUsers().remove(temporaryUser);
             }
+            conferenceSessionService.forgetUser(temporaryUser.getId());
             userEntityRepository.delete(temporaryUser);
+            eventPublisher.publishEvent(new UserAccountChangedEvent(temporaryUser.getId()));
         }
     }
 
@@ -134,17 +131,17 @@ public class UserEntityServiceImpl implements UserEntityService {
         ///  Find user conferences
         List<Conference> conferences = conferenceRepository.findAllByUsersContains(userEntity);
         for (Conference conference : conferences) {
-            if (findUserConferenceJoin(userEntity, conference).isPresent()) {
-                removeUserConferenceJoin(userEntity, conference);
-            }
+            findUserConferenceJoin(userEntity, conference).ifPresent(this::deleteUserConferenceJoin);
             conference.getUsers().remove(userEntity);
         }
+        conferenceSessionService.forgetUser(userEntity.getId());
         ///  Find user messages
         List<Message> messages = messageService.findAllBySender_id(userEntity.getId());
         for (Message message : messages) {
             messageService.deleteMessage(message, message.getChat());
         }
         userEntityRepository.delete(userEntity);
+        eventPublisher.publishEvent(new UserAccountChangedEvent(uuid));
     }
 
     @Override
@@ -174,6 +171,7 @@ public class UserEntityServiceImpl implements UserEntityService {
         if (registrationDto.getPassword() != null  && !registrationDto.getPassword().trim().isEmpty())
             user.setPassword(passwordEncoder.encode(registrationDto.getPassword()));
 
+        eventPublisher.publishEvent(new UserAccountChangedEvent(uuid));
     }
 
     @Override
@@ -232,19 +230,8 @@ public class UserEntityServiceImpl implements UserEntityService {
         return settings;
     }
 
-    @Override
-    public List<UserConferenceJoin> findAllUserConferenceJoins(UserEntity userEntity) {
-        return userConderenceJoinRepository.findAll();
-    }
-
     @Override
     public Optional<UserEntity> findUserByNameAndSurname(String name, String surname) {
         return userEntityRepository.findFirstByNameAndSurname(name, surname);
     }
-
-
-    @Override
-    public Integer countUserConferenceJoinByUserAndConference(UserEntity userEntity, Conference conference) {
-        return userConderenceJoinRepository.countByUserAndConference(userEntity, conference);
-    }
 }
@@ -0,0 +1,59 @@
+package com.example.webConf.service.storage;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/// Storage of attachment contents outside the database.
+/// Blobs are content addressable: the key is the SHA-256 of the bytes, storing the same content twice gives the same key.
+/// Writing is two-phase: stage() streams and hashes the content into a temporary file, commit() makes it visible under its key.
+/// AttachmentBlobService commits only while it holds the reference count row of the key.
+public interface BlobStore {
+
+    /// Streams "content" into a temporary file (the stream is read to the end but not closed)
+    StagedBlob stage(InputStream content) throws IOException;
+
+    /// Moves a staged blob to its key. false -> the same content was already stored, the staged copy is dropped
+    boolean commit(StagedBlob blob) throws IOException;
+
+    /// Drops the temporary file of a blob that was not committed (no-op after commit)
+    void discard(StagedBlob blob);
+
+    /// Resumable uploads: the content arrives in parts under an upload id.
+    /// Writes "content" (at most "maxBytes") at "offset" and returns the new length. An offset before the end overwrites the
+    /// tail (a part resent after a dropped connection), one past the end is rejected with IllegalArgumentException.
+    long writePart(String uploadId, long offset, InputStream content, long maxBytes) throws IOException;
+
+    /// Bytes received so far
+    long partLength(String uploadId) throws IOException;
+
+    /// Hashes the finished part and hands it over as a staged blob (IllegalStateException while a part is still being written)
+    StagedBlob stagePart(String uploadId) throws IOException;
+
+    void deletePart(String uploadId) throws IOException;
+
+    /// Parts nobody has written to since "cutoff" (uploads whose record is already gone)
+    int deletePartsOlderThan(Instant cutoff) throws IOException;
+
+    /// Derived content (thumbnails) stored next to a blob under a variant name, deleted together with the blob
+    void putVariant(String key, String variant, byte[] content) throws IOException;
+
+    /// FileNotFoundException when the variant was not created (yet)
+    Resource getVariant(String key, String variant) throws IOException;
+
+    boolean existsVariant(String key, String variant);
+
+    /// FileNotFoundException when there is no blob with this key
+    Resource get(String key) throws IOException;
+
+    boolean exists(String key);
+
+    /// Deletes the blob and its variants
+    void delete(String key) throws IOException;
+
+    record StagedBlob(String key, long size, Path file) {
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.webConf.service.storage;
+
+import org.springframework.core.io.AbstractResource;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/// Encrypted blob file (SegmentedBlobCipher) seen as its plain content.
+/// contentLength() is the plain length, so Spring can answer Range requests. The stream decrypts one segment at a time and
+/// skip() only moves the position: a range in the middle of a large file decrypts just the segments it covers.
+class EncryptedBlobResource extends AbstractResource {
+    private final Path file;
+    private final int segmentSize;
+    private final SecretKeySpec fileKey;
+    private final SegmentedBlobCipher cipher;
+
+    EncryptedBlobResource(Path file, int segmentSize, SecretKeySpec fileKey, SegmentedBlobCipher cipher) {
+        this.file = file;
+        this.segmentSize = segmentSize;
+        this.fileKey = fileKey;
+        this.cipher = cipher;
+    }
+
+    @Override
+    public boolean exists() {
+        return Files.isRegularFile(file);
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return new Layout(Files.size(file)).plainLength;
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        return Files.getLastModifiedTime(file).toMillis();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if (!exists()) {
+            throw new FileNotFoundException("Blob not found: " + file);
+        }
+        return new DecryptingInputStream(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    /// The content is only readable through getInputStream() (no plain file to hand out)
+    @Override
+    public File getFile() throws IOException {
+        throw new FileNotFoundException("Encrypted blob has no plain file: " + file.getFileName());
+    }
+
+    @Override
+    public String getDescription() {
+        return "encrypted blob [" + file + "]";
+    }
+
+    /// Segment count and plain length, derived from the file size
+    private class Layout {
+        private final int segments;
+        private final long plainLength;
+        private final int lastEncryptedLength;
+
+        private Layout(long fileSize) throws IOException {
+            long encryptedSegment = segmentSize + SegmentedBlobCipher.TAG_LENGTH;
+            long body = fileSize - SegmentedBlobCipher.HEADER_LENGTH;
+            long full = body / encryptedSegment;
+            long rest = body % encryptedSegment;
+            if (body < SegmentedBlobCipher.TAG_LENGTH || (rest > 0 && rest < SegmentedBlobCipher.TAG_LENGTH)) {
+                throw new IOException("Encrypted blob is truncated: " + file.getFileName());
+            }
+            this.segments = (int) (rest == 0 ? full : full + 1);
+            this.plainLength = full * segmentSize + (rest == 0 ? 0 : rest - SegmentedBlobCipher.TAG_LENGTH);
+            this.lastEncryptedLength = (int) (rest == 0 ? encryptedSegment : rest);
+        }
+    }
+
+    private class DecryptingInputStream extends InputStream {
+        private final FileChannel channel;
+        private final Layout layout;
+        private final byte[] encrypted = new byte[segmentSize + SegmentedBlobCipher.TAG_LENGTH];
+        private final byte[] plain = new byte[segmentSize];
+        private final Cipher segmentCipher = SegmentedBlobCipher.newCipher();
+        private int loadedSegment = -1;
+        private int loadedLength;
+        private long position;
+
+        private DecryptingInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            try {
+                this.layout = new Layout(channel.size());
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= layout.plainLength) {
+                return -1;
+            }
+            int segment = (int) (position / segmentSize);
+            load(segment);
+            int inSegment = (int) (position - (long) segment * segmentSize);
+            int count = Math.min(length, loadedLength - inSegment);
+            System.arraycopy(plain, inSegment, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        /// Nothing is decrypted for skipped bytes
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, layout.plainLength - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return loadedSegment == (int) (position / segmentSize) ? (int) (loadedLength - (position - (long) loadedSegment * segmentSize)) : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void load(int segment) throws IOException {
+            if (segment == loadedSegment) {
+                return;
+            }
+            boolean last = segment == layout.segments - 1;
+            int length = last ? layout.lastEncryptedLength : encrypted.length;
+            long offset = SegmentedBlobCipher.HEADER_LENGTH + (long) segment * encrypted.length;
+            ByteBuffer target = ByteBuffer.wrap(encrypted, 0, length);
+            while (target.hasRemaining()) {
+                if (channel.read(target, offset + target.position()) < 0) {
+                    throw new IOException("Encrypted blob ended inside segment " + segment);
+                }
+            }
+            loadedLength = cipher.decryptSegment(segmentCipher, fileKey, segment, last, encrypted, length, plain);
+            loadedSegment = segment;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.example.webConf.service.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/// Blob store on the local filesystem.
+/// Key = SHA-256 of the content, the file lives in "root/ab/cd/abcd...". Uploads are staged in "root/tmp" while hashing
+/// and moved to their final place atomically on commit, so a reader never sees a half written blob.
+/// Chunked uploads grow in "root/parts/<upload id>.part" until they are complete.
+/// With "attachment.encryption.enabled" blobs, variants and upload parts are written encrypted (SegmentedBlobCipher), the key
+/// stays the hash of the plain content so deduplication is unchanged. Parts are encrypted as they arrive and sealed in place
+/// on completion, nothing plain is kept on disk while an upload waits for its next part.
+@Component
+@Slf4j
+public class FileSystemBlobStore implements BlobStore {
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-f]{64}"); // nothing else can reach the filesystem
+    private static final Pattern VARIANT_PATTERN = Pattern.compile("[a-z0-9]{1,16}");
+    private static final Pattern UPLOAD_ID_PATTERN = Pattern.compile("[0-9a-f-]{36}");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final Path tmpDir;
+    private final Path partsDir;
+    private final SegmentedBlobCipher cipher;
+
+    public FileSystemBlobStore(@Value("${attachment.storage.root}") String root, SegmentedBlobCipher cipher) throws IOException {
+        this.cipher = cipher;
+        this.root = Path.of(root).toAbsolutePath().normalize();
+        this.tmpDir = this.root.resolve("tmp");
+        this.partsDir = this.root.resolve("parts");
+        Files.createDirectories(tmpDir);
+        Files.createDirectories(partsDir);
+        deleteAbandonedUploads();
+        log.info("Attachment blob store: {}", this.root);
+    }
+
+    @Override
+    public StagedBlob stage(InputStream content) throws IOException {
+        MessageDigest digest = newDigest();
+        Path tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+        try {
+            long size = write(new DigestInputStream(content, digest), tmp);
+            return new StagedBlob(HexFormat.of().formatHex(digest.digest()), size, tmp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean commit(StagedBlob blob) throws IOException {
+        Path target = path(blob.key());
+        if (Files.exists(target)) {
+            Files.deleteIfExists(blob.file());
+            return false;
+        }
+        Files.createDirectories(target.getParent());
+        // same key -> same bytes, so replacing a blob stored concurrently is harmless
+        Files.move(blob.file(), target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    @Override
+    public void discard(StagedBlob blob) {
+        try {
+            Files.deleteIfExists(blob.file());
+        } catch (IOException e) {
+            log.warn("Unable to delete staged upload {}: {}", blob.file(), e.getMessage());
+        }
+    }
+
+    @Override
+    public long writePart(String uploadId, long offset, InputStream content, long maxBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(partPath(uploadId),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock lock = tryLock(channel)) {
+            if (lock == null) {
+                throw new IllegalStateException("Upload " + uploadId + " is being written by another request");
+            }
+            // a part started before encryption was switched on stays plain until it is complete
+            boolean encrypted = channel.size() == 0 ? cipher.isEnabled() : cipher.isEncrypted(channel);
+            long length = encrypted ? cipher.partLength(channel) : channel.size();
+            if (offset < 0 || offset > length) {
+                throw new IllegalArgumentException("Offset " + offset + " does not match the " + length + " bytes received");
+            }
+            if (encrypted) {
+                long written = cipher.writePart(channel, offset, content, maxBytes + 1);
+                if (written > maxBytes) {
+                    cipher.writePart(channel, offset, InputStream.nullInputStream(), 0);
+                    throw new IllegalArgumentException("Part is larger than " + maxBytes + " bytes");
+                }
+                return offset + written;
+            }
+            channel.truncate(offset);
+            // straight from the request stream into the file, one more byte than allowed tells an oversized part
+            long written = channel.transferFrom(Channels.newChannel(content), offset, maxBytes + 1);
+            if (written > maxBytes) {
+                channel.truncate(offset);
+                throw new IllegalArgumentException("Part is larger than " + maxBytes + " bytes");
+            }
+            return offset + written;
+        }
+    }
+
+    @Override
+    public long partLength(String uploadId) throws IOException {
+        Path part = partPath(uploadId);
+        if (!Files.exists(part)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.READ)) {
+            return cipher.isEncrypted(channel) ? cipher.partLength(channel) : channel.size();
+        }
+    }
+
+    @Override
+    public StagedBlob stagePart(String uploadId) throws IOException {
+        Path part = partPath(uploadId);
+        boolean encrypted;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock lock = tryLock(channel)) {
+            if (lock == null) {
+                throw new IllegalStateException("Upload " + uploadId + " is being written by another request");
+            }
+            encrypted = cipher.isEncrypted(channel);
+            if (encrypted) {
+                cipher.sealPart(channel);
+            }
+        }
+        if (encrypted) {
+            // encrypted as it arrived: hashed from its plain content and handed over as it is, no second copy
+            try (InputStream in = cipher.open(part).getInputStream()) {
+                return hashed(in, part);
+            }
+        }
+        if (cipher.isEnabled()) {
+            // part started before encryption was switched on: the staged blob is its encrypted copy
+            StagedBlob blob;
+            try (InputStream in = Files.newInputStream(part)) {
+                blob = stage(in);
+            }
+            Files.deleteIfExists(part);
+            return blob;
+        }
+        try (InputStream in = Files.newInputStream(part)) {
+            return hashed(in, part);
+        }
+    }
+
+    @Override
+    public void deletePart(String uploadId) throws IOException {
+        Files.deleteIfExists(partPath(uploadId));
+    }
+
+    @Override
+    public int deletePartsOlderThan(Instant cutoff) throws IOException {
+        return deleteOlderThan(partsDir, cutoff);
+    }
+
+    @Override
+    public Resource get(String key) throws IOException {
+        Path path = path(key);
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException("Blob not found: " + key);
+        }
+        return cipher.open(path);
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.isRegularFile(path(key));
+    }
+
+    @Override
+    public void putVariant(String key, String variant, byte[] content) throws IOException {
+        Path target = variantPath(key, variant);
+        Path tmp = Files.createTempFile(tmpDir, "variant-", ".part");
+        try {
+            write(new ByteArrayInputStream(content), tmp);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public Resource getVariant(String key, String variant) throws IOException {
+        Path path = variantPath(key, variant);
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException("Blob variant not found: " + key + "." + variant);
+        }
+        return cipher.open(path);
+    }
+
+    @Override
+    public boolean existsVariant(String key, String variant) {
+        return Files.isRegularFile(variantPath(key, variant));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Path path = path(key);
+        Files.deleteIfExists(path);
+        if (Files.isDirectory(path.getParent())) {
+            try (DirectoryStream<Path> variants = Files.newDirectoryStream(path.getParent(), key + ".*")) {
+                for (Path variant : variants) {
+                    Files.deleteIfExists(variant);
+                }
+            }
+        }
+    }
+
+    /// Plain copy or encrypted segments, depending on the configuration. Returns the plain length
+    private long write(InputStream content, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            if (cipher.isEnabled()) {
+                return cipher.encrypt(content, out);
+            }
+            long size = 0;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                size += read;
+            }
+            return size;
+        }
+    }
+
+    /// Staged blob of a file that is already in its stored form, "in" is its plain content
+    private static StagedBlob hashed(InputStream in, Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        long size = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            size += read;
+        }
+        return new StagedBlob(HexFormat.of().formatHex(digest.digest()), size, file);
+    }
+
+    private Path path(String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid blob key: " + key);
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    /// "root/ab/cd/abcd....thumb" -> next to the original, shared by all attachments of the same content
+    private Path variantPath(String key, String variant) {
+        if (variant == null || !VARIANT_PATTERN.matcher(variant).matches()) {
+            throw new IllegalArgumentException("Invalid blob variant: " + variant);
+        }
+        Path path = path(key);
+        return path.resolveSibling(key + "." + variant);
+    }
+
+    /// null when another request (of this or another instance) writes the same part
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private Path partPath(String uploadId) {
+        if (uploadId == null || !UPLOAD_ID_PATTERN.matcher(uploadId).matches()) {
+            throw new IllegalArgumentException("Invalid upload id: " + uploadId);
+        }
+        return partsDir.resolve(uploadId + ".part");
+    }
+
+    /// Staged files left behind by a crash during an upload
+    private void deleteAbandonedUploads() throws IOException {
+        deleteOlderThan(tmpDir, Instant.now().minus(1, ChronoUnit.HOURS));
+    }
+
+    private int deleteOlderThan(Path dir, Instant cutoff) throws IOException {
+        int deleted = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                try {
+                    if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff) && Files.deleteIfExists(file)) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    log.warn("Unable to delete abandoned upload {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.webConf.service.storage;
+
+import com.example.webConf.service.cipher.AesGcmMessageCipher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/// At-rest encryption of blob files, streamed in fixed-size AES-256-GCM segments (never a whole file in memory).
+/// File format: header [magic "WCB1" | segment size | salt (16) | header tag (16)], then segments of
+/// [encrypted plain segment | GCM tag (16)]. Every file has its own key (HMAC of the master key and the salt), the nonce of a
+/// segment is its index plus a "last segment" flag, so segments can not be reordered and a truncated file is detected.
+/// A segment is decrypted on its own -> ranged downloads read only the segments they cover.
+/// Files without a valid header are plain blobs written before encryption was switched on and are read as they are.
+@Component
+@Slf4j
+public class SegmentedBlobCipher {
+    static final int HEADER_LENGTH = 40;
+    static final int TAG_LENGTH = 16;
+    private static final byte[] MAGIC = "WCB1".getBytes(StandardCharsets.US_ASCII);
+    private static final int SALT_LENGTH = 16;
+    private static final int NONCE_LENGTH = 12;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final boolean enabled;
+    private final int segmentSize;
+    private final SecretKeySpec masterKey;
+
+    public SegmentedBlobCipher(@Value("${attachment.encryption.enabled}") boolean enabled,
+                               @Value("${attachment.encryption.key}") String key,
+                               @Value("${attachment.encryption.segment-size}") int segmentSize,
+                               @Value("${jasypt.encryptor.password}") String password,
+                               @Value("${message.cipher.key-salt}") String keySalt) {
+        this.enabled = enabled;
+        this.segmentSize = segmentSize;
+        if (key == null || key.isBlank()) {
+            // same secret as the chat messages, own salt -> own key
+            SecretKey derived = AesGcmMessageCipher.deriveKey(password, keySalt + ":attachments");
+            this.masterKey = new SecretKeySpec(derived.getEncoded(), HMAC_ALGORITHM);
+        } else {
+            this.masterKey = new SecretKeySpec(Base64.getDecoder().decode(key), HMAC_ALGORITHM);
+        }
+        log.info("Attachment encryption at rest: {}", enabled ? "on (" + segmentSize + " byte segments)" : "off");
+    }
+
+    /// New blobs are written encrypted (existing files are read either way)
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /// Encrypts "plain" (read to the end, not closed) into "out" and returns the number of plain bytes
+    public long encrypt(InputStream plain, OutputStream out) throws IOException {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        out.write(newHeader(salt));
+
+        SecretKeySpec fileKey = fileKey(salt);
+        Cipher cipher = newCipher();
+        byte[] current = new byte[segmentSize];
+        byte[] next = new byte[segmentSize];
+        byte[] encrypted = new byte[segmentSize + TAG_LENGTH];
+        long total = 0;
+        int currentLength = plain.readNBytes(current, 0, segmentSize);
+        for (int index = 0; ; index++) {
+            // a full segment is the last one only when nothing follows it
+            int nextLength = currentLength == segmentSize ? plain.readNBytes(next, 0, segmentSize) : 0;
+            boolean last = nextLength == 0;
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, fileKey, new GCMParameterSpec(TAG_LENGTH * 8, nonce(index, last)));
+                int length = cipher.doFinal(current, 0, currentLength, encrypted, 0);
+                out.write(encrypted, 0, length);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Unable to encrypt blob segment " + index, e);
+            }
+            total += currentLength;
+            if (last) {
+                return total;
+            }
+            byte[] swap = current;
+            current = next;
+            next = swap;
+            currentLength = nextLength;
+        }
+    }
+
+    /// Plain file -> FileSystemResource (served from the file), encrypted file -> resource that decrypts while it is read (always
+    /// copied through the JVM, never zero-copy)
+    public Resource open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            byte[] header = readHeader(channel);
+            if (header == null) {
+                return new FileSystemResource(file);
+            }
+            int fileSegmentSize = ByteBuffer.wrap(header, MAGIC.length, Integer.BYTES).getInt();
+            byte[] salt = Arrays.copyOfRange(header, MAGIC.length + Integer.BYTES, MAGIC.length + Integer.BYTES + SALT_LENGTH);
+            return new EncryptedBlobResource(file, fileSegmentSize, fileKey(salt), this);
+        }
+    }
+
+    /// true -> the file holds an encrypted blob or part (valid header)
+    public boolean isEncrypted(FileChannel channel) throws IOException {
+        return readHeader(channel) != null;
+    }
+
+    /// Plain length of an encrypted part (0 for an empty file)
+    public long partLength(FileChannel channel) throws IOException {
+        long body = channel.size() - HEADER_LENGTH;
+        if (body <= 0) {
+            return 0;
+        }
+        long encryptedSegment = part(channel).segmentSize() + TAG_LENGTH;
+        long segments = (body + encryptedSegment - 1) / encryptedSegment;
+        return body - segments * TAG_LENGTH;
+    }
+
+    /// Resumable upload parts are encrypted as they arrive, the part file is never plain.
+    /// Encrypts up to "maxBytes" of "content" into the part at plain "offset" (at most its length), everything after the
+    /// offset is replaced, and returns the number of bytes taken from "content". An empty file gets a new header first.
+    /// Every segment is written as a middle one (sealPart() marks the last), a segment the offset falls into is re-encrypted
+    /// from its decrypted head. Bytes that arrived before the stream failed are kept, as in a plain part.
+    public long writePart(FileChannel channel, long offset, InputStream content, long maxBytes) throws IOException {
+        PartKey part = channel.size() == 0 ? newPart(channel) : part(channel);
+        Cipher cipher = newCipher();
+        byte[] plain = new byte[part.segmentSize()];
+        byte[] encrypted = new byte[part.segmentSize() + TAG_LENGTH];
+        int index = Math.toIntExact(offset / part.segmentSize());
+        int filled = (int) (offset % part.segmentSize());
+        if (filled > 0) {
+            int length = readSegment(channel, part, index, encrypted);
+            decryptSegment(cipher, part.fileKey(), index, false, encrypted, length, plain);
+        }
+        channel.truncate(segmentPosition(part, index));
+
+        long written = 0;
+        try {
+            while (written < maxBytes) {
+                // read(), not readNBytes(): what a failing stream delivered before is still counted
+                int read = content.read(plain, filled, (int) Math.min(plain.length - filled, maxBytes - written));
+                if (read < 0) {
+                    break;
+                }
+                filled += read;
+                written += read;
+                if (filled == plain.length) {
+                    writeSegment(channel, part, cipher, index++, false, plain, filled, encrypted);
+                    filled = 0;
+                }
+            }
+        } catch (IOException e) {
+            if (filled > 0) {
+                writeSegment(channel, part, cipher, index, false, plain, filled, encrypted);
+            }
+            throw e;
+        }
+        if (filled > 0) {
+            writeSegment(channel, part, cipher, index, false, plain, filled, encrypted);
+        }
+        return written;
+    }
+
+    /// Re-encrypts the final segment of a complete part with the "last" flag, afterwards the part is a regular encrypted blob
+    /// (open() reads it). Sealing a sealed part again changes nothing.
+    public void sealPart(FileChannel channel) throws IOException {
+        PartKey part = part(channel);
+        Cipher cipher = newCipher();
+        byte[] plain = new byte[part.segmentSize()];
+        byte[] encrypted = new byte[part.segmentSize() + TAG_LENGTH];
+        long body = channel.size() - HEADER_LENGTH;
+        int index = body == 0 ? 0 : Math.toIntExact((body - 1) / encrypted.length);
+        int plainLength = 0;
+        if (body > 0) {
+            int length = readSegment(channel, part, index, encrypted);
+            try {
+                plainLength = decryptSegment(cipher, part.fileKey(), index, false, encrypted, length, plain);
+            } catch (IOException e) {
+                // sealed already (a completion that was retried), anything else fails authentication here too
+                decryptSegment(cipher, part.fileKey(), index, true, encrypted, length, plain);
+                return;
+            }
+        }
+        writeSegment(channel, part, cipher, index, true, plain, plainLength, encrypted);
+    }
+
+    /// Decrypts segment "index" of an encrypted file into "plain" and returns its length (one Cipher per stream)
+    int decryptSegment(Cipher cipher, SecretKeySpec fileKey, int index, boolean last, byte[] encrypted, int length, byte[] plain) throws IOException {
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, fileKey, new GCMParameterSpec(TAG_LENGTH * 8, nonce(index, last)));
+            return cipher.doFinal(encrypted, 0, length, plain, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Blob segment " + index + " failed authentication", e);
+        }
+    }
+
+    private PartKey newPart(FileChannel channel) throws IOException {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        writeFully(channel, ByteBuffer.wrap(newHeader(salt)), 0);
+        return new PartKey(segmentSize, fileKey(salt));
+    }
+
+    /// Segment size and key of an existing encrypted part
+    private PartKey part(FileChannel channel) throws IOException {
+        byte[] header = readHeader(channel);
+        if (header == null) {
+            throw new IOException("Upload part is not encrypted");
+        }
+        int fileSegmentSize = ByteBuffer.wrap(header, MAGIC.length, Integer.BYTES).getInt();
+        byte[] salt = Arrays.copyOfRange(header, MAGIC.length + Integer.BYTES, MAGIC.length + Integer.BYTES + SALT_LENGTH);
+        return new PartKey(fileSegmentSize, fileKey(salt));
+    }
+
+    /// Reads the encrypted segment "index" (shorter at the end of the file) and returns its length
+    private static int readSegment(FileChannel channel, PartKey part, int index, byte[] encrypted) throws IOException {
+        long position = segmentPosition(part, index);
+        int length = (int) Math.min(encrypted.length, channel.size() - position);
+        ByteBuffer buffer = ByteBuffer.wrap(encrypted, 0, length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Upload part is truncated");
+            }
+        }
+        return length;
+    }
+
+    private static void writeSegment(FileChannel channel, PartKey part, Cipher cipher, int index, boolean last,
+                                     byte[] plain, int length, byte[] encrypted) throws IOException {
+        int encryptedLength;
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, part.fileKey(), new GCMParameterSpec(TAG_LENGTH * 8, nonce(index, last)));
+            encryptedLength = cipher.doFinal(plain, 0, length, encrypted, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to encrypt blob segment " + index, e);
+        }
+        writeFully(channel, ByteBuffer.wrap(encrypted, 0, encryptedLength), segmentPosition(part, index));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static long segmentPosition(PartKey part, int index) {
+        return HEADER_LENGTH + (long) index * (part.segmentSize() + TAG_LENGTH);
+    }
+
+    private byte[] newHeader(byte[] salt) {
+        byte[] header = ByteBuffer.allocate(HEADER_LENGTH).put(MAGIC).putInt(segmentSize).put(salt).array();
+        System.arraycopy(headerTag(header), 0, header, HEADER_LENGTH - TAG_LENGTH, TAG_LENGTH);
+        return header;
+    }
+
+    /// null -> not an encrypted blob
+    private byte[] readHeader(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_LENGTH) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                return null;
+            }
+        }
+        byte[] header = buffer.array();
+        if (!Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            return null;
+        }
+        // an uploaded file that merely starts with the magic has no valid tag
+        byte[] tag = Arrays.copyOfRange(header, HEADER_LENGTH - TAG_LENGTH, HEADER_LENGTH);
+        return MessageDigest.isEqual(tag, headerTag(header)) ? header : null;
+    }
+
+    private byte[] headerTag(byte[] header) {
+        return Arrays.copyOf(hmac((byte) 2, header, HEADER_LENGTH - TAG_LENGTH), TAG_LENGTH);
+    }
+
+    private SecretKeySpec fileKey(byte[] salt) {
+        return new SecretKeySpec(hmac((byte) 1, salt, salt.length), "AES");
+    }
+
+    /// Domain separated HMAC of the master key: 1 -> file keys, 2 -> header tags
+    private byte[] hmac(byte domain, byte[] data, int length) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(masterKey);
+            mac.update(domain);
+            mac.update(data, 0, length);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to derive blob key", e);
+        }
+    }
+
+    private static byte[] nonce(int index, boolean last) {
+        return ByteBuffer.allocate(NONCE_LENGTH)
+                .position(NONCE_LENGTH - Integer.BYTES - 1)
+                .putInt(index)
+                .put((byte) (last ? 1 : 0))
+                .array();
+    }
+
+    private record PartKey(int segmentSize, SecretKeySpec fileKey) {
+    }
+
+    static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM is not available", e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.webConf.config.exception;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
@@ -32,4 +33,9 @@ public class GlobalExceptionHandler {
         log.error("Registration Exception: {}" , ex.getMessage());
         return "redirect:/register?error";
     }
+    @ExceptionHandler(UploadException.class)
+    public ResponseEntity<String> handleUploadException(UploadException ex) {
+        log.error("Upload Exception: {}", ex.getMessage());
+        return ResponseEntity.status(ex.getStatus()).body(ex.getMessage());
+    }
 }
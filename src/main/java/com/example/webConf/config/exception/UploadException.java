@@ -0,0 +1,15 @@
+package com.example.webConf.config.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/// Chunked upload errors, answered with a status code (the client is a script, not a page)
+@Getter
+public class UploadException extends RuntimeException {
+    private final HttpStatus status;
+
+    public UploadException(HttpStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.webConf.config.message;
+
+import com.example.webConf.model.user.UserEntity;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/// Lightweight identity of the user behind a STOMP session (kept in the session attributes)
+@Data
+@NoArgsConstructor
+public class StompSender implements Serializable {
+    public static final String SESSION_ATTRIBUTE = "stompSender";
+
+    private Long userId;
+    private String email;
+    private String userName;
+    private String surname;
+    private UserEntity.AccountType accountType;
+    private long accountVersion; // see StompSenderResolver
+
+    ///  Used by the projection queries in UserEntityRepository
+    public StompSender(Long userId, String email, String userName, String surname, UserEntity.AccountType accountType) {
+        this.userId = userId;
+        this.email = email;
+        this.userName = userName;
+        this.surname = surname;
+        this.accountType = accountType;
+    }
+
+    /// Message author: email for permanent accounts, surname for temporary accounts
+    public String getAuthor() {
+        return email != null && !email.isEmpty() ? email : surname;
+    }
+}
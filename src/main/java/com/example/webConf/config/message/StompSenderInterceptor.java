@@ -0,0 +1,30 @@
+package com.example.webConf.config.message;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+/// Resolves the sender on STOMP CONNECT (temporary users send their "userName" header) and keeps it in the session
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class StompSenderInterceptor implements ChannelInterceptor {
+    private final StompSenderResolver senderResolver;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() != StompCommand.CONNECT || accessor.getSessionAttributes() == null) {
+            return message;
+        }
+        senderResolver.resolve(accessor.getUser(), accessor.getFirstNativeHeader("userName"))
+                .ifPresent(sender -> senderResolver.store(accessor.getSessionAttributes(), accessor.getSessionId(), sender));
+        return message;
+    }
+}
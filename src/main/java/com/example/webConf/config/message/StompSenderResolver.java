@@ -0,0 +1,125 @@
+package com.example.webConf.config.message;
+
+import com.example.webConf.model.user.UserEntity;
+import com.example.webConf.repository.UserEntityRepository;
+import com.example.webConf.service.event.UserAccountChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/// Resolves the STOMP sender once per session, handlers read it from the session attributes.
+/// Every account change bumps the version of the account -> sessions holding an older version resolve it again.
+/// Versions are kept only while the account has open sessions (a new session resolves the account from the table anyway).
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class StompSenderResolver {
+    private final UserEntityRepository userEntityRepository;
+    private final Map<Long, Long> accountVersions = new ConcurrentHashMap<>();
+    private final Map<String, Long> sessionUsers = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> userSessions = new ConcurrentHashMap<>();
+
+    ///  Permanent users by the session principal, temporary users (conference chat) by their user name
+    public Optional<StompSender> resolve(Principal principal, String userName) {
+        List<StompSender> senders;
+        if (principal != null && principal.getName() != null && !principal.getName().isEmpty()) {
+            senders = userEntityRepository.findStompSenderByEmail(principal.getName());
+        } else if (userName != null && !userName.isEmpty()) {
+            senders = userEntityRepository.findStompSenderByUserName(URLDecoder.decode(userName, StandardCharsets.UTF_8));
+        } else {
+            return Optional.empty();
+        }
+        if (senders.isEmpty()) {
+            return Optional.empty();
+        }
+        StompSender sender = senders.get(0);
+        sender.setAccountVersion(accountVersions.getOrDefault(sender.getUserId(), 0L));
+        return Optional.of(sender);
+    }
+
+    /// Sender of the session, resolved (and stored) only when missing or when the account changed.
+    /// "userName" is used for sessions without a principal that did not send it on CONNECT.
+    public Optional<StompSender> getSender(SimpMessageHeaderAccessor headerAccessor, String userName) {
+        Map<String, Object> attributes = headerAccessor.getSessionAttributes();
+        StompSender sender = attributes != null ? (StompSender) attributes.get(StompSender.SESSION_ATTRIBUTE) : null;
+        if (sender != null && !isStale(sender)) {
+            return Optional.of(sender);
+        }
+        String name = sender != null && sender.getUserName() != null ? sender.getUserName() : userName;
+        Optional<StompSender> resolved = resolve(headerAccessor.getUser(), name);
+        if (attributes != null) {
+            if (resolved.isPresent()) {
+                store(attributes, headerAccessor.getSessionId(), resolved.get());
+            } else {
+                attributes.remove(StompSender.SESSION_ATTRIBUTE);
+            }
+        }
+        return resolved;
+    }
+
+    /// Sender of a session authenticated by its principal (permanent account), empty for users named by a header.
+    /// Deleting messages and clearing or deleting chats is left to permanent accounts.
+    public Optional<StompSender> getPermanentSender(SimpMessageHeaderAccessor headerAccessor) {
+        Principal principal = headerAccessor.getUser();
+        if (principal == null || principal.getName() == null || principal.getName().isEmpty()) {
+            return Optional.empty();
+        }
+        return getSender(headerAccessor, null)
+                .filter(sender -> sender.getAccountType() == UserEntity.AccountType.PERMANENT && principal.getName().equals(sender.getEmail()));
+    }
+
+    public void store(Map<String, Object> attributes, String sessionId, StompSender sender) {
+        attributes.put(StompSender.SESSION_ATTRIBUTE, sender);
+        if (sessionId == null) {
+            return;
+        }
+        Long previous = sessionUsers.put(sessionId, sender.getUserId());
+        if (!sender.getUserId().equals(previous)) {
+            userSessions.merge(sender.getUserId(), 1, Integer::sum);
+            if (previous != null) {
+                release(previous);
+            }
+        }
+    }
+
+    /// Session closed -> the version of an account without sessions is dropped
+    public void disconnect(String sessionId) {
+        Long userId = sessionId != null ? sessionUsers.remove(sessionId) : null;
+        if (userId != null) {
+            release(userId);
+        }
+    }
+
+    public boolean isStale(StompSender sender) {
+        return accountVersions.getOrDefault(sender.getUserId(), 0L) != sender.getAccountVersion();
+    }
+
+    @EventListener
+    public void onAccountChanged(UserAccountChangedEvent event) {
+        if (!userSessions.containsKey(event.userId())) {
+            return; // no session holds the account
+        }
+        accountVersions.merge(event.userId(), 1L, Long::sum);
+        log.debug("Account {} changed, STOMP sessions resolve it again", event.userId());
+    }
+
+    private void release(Long userId) {
+        userSessions.computeIfPresent(userId, (id, count) -> {
+            if (count > 1) {
+                return count - 1;
+            }
+            accountVersions.remove(id);
+            return null;
+        });
+    }
+}
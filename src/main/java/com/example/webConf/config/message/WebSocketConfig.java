@@ -1,13 +1,18 @@
 package com.example.webConf.config.message;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.converter.DefaultContentTypeResolver;
 import org.springframework.messaging.converter.MappingJackson2MessageConverter;
 import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
 import org.springframework.util.MimeType;
+import org.springframework.util.StringUtils;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
@@ -16,13 +21,34 @@ import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker
+@Slf4j
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final ObjectMapper objectMapper;
+    private final StompSenderInterceptor stompSenderInterceptor;
+
+    ///  Broker settings ("simple" = in-memory broker of this instance, "relay" = external STOMP broker shared by all instances)
+    @Value("${websocket.broker.mode}")
+    private String brokerMode;
+    @Value("${websocket.broker.relay.host}")
+    private String relayHost;
+    @Value("${websocket.broker.relay.port}")
+    private int relayPort;
+    @Value("${websocket.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+    @Value("${websocket.broker.relay.client-login}")
+    private String relayClientLogin;
+    @Value("${websocket.broker.relay.client-passcode}")
+    private String relayClientPasscode;
+    @Value("${websocket.broker.relay.system-login}")
+    private String relaySystemLogin;
+    @Value("${websocket.broker.relay.system-passcode}")
+    private String relaySystemPasscode;
 
     @Autowired
-    public WebSocketConfig(ObjectMapper objectMapper) {
+    public WebSocketConfig(ObjectMapper objectMapper, StompSenderInterceptor stompSenderInterceptor) {
         this.objectMapper = objectMapper;
+        this.stompSenderInterceptor = stompSenderInterceptor;
     }
 
     @Override
@@ -33,7 +59,29 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         registry.setApplicationDestinationPrefixes("/app");
-        registry.enableSimpleBroker("/topic");
+        if (!"relay".equalsIgnoreCase(brokerMode)) {
+            registry.enableSimpleBroker("/topic");
+            return;
+        }
+        log.info("Using STOMP broker relay {}:{}", relayHost, relayPort);
+        StompBrokerRelayRegistration relay = registry.enableStompBrokerRelay("/topic")
+                .setRelayHost(relayHost)
+                .setRelayPort(relayPort)
+                .setClientLogin(relayClientLogin)
+                .setClientPasscode(relayClientPasscode)
+                .setSystemLogin(relaySystemLogin)
+                .setSystemPasscode(relaySystemPasscode)
+                // convertAndSendToUser(): the user may be connected to another instance -> resolve it there
+                .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                .setUserRegistryBroadcast("/topic/simp-user-registry");
+        if (StringUtils.hasText(relayVirtualHost)) {
+            relay.setVirtualHost(relayVirtualHost);
+        }
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(stompSenderInterceptor);
     }
 
     @Override
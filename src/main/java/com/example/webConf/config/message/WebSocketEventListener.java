@@ -2,6 +2,7 @@ package com.example.webConf.config.message;
 
 import com.example.webConf.model.chat.Message;
 import com.example.webConf.service.UserEntityService;
+import com.example.webConf.service.impl.ConferenceRosterService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,19 +11,43 @@ import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Component
 @Slf4j
 @RequiredArgsConstructor
 public class WebSocketEventListener {
+    private static final Pattern ROSTER_DESTINATION = Pattern.compile("^/topic/conference/(.+)/roster$");
 
     private final SimpMessageSendingOperations messagingTemplate;
 
     @Autowired
     private final UserEntityService userEntityService;
 
+    private final ConferenceRosterService conferenceRosterService;
+
+    private final StompSenderResolver senderResolver;
+
+    /// The conference page follows the roster -> the user of the session is in the conference until it disconnects
+    @EventListener
+    public void handleSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
+        Matcher matcher = headerAccessor.getDestination() != null ? ROSTER_DESTINATION.matcher(headerAccessor.getDestination()) : null;
+        if (matcher == null || !matcher.matches() || headerAccessor.getSessionAttributes() == null) {
+            return;
+        }
+        if (headerAccessor.getSessionAttributes().get(StompSender.SESSION_ATTRIBUTE) instanceof StompSender sender) {
+            conferenceRosterService.connect(headerAccessor.getSessionId(), matcher.group(1), sender.getUserName());
+        }
+    }
+
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
+        conferenceRosterService.disconnect(event.getSessionId());
+        senderResolver.disconnect(event.getSessionId());
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
         String email = (String) headerAccessor.getSessionAttributes().get("email");
         if (email != null && !email.isEmpty()) {
@@ -0,0 +1,43 @@
+package com.example.webConf.config.upload;
+
+import com.example.webConf.config.message.StompSender;
+import com.example.webConf.repository.UserEntityRepository;
+import com.example.webConf.security.SecurityUtil;
+import com.example.webConf.service.impl.StorageQuotaService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/// Rejects a multipart upload that would exceed the chat or user quota from its Content-Length, before the body is read
+/// (multipart requests are resolved lazily, see "spring.servlet.multipart.resolve-lazily").
+/// The length includes the multipart framing, a few hundred bytes more than the file. Requests without a length pass,
+/// the quota is enforced again when the attachment is saved.
+@Component
+@RequiredArgsConstructor
+public class UploadQuotaInterceptor implements HandlerInterceptor {
+    private final UserEntityRepository userRepository;
+    private final StorageQuotaService storageQuotaService;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        long size = request.getContentLengthLong();
+        if (!"POST".equalsIgnoreCase(request.getMethod()) || size <= 0) {
+            return true;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String chatId = variables != null ? variables.get("projectId") : null;
+        String email = SecurityUtil.getSessionUserEmail();
+        if (chatId == null || !chatId.matches("\\d+") || email == null) {
+            return true; // the controller answers these
+        }
+        Long userId = userRepository.findStompSenderByEmail(email).stream().findFirst().map(StompSender::getUserId).orElse(null);
+        storageQuotaService.checkQuota(Long.valueOf(chatId), userId, size); // UploadException -> 413
+        return true;
+    }
+}
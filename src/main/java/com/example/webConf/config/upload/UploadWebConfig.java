@@ -0,0 +1,17 @@
+package com.example.webConf.config.upload;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@RequiredArgsConstructor
+public class UploadWebConfig implements WebMvcConfigurer {
+    private final UploadQuotaInterceptor uploadQuotaInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(uploadQuotaInterceptor).addPathPatterns("/files/upload/*");
+    }
+}
@@ -4,10 +4,15 @@ import com.example.webConf.config.exception.AuthException;
 import com.example.webConf.config.exception.ChatException;
 import com.example.webConf.config.message.DeleteMessageRequest;
 import com.example.webConf.config.message.MessageType;
+import com.example.webConf.config.message.StompSender;
+import com.example.webConf.config.message.StompSenderResolver;
+import com.example.webConf.dto.message.ChatSyncResponse;
+import com.example.webConf.dto.message.MessagePage;
 import com.example.webConf.dto.message.MessageView;
 import com.example.webConf.mappers.ConferenceMapper;
 import com.example.webConf.mappers.MessageMapper;
 import com.example.webConf.model.chat.Chat;
+import com.example.webConf.model.chat.ChatEvent;
 import com.example.webConf.model.chat.Message;
 import com.example.webConf.model.conference.Conference;
 import com.example.webConf.model.user.UserEntity;
@@ -18,7 +23,12 @@ import com.example.webConf.service.ChatService;
 import com.example.webConf.service.ConferenceService;
 import com.example.webConf.service.MessageService;
 import com.example.webConf.service.UserEntityService;
+import com.example.webConf.service.impl.AttachmentUrlSigner;
+import com.example.webConf.service.impl.ChatAccessTokenService;
+import com.example.webConf.service.impl.ChatSyncService;
+import com.example.webConf.service.impl.ConferenceSessionService;
 import com.example.webConf.service.impl.EncoderService;
+import com.example.webConf.service.impl.MessageWriteBehindService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.transaction.Transactional;
@@ -28,18 +38,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 
-import java.security.Principal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Collections;
@@ -58,9 +71,15 @@ public class ChatController {
     private final SimpMessagingTemplate messagingTemplate;
     private final ChatRepository chatRepository;
     private final UserEntityRepository userRepository;
+    private final MessageWriteBehindService messageWriteBehindService;
+    private final StompSenderResolver senderResolver;
+    private final ChatSyncService chatSyncService;
+    private final AttachmentUrlSigner attachmentUrlSigner;
+    private final ConferenceSessionService conferenceSessionService;
+    private final ChatAccessTokenService chatAccessTokenService;
 
     @Autowired
-    public ChatController(ConferenceService conferenceService, UserEntityService userService, MessageService messageService, ChatService chatService, ObjectMapper objectMapper, SimpMessagingTemplate messagingTemplate, ChatRepository chatRepository, UserEntityRepository userRepository) {
+    public ChatController(ConferenceService conferenceService, UserEntityService userService, MessageService messageService, ChatService chatService, ObjectMapper objectMapper, SimpMessagingTemplate messagingTemplate, ChatRepository chatRepository, UserEntityRepository userRepository, MessageWriteBehindService messageWriteBehindService, StompSenderResolver senderResolver, ChatSyncService chatSyncService, AttachmentUrlSigner attachmentUrlSigner, ConferenceSessionService conferenceSessionService, ChatAccessTokenService chatAccessTokenService) {
         this.conferenceService = conferenceService;
         this.userService = userService;
         this.messageService = messageService;
@@ -69,6 +88,12 @@ public class ChatController {
         this.messagingTemplate = messagingTemplate;
         this.chatRepository = chatRepository;
         this.userRepository = userRepository;
+        this.messageWriteBehindService = messageWriteBehindService;
+        this.senderResolver = senderResolver;
+        this.chatSyncService = chatSyncService;
+        this.attachmentUrlSigner = attachmentUrlSigner;
+        this.conferenceSessionService = conferenceSessionService;
+        this.chatAccessTokenService = chatAccessTokenService;
     }
 
     // find existing chat or create new beetween two people for "home-page"
@@ -85,43 +110,89 @@ public class ChatController {
     @GetMapping("/chat/{chatId}")
     public String getChat(@PathVariable("chatId") Long chatId, Model model) throws JsonProcessingException {
         Chat chat = chatService.findById(chatId).orElseThrow(() -> new ChatException("Chat not found"));
-        List<Message> messages = messageService.findAllChatMessage(chatId);
         UserEntity currentUser = userService.findByEmail(SecurityUtil.getSessionUserEmail()).orElseThrow(() -> new AuthException("User not found"));
         if (SecurityUtil.getSessionUserEmail() == null || SecurityUtil.getSessionUserEmail().isEmpty() || (!chat.getParticipants().contains(currentUser))) {
             return "redirect:/home";
         }
 
-        model.addAttribute("messages", messages);
-        model.addAttribute("messagesJson", objectMapper.writeValueAsString(messages));
+        // delta sync cursors after reconnects, taken before the page -> whatever happens while it is read is synced later
+        model.addAttribute("lastChatEventId", chatSyncService.lastEventId(chatId));
+        model.addAttribute("chatSyncCursor", chatSyncService.cursor());
+        // only the newest page is rendered, older pages are loaded while scrolling (see getChatMessages)
+        MessagePage page = messageService.findChatMessagesPage(chatId, null, null, null);
+        attachmentUrlSigner.signAll(chatId, page.getMessages());
+        model.addAttribute("messagesJson", objectMapper.writeValueAsString(page.getMessages()));
+        model.addAttribute("hasMoreMessages", page.isHasMore());
         model.addAttribute("user", currentUser);
         model.addAttribute("participants", chat.getParticipants());
         model.addAttribute("chat", chat);
         return "chat";
     }
 
+    /// Keyset-paginated chat history ("before" -> older page, "after" -> newer page)
+    @GetMapping("/chat/{chatId}/messages")
+    public ResponseEntity<MessagePage> getChatMessages(@PathVariable("chatId") Long chatId,
+                                                       @RequestParam(value = "before", required = false) Long before,
+                                                       @RequestParam(value = "after", required = false) Long after,
+                                                       @RequestParam(value = "size", required = false) Integer size,
+                                                       @RequestHeader(value = "X-Chat-Token", required = false) String token) {
+        Chat chat = chatService.findById(chatId).orElseThrow(() -> new ChatException("Chat not found"));
+        if (!canReadChat(chat, token)) {
+            logger.warn("Illegal access to chat {} history", chatId);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        MessagePage page = messageService.findChatMessagesPage(chatId, before, after, size);
+        attachmentUrlSigner.signAll(chatId, page.getMessages());
+        return ResponseEntity.ok(page);
+    }
+
+    /// Conference chat -> the session user or (temporary users have no session) the user of the token the conference page
+    /// was rendered with, who must still be in the conference
+    private boolean canReadChat(Chat chat, String token) {
+        Optional<UserEntity> sessionUser = userService.findByEmail(SecurityUtil.getSessionUserEmail());
+        Conference conference = chat.getConference();
+        if (conference != null) {
+            Optional<Long> userId = sessionUser.map(UserEntity::getId).or(() -> chatAccessTokenService.verify(chat.getId(), token));
+            return userId.map(id -> conferenceSessionService.isInConference(conference.getId(), id)).orElse(false);
+        }
+        return sessionUser.map(user -> chat.getParticipants().contains(user)).orElse(false);
+    }
+
+    /// Delta sync after a reconnect: only deletes / clears and messages newer than what the client has seen
+    @SubscribeMapping("/chat/{chatId}/sync")
+    public ChatSyncResponse syncChat(@DestinationVariable Long chatId,
+                                     @Header(value = "cursor", required = false) String cursor,
+                                     @Header(value = "lastEventId", required = false) Long lastEventId,
+                                     SimpMessageHeaderAccessor headerAccessor) {
+        StompSender sender = senderResolver.getSender(headerAccessor, null).orElseThrow(() -> new AuthException("User not found"));
+        Chat chat = chatService.findById(chatId).orElseThrow(() -> new ChatException("Chat not found"));
+        Conference conference = chat.getConference();
+        boolean member = conference != null
+                ? conference.getUsers().stream().anyMatch(user -> user.getId().equals(sender.getUserId()))
+                : chat.getParticipants().stream().anyMatch(participant -> participant.getId().equals(sender.getUserId()));
+        if (!member) {
+            throw new ChatException("You are not a member of this chat");
+        }
+        ChatSyncResponse response = chatSyncService.sync(chatId, cursor, lastEventId);
+        attachmentUrlSigner.signAll(chatId, response.getMessages());
+        return response;
+    }
+
     @MessageMapping("/chat/{chatId}/sendMessage")
     @SendTo("/topic/chat/{chatId}")
     public Message sendMessage(@DestinationVariable Long chatId, @Payload Message message,
                                SimpMessageHeaderAccessor headerAccessor) {
-        String email = SecurityUtil.getSessionUserEmail(headerAccessor.getUser());
-        UserEntity user = null;
-        if (email == null || email.isEmpty()) {
-            // It`s temporary user (from conference chat)
-            user = userService.findUserByUsername(message.getAuthor()).orElse(null);
-        } else {
-            // it`s Permanent user
-            user = userService.findByEmail(email).orElse(null);
-        }
-        if (user == null) {
-            throw new AuthException("User not found");
-        }
+        // resolved once per session (permanent users by principal, temporary users by their user name)
+        StompSender sender = senderResolver.getSender(headerAccessor, message.getAuthor())
+                .orElseThrow(() -> new AuthException("User not found"));
 
         logger.info("Sending message" + headerAccessor.getUser());
 
-        message.setUser(user);
         message.setPubDate(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
 
-        messageService.saveMessage(message, chatId, user);
+        attachmentUrlSigner.unsign(message); // the uploader sends signed URLs, the saved message keeps the plain ones
+        messageWriteBehindService.submit(message, chatId, sender.getUserId(), sender.getAuthor()); // broadcast now, saved by the write-behind batch
+        attachmentUrlSigner.sign(chatId, message);
 
         return message;
     }
@@ -172,8 +243,10 @@ public class ChatController {
             } else {
                 // User want to join to chat by invitation
                 chat.addParticipant(currentUser);
-                chat.addMessage(message);
                 chatRepository.save(chat);
+                // saved like every other message (id from the allocator), never cascaded from the chat
+                message.setPubDate(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+                messageWriteBehindService.submit(message, chatId, currentUser);
                 return MessageMapper.getMessageViewFromMessage(message);
             }
         }
@@ -183,29 +256,28 @@ public class ChatController {
 
     @MessageMapping("/chat/{chatId}/delete")
     @SendTo("/topic/chat/{chatId}")
-    public MessageView deleteChat(@DestinationVariable Long chatId, Principal principal) {
-        String email = SecurityUtil.getSessionUserEmail(principal);
-        UserEntity user = userService.findByEmail(email).orElseThrow(() -> new AuthException("User not found"));
+    public MessageView deleteChat(@DestinationVariable Long chatId, SimpMessageHeaderAccessor headerAccessor) {
+        StompSender sender = senderResolver.getPermanentSender(headerAccessor).orElseThrow(() -> new AuthException("User not found"));
+        messageWriteBehindService.flush(); // buffered messages must be saved before the chat is deleted
         Chat chat = chatService.findById(chatId).orElseThrow();
         logger.info("Delete chat controller method is working");
 
         // implement "List.contains()" logic -> if i use regular contains method -> won`t working
+        // (UserEntity.chats is mappedBy participants -> one users_chats row, checking both sides read it twice)
         boolean userInChat = chat.getParticipants().stream()
-                .anyMatch(participant -> participant.getId().equals(user.getId()));
-
-        boolean chatInUserChats = user.getChats().stream()
-                .anyMatch(userChat -> userChat.getId().equals(chat.getId()));
+                .anyMatch(participant -> participant.getId().equals(sender.getUserId()));
 
-        if (chat != null && userInChat && chatInUserChats) {
+        if (chat != null && userInChat) {
             chatService.delete(chat);
+            chatSyncService.forgetChat(chatId);
             logger.info("Chat was deleted successfully");
             return MessageView.builder()
                     .type(MessageType.CHAT_DELETED)
-                    .author(email)
+                    .author(sender.getEmail())
                     .text("Chat deleted")
                     .build();
         } else {
-            logger.warn("Error deleting chat. User in chat: {}, Chat in user chats: {}", userInChat, chatInUserChats);
+            logger.warn("Error deleting chat. User {} is not in chat {}", sender.getUserId(), chatId);
             return null;
         }
     }
@@ -214,27 +286,24 @@ public class ChatController {
     @SendTo("/topic/chat/{chatId}")
     @Transactional
     public MessageView deleteMessage(@DestinationVariable Long chatId, @Payload DeleteMessageRequest request, SimpMessageHeaderAccessor headerAccessor) {
-        UserEntity user = userService.findByEmail(SecurityUtil.getSessionUserEmail(headerAccessor.getUser())).orElseThrow(() -> new AuthException("User not found"));
-        Message message = messageService.findById(request.getMessageId()).orElseThrow(() -> new ChatException("Message not found"));
+        StompSender sender = senderResolver.getPermanentSender(headerAccessor).orElseThrow(() -> new AuthException("User not found"));
+        Optional<Message> savedMessage = messageService.findById(request.getMessageId());
+        if (savedMessage.isEmpty()) { // message can still be in the write-behind buffer
+            messageWriteBehindService.flush();
+            savedMessage = messageService.findById(request.getMessageId());
+        }
+        Message message = savedMessage.orElseThrow(() -> new ChatException("Message not found"));
         Chat chat = chatService.findById(chatId).orElseThrow(() -> new ChatException("Chat not found"));
-        if (message != null && chat != null && message.getUser().equals(user)) {
+        if (message != null && chat != null && message.getUser() != null && message.getUser().getId().equals(sender.getUserId())) {
             messageService.deleteMessage(message, chat);
-            if (user.getEmail() != null && !user.getEmail().isEmpty()) {
-                return MessageView.builder() // for permanent users
-                        .type(MessageType.DELETE)
-                        .author(user.getEmail())
-                        .id(request.getMessageId())
-                        .text(request.getMessageId().toString())
-                        .build();
-            } else {
-                return MessageView.builder() // for temporary users
-                        .type(MessageType.DELETE)
-                        .author(user.getSurname())
-                        .id(request.getMessageId())
-                        .text(request.getMessageId().toString())
-                        .build();
-            }
-
+            ChatEvent event = chatSyncService.recordDelete(chatId, request.getMessageId());
+            return MessageView.builder()
+                    .type(MessageType.DELETE)
+                    .author(sender.getAuthor())
+                    .id(request.getMessageId())
+                    .text(request.getMessageId().toString())
+                    .eventId(event.getId())
+                    .build();
         } else {
             logger.warn("Could not delete message. User mismatch or message/chat not found.");
             return null;
@@ -246,33 +315,34 @@ public class ChatController {
     @SendTo("/topic/chat/{chatId}")
     public MessageView clearChat(@DestinationVariable Long chatId,
                                  SimpMessageHeaderAccessor headerAccessor) {
-        String email = SecurityUtil.getSessionUserEmail(headerAccessor.getUser());
-        UserEntity currentUser = userService.findByEmail(email).orElseThrow(() -> new AuthException("User not found"));
+        StompSender sender = senderResolver.getPermanentSender(headerAccessor).orElseThrow(() -> new AuthException("User not found"));
+        messageWriteBehindService.flush(); // buffered messages must be saved before the chat is cleared
         Chat chat = chatService.findById(chatId).orElseThrow();
         Conference conference = conferenceService.findConferenceByChat(chat);
 
         // implement "List.contains()" logic -> if i use regular contains method -> won`t working
+        // (UserEntity.chats is mappedBy participants -> one users_chats row, checking both sides read it twice)
         boolean userInChat = chat.getParticipants().stream()
-                .anyMatch(participant -> participant.getId().equals(currentUser.getId()));
-
-        boolean chatInUserChats = currentUser.getChats().stream()
-                .anyMatch(userChat -> userChat.getId().equals(chat.getId()));
+                .anyMatch(participant -> participant.getId().equals(sender.getUserId()));
 
         boolean userInProject = false;
         if (conference != null) {
             userInProject = conference.getUsers().stream()
-                    .anyMatch(user -> user.getId().equals(currentUser.getId()));
+                    .anyMatch(user -> user.getId().equals(sender.getUserId()));
 
         }
 
         logger.info("Chat clearing controller method is working");
 
-        if (chat != null && ((chatInUserChats && userInChat) || (conference != null && userInProject))) {
+        if (chat != null && (userInChat || (conference != null && userInProject))) {
+            ChatEvent event = chatSyncService.recordClear(chatId);
             chatService.clearMessages(chat);
             return MessageView.builder()
                     .type(MessageType.CLEAR)
                     .author("")
+                    .id(event.getMessageId())
                     .text("Chat was cleared")
+                    .eventId(event.getId())
                     .build();
         }
 
@@ -72,17 +72,12 @@ public class Chat {
     // Message
     @JsonIgnore
     @ToString.Exclude
-    @OneToMany(mappedBy = "chat", fetch = FetchType.EAGER, cascade = CascadeType.ALL, orphanRemoval = true)
+    @OneToMany(mappedBy = "chat", fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
+    // history is read page by page through MessageRepository, so messages are never loaded together with the chat
     // orphanRemoval child entities should be automatically deleted if they are no longer associated with the parent entity.
+    // messages are saved through MessageService / MessageWriteBehindService (ids from MessageIdAllocator), never added here
     private List<Message> messages = new ArrayList<>();
 
-    public void addMessage(Message message) {
-        if (!this.messages.contains(message)) {
-            this.messages.add(message);
-            message.setChat(this);
-        }
-    }
-
     // For Conference Chat
     @JsonIgnore
     @ToString.Exclude
@@ -0,0 +1,31 @@
+package com.example.webConf.model.chat;
+
+import com.example.webConf.config.message.MessageType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/// Delete / clear of chat messages, kept for a few days so reconnecting clients can catch up (see ChatSyncService)
+@Entity
+@Table(name = "chat_event", indexes = @Index(name = "idx_chat_event_chat_id_id", columnList = "chat_id, id"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "chat_id", nullable = false)
+    private Long chatId;
+
+    @Enumerated(EnumType.STRING)
+    private MessageType type;   // DELETE or CLEAR
+    private Long messageId;     // DELETE -> deleted message, CLEAR -> highest cleared message id
+    private LocalDateTime createdAt;
+}
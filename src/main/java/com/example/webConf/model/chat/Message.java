@@ -12,11 +12,23 @@ import lombok.*;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
+@Table(indexes = {
+        @Index(name = "idx_message_chat_id_id", columnList = "chat_id, id"),           // keyset pagination of chat history
+        @Index(name = "idx_message_chat_id_tx_id", columnList = "chat_id, tx_id, id")  // delta sync in commit order
+})
 public class Message {
+    ///  Assigned by MessageIdAllocator before the insert (the only id source of messages, so there is no generator here)
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
 
+    ///  Transaction that inserted the row (set by the database). Ids are handed out before the insert, so a lower id can be
+    ///  committed after a higher one -> ChatSyncService reads new messages in transaction order instead of id order.
+    ///  txid_current() (any Postgres version) gives the same 64 bit ids as pg_current_xact_id() (13+), so columns created
+    ///  with either default hold comparable values
+    @JsonIgnore
+    @Column(name = "tx_id", insertable = false, updatable = false, columnDefinition = "bigint DEFAULT txid_current()")
+    private Long txId;
+
     @Column(columnDefinition = "TEXT")
     private String text;
     private String author;
@@ -26,12 +38,12 @@ public class Message {
     private MessageType type;
 
     @JsonIgnore
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "chat_id")
     @ToString.Exclude
     private Chat chat;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "author_id")
     @ToString.Exclude
     @JsonIgnore
@@ -0,0 +1,25 @@
+package com.example.webConf.model.job;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/// Progress of a long running background job, so it can continue after a restart
+@Entity
+@Table(name = "job_checkpoint")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobCheckpoint {
+    @Id
+    private String jobName;
+    private Long lastId;      // last processed row id (jobs walk tables in id order)
+    private Long processed;   // rows processed since the job was started from scratch
+    private String state;
+    private LocalDateTime updatedAt;
+}
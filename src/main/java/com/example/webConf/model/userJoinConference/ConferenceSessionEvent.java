@@ -0,0 +1,38 @@
+package com.example.webConf.model.userJoinConference;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/// Join / leave history of the conferences (append-only, written in batches by ConferenceSessionService)
+@Entity
+@Table(name = "conference_session_log", indexes = @Index(name = "idx_conference_session_log_conference", columnList = "conference_id, created_at"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConferenceSessionEvent {
+    public enum Type {
+        JOIN, LEAVE
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "conference_id", nullable = false)
+    private String conferenceId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    private Type type;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
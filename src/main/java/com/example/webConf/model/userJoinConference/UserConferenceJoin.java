@@ -10,6 +10,8 @@ import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
 
+/// Open sessions of a user in a conference: one row per (user, conference), kept up to date by ConferenceSessionService
+/// (unique index "uk_user_conference_join" is created at startup, after old one-row-per-join rows are compacted)
 @Entity
 @Table(name = "user_conference_join")
 @Data
@@ -29,7 +31,9 @@ public class UserConferenceJoin {
     @JoinColumn(name = "conference_id")
     private Conference conference;
 
-    private LocalDateTime joinTime;
+    private LocalDateTime joinTime; // last join
+
+    private Integer sessions; // null -> row of the old one-row-per-join layout, not compacted yet
 
     @PrePersist
     public void prePersist() {
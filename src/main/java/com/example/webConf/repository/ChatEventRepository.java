@@ -0,0 +1,31 @@
+package com.example.webConf.repository;
+
+import com.example.webConf.model.chat.ChatEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ChatEventRepository extends JpaRepository<ChatEvent, Long> {
+
+    List<ChatEvent> findAllByChatIdAndIdGreaterThanOrderById(Long chatId, Long id);
+
+    @Query("SELECT MAX(e.id) FROM ChatEvent e WHERE e.chatId = :chatId")
+    Long findLastIdByChatId(@Param("chatId") Long chatId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ChatEvent e WHERE e.chatId = :chatId")
+    void deleteAllByChatId(@Param("chatId") Long chatId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ChatEvent e WHERE e.createdAt < :before")
+    int deleteAllCreatedBefore(@Param("before") LocalDateTime before);
+}
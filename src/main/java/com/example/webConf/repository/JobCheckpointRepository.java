@@ -0,0 +1,9 @@
+package com.example.webConf.repository;
+
+import com.example.webConf.model.job.JobCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface JobCheckpointRepository extends JpaRepository<JobCheckpoint, String> {
+}
@@ -1,8 +1,12 @@
 package com.example.webConf.repository;
 
+import com.example.webConf.dto.message.MessageView;
 import com.example.webConf.model.chat.Message;
 import com.example.webConf.model.user.UserEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -12,4 +16,27 @@ public interface MessageRepository extends JpaRepository<Message,Long> {
 
     List<Message> findAllByChatId(Long chaId);
     List<Message> findAllByUser(UserEntity user);
+
+    ///  Keyset pages of chat history (backed by idx_message_chat_id_id)
+    @Query("SELECT new com.example.webConf.dto.message.MessageView(m.id, m.text, m.author, m.pubDate, m.type, m.fileId, m.fileName, m.viewUrl, m.downloadUrl) " +
+            "FROM Message m WHERE m.chat.id = :chatId AND m.id < :before ORDER BY m.id DESC")
+    List<MessageView> findChatPageBefore(@Param("chatId") Long chatId, @Param("before") Long before, Pageable pageable);
+
+    @Query("SELECT new com.example.webConf.dto.message.MessageView(m.id, m.text, m.author, m.pubDate, m.type, m.fileId, m.fileName, m.viewUrl, m.downloadUrl) " +
+            "FROM Message m WHERE m.chat.id = :chatId AND m.id > :after ORDER BY m.id ASC")
+    List<MessageView> findChatPageAfter(@Param("chatId") Long chatId, @Param("after") Long after, Pageable pageable);
+
+    ///  Messages committed after a sync cursor (transaction, id), only by transactions below "horizon", in commit order
+    ///  (backed by idx_message_chat_id_tx_id)
+    @Query("SELECT new com.example.webConf.dto.message.MessageView(m.id, m.text, m.author, m.pubDate, m.type, m.fileId, m.fileName, m.viewUrl, m.downloadUrl, m.txId) " +
+            "FROM Message m WHERE m.chat.id = :chatId AND m.txId < :horizon AND (m.txId > :txId OR (m.txId = :txId AND m.id > :id)) ORDER BY m.txId ASC, m.id ASC")
+    List<MessageView> findChatPageCommittedAfter(@Param("chatId") Long chatId, @Param("txId") long txId, @Param("id") long id,
+                                                 @Param("horizon") long horizon, Pageable pageable);
+
+    ///  Every transaction below this id has finished, the ones from here on may still commit (same ids as txid_current())
+    @Query(value = "SELECT txid_snapshot_xmin(txid_current_snapshot())", nativeQuery = true)
+    long findTransactionHorizon();
+
+    @Query("SELECT MAX(m.id) FROM Message m WHERE m.chat.id = :chatId")
+    Long findLastIdByChatId(@Param("chatId") Long chatId);
 }
@@ -1,16 +1,59 @@
 package com.example.webConf.repository;
 
+import com.example.webConf.dto.conference.ActiveConference;
+import com.example.webConf.dto.conference.UserJoinCount;
 import com.example.webConf.model.conference.Conference;
 import com.example.webConf.model.user.UserEntity;
 import com.example.webConf.model.userJoinConference.UserConferenceJoin;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserConferenceJoinRepository  extends JpaRepository<UserConferenceJoin,Long> {
 
-    Integer countByUserAndConference(UserEntity userEntity, Conference conference);
     Optional<UserConferenceJoin> findFirstByUserAndConference(UserEntity user, Conference conference);
+
+    ///  Join counts of all users of a conference in one query
+    @Query("SELECT new com.example.webConf.dto.conference.UserJoinCount(u.userName, SUM(j.sessions)) FROM UserConferenceJoin j JOIN j.user u WHERE j.conference.id = :conferenceId GROUP BY u.userName")
+    List<UserJoinCount> countJoinsByConferenceId(@Param("conferenceId") String conferenceId);
+
+    ///  Join count of one user of a conference (same grouping by user name as countJoinsByConferenceId)
+    @Query("SELECT COALESCE(SUM(j.sessions), 0) FROM UserConferenceJoin j JOIN j.user u WHERE j.conference.id = :conferenceId AND u.userName = :userName")
+    long countJoinsByConferenceIdAndUserName(@Param("conferenceId") String conferenceId, @Param("userName") String userName);
+
+    ///  Conferences a user is in, served by the unique (user_id, conference_id) index (user_id is its leading column)
+    @Query("SELECT new com.example.webConf.dto.conference.ActiveConference(c.id, c.conferenceDate, j.sessions, j.joinTime) FROM UserConferenceJoin j JOIN j.conference c " +
+            "WHERE j.user.id = :userId AND j.sessions > 0 ORDER BY j.joinTime DESC")
+    List<ActiveConference> findActiveConferencesByUserId(@Param("userId") Long userId);
+
+    ///  Session counters (ConferenceSessionService), deltas so concurrent joins and leaves add up in any order
+    @Modifying
+    @Query(value = "INSERT INTO user_conference_join (user_id, conference_id, sessions, join_time) VALUES (:userId, :conferenceId, 1, now()) " +
+            "ON CONFLICT (user_id, conference_id) DO UPDATE SET sessions = user_conference_join.sessions + 1, join_time = now()", nativeQuery = true)
+    void addSession(@Param("conferenceId") String conferenceId, @Param("userId") Long userId);
+
+    ///  0 -> the user had no open session in the conference
+    @Modifying
+    @Query(value = "UPDATE user_conference_join SET sessions = sessions - 1 WHERE user_id = :userId AND conference_id = :conferenceId AND sessions > 0", nativeQuery = true)
+    int removeSession(@Param("conferenceId") String conferenceId, @Param("userId") Long userId);
+
+    ///  Membership check on the unique (user_id, conference_id) index
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM user_conference_join WHERE user_id = :userId AND conference_id = :conferenceId AND sessions > 0)", nativeQuery = true)
+    boolean hasSession(@Param("conferenceId") String conferenceId, @Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "DELETE FROM user_conference_join WHERE user_id = :userId AND conference_id = :conferenceId AND sessions <= 0", nativeQuery = true)
+    int deleteIfNoSessions(@Param("conferenceId") String conferenceId, @Param("userId") Long userId);
+
+    ///  Joins left behind by pages closed without a leave (compacted when the conference ends)
+    @Modifying
+    @Query("DELETE FROM UserConferenceJoin j WHERE j.conference.id = :conferenceId AND j.joinTime < :before")
+    int deleteAllByConferenceIdAndJoinTimeBefore(@Param("conferenceId") String conferenceId, @Param("before") LocalDateTime before);
 }
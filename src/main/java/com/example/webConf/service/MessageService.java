@@ -1,5 +1,7 @@
 package com.example.webConf.service;
 
+import com.example.webConf.dto.message.MessagePage;
+import com.example.webConf.dto.message.MessageView;
 import com.example.webConf.model.chat.Chat;
 import com.example.webConf.model.chat.Message;
 import com.example.webConf.model.user.UserEntity;
@@ -11,8 +13,16 @@ import java.util.Optional;
 public interface MessageService {
     List<Message> findAllChatMessage(Long chatId);
 
+    MessagePage findChatMessagesPage(Long chatId, Long before, Long after, Integer size);
+
+    /// Delta sync: messages committed after (txId, id) by transactions below "horizon", in commit order, at most "limit"
+    List<MessageView> findChatMessagesCommittedAfter(Long chatId, long txId, long id, long horizon, int limit);
+
     Message saveMessage(Message message, Long chatId, UserEntity user);
 
+    /// Append-only insert, needs only the chat id and the author id (author must be already set on the message)
+    Message appendMessage(Message message, Long chatId, Long authorId);
+
     Optional<Message> findById(Long message);
 
     @Transactional
@@ -0,0 +1,5 @@
+package com.example.webConf.service.event;
+
+/// Published by the conference roster when a conference gets its first participant or loses its last one
+public record ConferenceOccupancyEvent(String conferenceId, boolean occupied) {
+}
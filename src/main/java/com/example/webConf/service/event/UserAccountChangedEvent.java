@@ -0,0 +1,5 @@
+package com.example.webConf.service.event;
+
+/// Published when an account is edited or deleted (cached identities of this user must be resolved again)
+public record UserAccountChangedEvent(Long userId) {
+}
@@ -0,0 +1,108 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.AttachmentStorageStats;
+import com.example.webConf.model.attachment.AttachmentBlob;
+import com.example.webConf.repository.AttachmentBlobRepository;
+import com.example.webConf.service.storage.BlobStore;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// Reference counts of blob store contents ("attachment_blob").
+/// Both methods run inside the caller's transaction and hold the row lock of the key while the file is created or deleted,
+/// so an upload of some content and the deletion of its last other reference can not interleave.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AttachmentBlobService {
+    private static final String STATS_SQL = "SELECT COUNT(*), COALESCE(SUM(ref_count), 0), COALESCE(SUM(size), 0), COALESCE(SUM(size * ref_count), 0) FROM attachment_blob";
+    private static final String LARGE_OBJECTS_SQL = "SELECT COUNT(*) FROM attachment WHERE storage_key IS NULL AND data IS NOT NULL";
+
+    private final AttachmentBlobRepository attachmentBlobRepository;
+    private final BlobStore blobStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /// Metrics
+    private final AtomicLong deduplicatedUploads = new AtomicLong();
+    private final AtomicLong deduplicatedBytes = new AtomicLong();
+    private final AtomicLong uploads = new AtomicLong();
+    private final AtomicLong uploadNanos = new AtomicLong();
+
+    /// Before the first request: blobs stored before reference counting get their counts
+    @PostConstruct
+    public void countExistingReferences() {
+        Integer inserted = transactionTemplate.execute(status -> attachmentBlobRepository.insertMissingReferences());
+        if (inserted != null && inserted > 0) {
+            log.info("Counted references of {} existing attachment blobs", inserted);
+        }
+    }
+
+    /// One more attachment row for this content, the staged file becomes the blob unless the content is already stored
+    public void addReference(BlobStore.StagedBlob blob) {
+        attachmentBlobRepository.addReference(blob.key(), blob.size());
+        try {
+            if (!blobStore.commit(blob)) {
+                deduplicatedUploads.incrementAndGet();
+                deduplicatedBytes.addAndGet(blob.size());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /// Duration of an upload's save transaction (throughput of concurrent uploads on the control page)
+    public void recordUpload(long nanos) {
+        uploads.incrementAndGet();
+        uploadNanos.addAndGet(nanos);
+    }
+
+    /// The blob is deleted with its last reference.
+    /// This happens before the commit: deleting afterwards could remove a file that a concurrent upload just counted on.
+    public void removeReference(String storageKey) {
+        AttachmentBlob blob = attachmentBlobRepository.findForUpdate(storageKey).orElse(null);
+        if (blob == null) {
+            log.warn("No reference count for blob {}", storageKey);
+            return;
+        }
+        if (blob.getRefCount() > 1) {
+            blob.setRefCount(blob.getRefCount() - 1);
+            return;
+        }
+        attachmentBlobRepository.delete(blob);
+        try {
+            blobStore.delete(storageKey);
+        } catch (IOException e) {
+            log.warn("Unable to delete blob {}: {}", storageKey, e.getMessage());
+        }
+    }
+
+    public AttachmentStorageStats getStats() {
+        Long largeObjects = jdbcTemplate.queryForObject(LARGE_OBJECTS_SQL, Long.class);
+        long uploadCount = uploads.get();
+        return jdbcTemplate.queryForObject(STATS_SQL, (rs, rowNum) -> {
+            long storedBytes = rs.getLong(3);
+            long logicalBytes = rs.getLong(4);
+            return AttachmentStorageStats.builder()
+                    .blobs(rs.getLong(1))
+                    .references(rs.getLong(2))
+                    .storedBytes(storedBytes)
+                    .logicalBytes(logicalBytes)
+                    .savedBytes(logicalBytes - storedBytes)
+                    .savedPercent(logicalBytes == 0 ? 0 : (logicalBytes - storedBytes) * 100.0 / logicalBytes)
+                    .largeObjects(largeObjects != null ? largeObjects : 0)
+                    .deduplicatedUploads(deduplicatedUploads.get())
+                    .deduplicatedBytes(deduplicatedBytes.get())
+                    .uploads(uploadCount)
+                    .averageUploadMillis(uploadCount == 0 ? 0 : uploadNanos.get() / 1_000_000.0 / uploadCount)
+                    .build();
+        });
+    }
+}
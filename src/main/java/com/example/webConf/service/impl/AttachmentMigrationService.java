@@ -0,0 +1,298 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.AttachmentMigrationStatus;
+import com.example.webConf.model.job.JobCheckpoint;
+import com.example.webConf.repository.JobCheckpointRepository;
+import com.example.webConf.service.storage.BlobStore;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/// Background move of attachment contents from Postgres large objects ("attachment.data") to the blob store.
+/// Every row is copied on its own: the large object is streamed into the store in a read-only transaction, then a short
+/// writing one gives the row the storage key (counted in "attachment_blob") and unlinks the large object. Rows are walked in id order, the last id is saved in "job_checkpoint".
+/// Throughput is capped by "max-bytes-per-second" so downloads and uploads keep their share of the database.
+@Service
+@Slf4j
+public class AttachmentMigrationService {
+    public static final String JOB_NAME = "attachment-lob-migration";
+
+    private static final String SELECT_CHUNK_SQL = "SELECT id FROM attachment WHERE id > ? AND storage_key IS NULL AND data IS NOT NULL ORDER BY id LIMIT ?";
+    private static final String COUNT_REMAINING_SQL = "SELECT COUNT(*) FROM attachment WHERE storage_key IS NULL AND data IS NOT NULL";
+    private static final String SELECT_DATA_SQL = "SELECT data, chat_id, user_id FROM attachment WHERE id = ? AND storage_key IS NULL AND data IS NOT NULL";
+    // "FOR UPDATE" -> a concurrent delete of the attachment waits until the row is switched over (or finds it migrated)
+    private static final String LOCK_SQL = "SELECT id FROM attachment WHERE id = ? AND data = CAST(? AS oid) AND storage_key IS NULL FOR UPDATE";
+    private static final String UPDATE_SQL = "UPDATE attachment SET storage_key = ?, file_size = ?, data = NULL WHERE id = ?";
+    private static final String UNLINK_SQL = "SELECT lo_unlink(CAST(? AS oid))";
+
+    private final BlobStore blobStore;
+    private final AttachmentBlobService attachmentBlobService;
+    private final StorageQuotaService storageQuotaService;
+    private final JobCheckpointRepository checkpointRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final int chunkSize;
+    private final long maxBytesPerSecond;
+    private final boolean resumeOnStartup;
+
+    private volatile AttachmentMigrationStatus.State state = AttachmentMigrationStatus.State.IDLE;
+    private volatile boolean stopRequested;
+    private Thread worker;
+
+    /// Current run
+    private volatile long lastId;
+    private volatile long maxId;
+    private volatile long processed;
+    private volatile long migrated;
+    private volatile long failed;
+    private volatile long remaining;
+    private volatile long bytesMigrated;
+    private volatile long runStartNanos;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime updatedAt;
+    private volatile String lastError;
+
+    public AttachmentMigrationService(BlobStore blobStore,
+                                      AttachmentBlobService attachmentBlobService,
+                                      StorageQuotaService storageQuotaService,
+                                      JobCheckpointRepository checkpointRepository,
+                                      JdbcTemplate jdbcTemplate,
+                                      TransactionTemplate transactionTemplate,
+                                      @Value("${attachment.migration.chunk-size}") int chunkSize,
+                                      @Value("${attachment.migration.max-bytes-per-second}") long maxBytesPerSecond,
+                                      @Value("${attachment.migration.resume-on-startup}") boolean resumeOnStartup,
+                                      @Value("${chat.sync.job-transaction-timeout-seconds}") int jobTransactionTimeoutSeconds) {
+        this.blobStore = blobStore;
+        this.attachmentBlobService = attachmentBlobService;
+        this.storageQuotaService = storageQuotaService;
+        this.checkpointRepository = checkpointRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        // writing transactions hold back the delta sync horizon (ChatSyncService) -> cut off after a bounded time
+        this.transactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.transactionTemplate.setTimeout(jobTransactionTimeoutSeconds);
+        // large objects can only be read inside a transaction, a read-only one holds no transaction id
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.chunkSize = chunkSize;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.resumeOnStartup = resumeOnStartup;
+    }
+
+    ///  Continue a run that was interrupted by a shutdown
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeAfterRestart() {
+        if (!resumeOnStartup) {
+            return;
+        }
+        checkpointRepository.findById(JOB_NAME)
+                .filter(checkpoint -> AttachmentMigrationStatus.State.RUNNING.name().equals(checkpoint.getState()))
+                .ifPresent(checkpoint -> {
+                    log.info("Resuming attachment migration from id {}", checkpoint.getLastId());
+                    start();
+                });
+    }
+
+    public synchronized AttachmentMigrationStatus start() {
+        if (worker != null && worker.isAlive()) {
+            return getStatus();
+        }
+        JobCheckpoint checkpoint = checkpointRepository.findById(JOB_NAME).orElse(null);
+        lastId = checkpoint != null && checkpoint.getLastId() != null ? checkpoint.getLastId() : 0;
+        processed = checkpoint != null && checkpoint.getProcessed() != null ? checkpoint.getProcessed() : 0;
+        maxId = Objects.requireNonNullElse(jdbcTemplate.queryForObject("SELECT MAX(id) FROM attachment", Long.class), 0L);
+        remaining = Objects.requireNonNullElse(jdbcTemplate.queryForObject(COUNT_REMAINING_SQL, Long.class), 0L);
+        migrated = 0;
+        failed = 0;
+        bytesMigrated = 0;
+        lastError = null;
+        stopRequested = false;
+        startedAt = LocalDateTime.now();
+        runStartNanos = System.nanoTime();
+        state = AttachmentMigrationStatus.State.RUNNING;
+        saveCheckpoint();
+
+        log.info("Attachment migration started from id {} (max id {}, {} large objects left)", lastId, maxId, remaining);
+        worker = new Thread(this::run, "attachment-migration");
+        worker.setDaemon(true);
+        worker.start();
+        return getStatus();
+    }
+
+    /// Pause the job, the checkpoint is kept so start() continues from there
+    public synchronized AttachmentMigrationStatus stop() {
+        if (worker != null && worker.isAlive()) {
+            stopRequested = true;
+            state = AttachmentMigrationStatus.State.STOPPING;
+        }
+        return getStatus();
+    }
+
+    /// Forget the checkpoint, the next start() walks the whole table again (retries failed rows)
+    public synchronized AttachmentMigrationStatus reset() {
+        if (worker != null && worker.isAlive()) {
+            return getStatus();
+        }
+        checkpointRepository.deleteById(JOB_NAME);
+        lastId = 0;
+        processed = 0;
+        state = AttachmentMigrationStatus.State.IDLE;
+        return getStatus();
+    }
+
+    public AttachmentMigrationStatus getStatus() {
+        long elapsedNanos = System.nanoTime() - runStartNanos;
+        double bytesPerSecond = runStartNanos == 0 || elapsedNanos <= 0 ? 0 : bytesMigrated / (elapsedNanos / 1_000_000_000.0);
+        return AttachmentMigrationStatus.builder()
+                .state(state)
+                .lastId(lastId)
+                .maxId(maxId)
+                .processed(processed)
+                .migrated(migrated)
+                .failed(failed)
+                .remaining(remaining)
+                .bytesMigrated(bytesMigrated)
+                .progressPercent(maxId == 0 ? (state == AttachmentMigrationStatus.State.COMPLETED ? 100 : 0) : Math.min(100, lastId * 100.0 / maxId))
+                .bytesPerSecond(bytesPerSecond)
+                .maxBytesPerSecond(maxBytesPerSecond)
+                .startedAt(startedAt)
+                .updatedAt(updatedAt)
+                .lastError(lastError)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Thread current = worker;
+        if (current != null && current.isAlive()) {
+            stopRequested = true; // checkpoint keeps state RUNNING -> resumed after restart
+            try {
+                current.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            while (!stopRequested) {
+                List<Long> chunk = jdbcTemplate.queryForList(SELECT_CHUNK_SQL, Long.class, lastId, chunkSize);
+                if (chunk.isEmpty()) {
+                    state = AttachmentMigrationStatus.State.COMPLETED;
+                    saveCheckpoint();
+                    log.info("Attachment migration completed: {} rows ({} bytes) moved, {} failed", migrated, bytesMigrated, failed);
+                    return;
+                }
+                for (Long id : chunk) {
+                    if (stopRequested) {
+                        break;
+                    }
+                    migrate(id);
+                    lastId = id;
+                    processed++;
+                    throttle();
+                }
+                saveCheckpoint();
+            }
+            // shutdown() leaves the state RUNNING on purpose, stop() from the control page marks it as stopped
+            if (state == AttachmentMigrationStatus.State.STOPPING) {
+                state = AttachmentMigrationStatus.State.STOPPED;
+            }
+            saveCheckpoint();
+            log.info("Attachment migration paused at id {}", lastId);
+        } catch (Exception e) {
+            log.error("Attachment migration failed at id {}", lastId, e);
+            lastError = e.getMessage();
+            state = AttachmentMigrationStatus.State.FAILED;
+            saveCheckpoint();
+        }
+    }
+
+    /// One row at a time, copied in a read-only transaction (however big the file, nothing is locked and the delta sync horizon
+    /// is not held back), switched over in a writing one that only proceeds if the row still points at the copied object.
+    private void migrate(long id) {
+        Migrated[] staged = new Migrated[1];
+        try {
+            staged[0] = readOnlyTransactionTemplate.execute(status -> jdbcTemplate.query(SELECT_DATA_SQL, rs -> rs.next()
+                    ? copyToStore(rs.getLong(1), rs.getBlob(1), rs.getObject(2, Long.class), rs.getObject(3, Long.class))
+                    : null, id));
+            Migrated copy = staged[0];
+            if (copy == null) {
+                return; // deleted or migrated meanwhile
+            }
+            Boolean switched = transactionTemplate.execute(status -> {
+                if (jdbcTemplate.queryForList(LOCK_SQL, Long.class, id, copy.oid()).isEmpty()) {
+                    return false; // deleted or migrated while it was copied
+                }
+                attachmentBlobService.addReference(copy.blob()); // content may already be in the store (deduplicated)
+                jdbcTemplate.update(UPDATE_SQL, copy.blob().key(), copy.blob().size(), id);
+                jdbcTemplate.queryForObject(UNLINK_SQL, Integer.class, copy.oid());
+                storageQuotaService.addBytes(copy.chatId(), copy.userId(), copy.blob().size()); // counted with size 0 so far
+                return true;
+            });
+            if (Boolean.TRUE.equals(switched)) {
+                migrated++;
+                bytesMigrated += copy.blob().size();
+            }
+        } catch (Exception e) {
+            log.warn("Unable to migrate attachment {}: {}", id, e.getMessage());
+            failed++;
+        } finally {
+            if (staged[0] != null) {
+                blobStore.discard(staged[0].blob());
+            }
+        }
+    }
+
+    private Migrated copyToStore(long oid, Blob data, Long chatId, Long userId) throws SQLException {
+        try (InputStream content = data.getBinaryStream()) {
+            return new Migrated(oid, blobStore.stage(content), chatId, userId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            data.free();
+        }
+    }
+
+    /// Sleep until the run is back under "max-bytes-per-second"
+    private void throttle() throws InterruptedException {
+        if (maxBytesPerSecond <= 0) {
+            return;
+        }
+        long expectedNanos = (long) (bytesMigrated * 1_000_000_000.0 / maxBytesPerSecond);
+        long aheadNanos = expectedNanos - (System.nanoTime() - runStartNanos);
+        if (aheadNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        }
+    }
+
+    private void saveCheckpoint() {
+        updatedAt = LocalDateTime.now();
+        checkpointRepository.save(JobCheckpoint.builder()
+                .jobName(JOB_NAME)
+                .lastId(lastId)
+                .processed(processed)
+                .state(state.name())
+                .updatedAt(updatedAt)
+                .build());
+    }
+
+    private record Migrated(long oid, BlobStore.StagedBlob blob, Long chatId, Long userId) {
+    }
+}
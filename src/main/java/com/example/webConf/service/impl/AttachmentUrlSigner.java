@@ -0,0 +1,163 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.AttachmentMetadata;
+import com.example.webConf.dto.message.MessageView;
+import com.example.webConf.model.chat.Message;
+import com.example.webConf.repository.AttachmentRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/// Short-lived HMAC-signed attachment URLs.
+/// The URL carries the attachment id, storage key, file name, type and expiry, so "/files/signed/..." streams the blob
+/// after checking the signature only (no session user, attachment or chat lookup). The permission check happens once,
+/// when the URL is issued: files are signed only for the chat they were sent to.
+/// Expiries are aligned to "ttl-seconds" windows -> every page rendered in the same window gets the same URL (browser cache).
+/// Rows still kept as large objects get no signed URL and keep using the session checked "/files/view|download/{id}".
+/// Signed by HmacSigner (its own key, see ChatAccessTokenService).
+@Service
+public class AttachmentUrlSigner {
+
+    public enum Mode {
+        DOWNLOAD, VIEW, THUMBNAIL;
+
+        public String path() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        public static Optional<Mode> fromPath(String path) {
+            return Arrays.stream(values()).filter(mode -> mode.path().equals(path)).findFirst();
+        }
+    }
+
+    public enum Verification {
+        VALID, EXPIRED, INVALID
+    }
+
+    private final AttachmentRepository attachmentRepository;
+    private final HmacSigner signer;
+    private final long ttlSeconds;
+    // storage key, name and type never change -> issuing URLs for a history page is one query for the unseen files
+    private final Cache<Long, AttachmentMetadata> metadata = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    public AttachmentUrlSigner(AttachmentRepository attachmentRepository,
+                               HmacSigner signer,
+                               @Value("${attachment.signed-url.ttl-seconds}") long ttlSeconds) {
+        this.attachmentRepository = attachmentRepository;
+        this.signer = signer;
+        this.ttlSeconds = Math.max(60, ttlSeconds);
+    }
+
+    /// URL of an attachment whose permission was already checked, null for rows without a storage key
+    public String sign(Mode mode, AttachmentMetadata attachment) {
+        if (attachment.getStorageKey() == null) {
+            return null;
+        }
+        long expires = (Instant.now().getEpochSecond() / ttlSeconds + 2) * ttlSeconds; // valid for ttl..2*ttl
+        String name = Objects.requireNonNullElse(attachment.getFileName(), "");
+        String type = Objects.requireNonNullElse(attachment.getFileType(), "");
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("mode", mode.path());
+        parameters.put("id", attachment.getId());
+        parameters.put("key", attachment.getStorageKey());
+        parameters.put("name", name);
+        parameters.put("type", type);
+        parameters.put("expires", expires);
+        parameters.put("signature", signer.sign(HmacSigner.Purpose.ATTACHMENT_URL,
+                payload(mode, attachment.getId(), attachment.getStorageKey(), name, type, expires)));
+        // all values as template variables -> strictly encoded ("+" in a file name is not read back as a space)
+        return UriComponentsBuilder.fromPath("/files/signed/{mode}/{id}")
+                .queryParam("key", "{key}")
+                .queryParam("name", "{name}")
+                .queryParam("type", "{type}")
+                .queryParam("expires", "{expires}")
+                .queryParam("signature", "{signature}")
+                .encode()
+                .buildAndExpand(parameters)
+                .toUriString();
+    }
+
+    public Verification verify(Mode mode, Long fileId, String key, String name, String type, long expires, String signature) {
+        String payload = payload(mode, fileId, key, Objects.requireNonNullElse(name, ""), Objects.requireNonNullElse(type, ""), expires);
+        if (!signer.verify(HmacSigner.Purpose.ATTACHMENT_URL, payload, signature)) {
+            return Verification.INVALID;
+        }
+        return expires < Instant.now().getEpochSecond() ? Verification.EXPIRED : Verification.VALID;
+    }
+
+    /// Seconds until the URL expires (browser cache lifetime of the response)
+    public long remainingSeconds(long expires) {
+        return Math.max(0, expires - Instant.now().getEpochSecond());
+    }
+
+    /// Replace the stored URLs of a history page by signed ones (only files that belong to the chat)
+    public void signAll(Long chatId, List<MessageView> messages) {
+        Set<Long> fileIds = new HashSet<>();
+        messages.forEach(message -> {
+            if (message.getFileId() != null) {
+                fileIds.add(message.getFileId());
+            }
+        });
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        Map<Long, AttachmentMetadata> attachments = findAll(fileIds);
+        for (MessageView message : messages) {
+            AttachmentMetadata attachment = message.getFileId() != null ? attachments.get(message.getFileId()) : null;
+            if (attachment == null || attachment.getStorageKey() == null || !chatId.equals(attachment.getChatId())) {
+                continue;
+            }
+            message.setViewUrl(sign(Mode.VIEW, attachment));
+            message.setDownloadUrl(sign(Mode.DOWNLOAD, attachment));
+            if (message.getThumbnailUrl() != null) {
+                message.setThumbnailUrl(sign(Mode.THUMBNAIL, attachment));
+            }
+        }
+    }
+
+    /// Live message: the stored URLs are the plain ones, the broadcast carries signed ones
+    public void sign(Long chatId, Message message) {
+        if (message.getFileId() == null) {
+            return;
+        }
+        AttachmentMetadata attachment = findAll(Set.of(message.getFileId())).get(message.getFileId());
+        if (attachment == null || attachment.getStorageKey() == null || !chatId.equals(attachment.getChatId())) {
+            return;
+        }
+        message.setViewUrl(sign(Mode.VIEW, attachment));
+        message.setDownloadUrl(sign(Mode.DOWNLOAD, attachment));
+    }
+
+    /// Plain, session checked URLs of a message file (what is saved with the message)
+    public void unsign(Message message) {
+        if (message.getFileId() != null) {
+            message.setViewUrl("/files/view/" + message.getFileId());
+            message.setDownloadUrl("/files/download/" + message.getFileId());
+        }
+    }
+
+    public void evict(Long fileId) {
+        metadata.invalidate(fileId);
+    }
+
+    private Map<Long, AttachmentMetadata> findAll(Set<Long> fileIds) {
+        return metadata.getAll(fileIds, missing -> {
+            Map<Long, AttachmentMetadata> loaded = new HashMap<>();
+            attachmentRepository.findAllMetadataByIdIn(new ArrayList<>(missing)).forEach(attachment -> loaded.put(attachment.getId(), attachment));
+            return loaded;
+        });
+    }
+
+    private static String payload(Mode mode, Long fileId, String key, String name, String type, long expires) {
+        return mode.path() + '\n' + fileId + '\n' + key + '\n' + name + '\n' + type + '\n' + expires;
+    }
+}
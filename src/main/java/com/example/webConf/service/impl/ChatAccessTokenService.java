@@ -0,0 +1,59 @@
+package com.example.webConf.service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/// HMAC-signed chat access tokens, "userId.expires.signature".
+/// Temporary conference users have no session principal, so the conference page (after its membership check) hands out a
+/// token naming the user it was rendered for. History requests of conference chats identify the user by the token only,
+/// never by a user name the caller sends.
+/// Signed by HmacSigner (its own key, a token is never a valid attachment URL signature or the other way round).
+@Service
+public class ChatAccessTokenService {
+    private static final Pattern TOKEN = Pattern.compile("^(\\d+)\\.(\\d+)\\.([A-Za-z0-9_-]+)$");
+
+    private final HmacSigner signer;
+    private final long ttlSeconds;
+
+    public ChatAccessTokenService(HmacSigner signer,
+                                  @Value("${chat.history.token-ttl-seconds}") long ttlSeconds) {
+        this.signer = signer;
+        this.ttlSeconds = Math.max(60, ttlSeconds);
+    }
+
+    /// Token of a user whose access to the chat was already checked
+    public String issue(Long chatId, Long userId) {
+        long expires = Instant.now().getEpochSecond() + ttlSeconds;
+        return userId + "." + expires + "." + signer.sign(HmacSigner.Purpose.CHAT_ACCESS_TOKEN, payload(chatId, userId, expires));
+    }
+
+    /// Id of the user the token was issued to, empty for a missing, forged or expired token
+    public Optional<Long> verify(Long chatId, String token) {
+        Matcher matcher = token != null ? TOKEN.matcher(token) : null;
+        if (matcher == null || !matcher.matches()) {
+            return Optional.empty();
+        }
+        long userId;
+        long expires;
+        try {
+            userId = Long.parseLong(matcher.group(1));
+            expires = Long.parseLong(matcher.group(2));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+        if (!signer.verify(HmacSigner.Purpose.CHAT_ACCESS_TOKEN, payload(chatId, userId, expires), matcher.group(3))
+                || expires < Instant.now().getEpochSecond()) {
+            return Optional.empty();
+        }
+        return Optional.of(userId);
+    }
+
+    private static String payload(Long chatId, Long userId, long expires) {
+        return String.valueOf(chatId) + '\n' + userId + '\n' + expires;
+    }
+}
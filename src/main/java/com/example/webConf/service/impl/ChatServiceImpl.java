@@ -1,11 +1,13 @@
 package com.example.webConf.service.impl;
 
+import com.example.webConf.model.attachment.Attachment;
 import com.example.webConf.model.chat.Chat;
 import com.example.webConf.model.chat.Message;
 import com.example.webConf.model.conference.Conference;
 import com.example.webConf.model.user.UserEntity;
 import com.example.webConf.repository.ChatRepository;
 import com.example.webConf.repository.ConferenceRepository;
+import com.example.webConf.service.AttachmentService;
 import com.example.webConf.service.ChatService;
 import com.example.webConf.service.ConferenceService;
 import com.example.webConf.service.MessageService;
@@ -39,6 +41,9 @@ public class ChatServiceImpl implements ChatService {
     private ConferenceService conferenceService;
     @Autowired
     private ConferenceRepository conferenceRepository;
+    @Lazy
+    @Autowired
+    private AttachmentService attachmentService;
 
     @Transactional
     @Override
@@ -92,7 +97,10 @@ public class ChatServiceImpl implements ChatService {
 
     @Transactional
     @Override
-    public void delete(Chat chat) {
+    public void delete(Chat detachedChat) {
+        // messages are loaded lazily -> work with the managed instance
+        Chat chat = chatRepository.findById(detachedChat.getId())
+                .orElseThrow(() -> new EntityNotFoundException("Chat not found"));
         if (chat.getParticipants() != null) {
             List<UserEntity> participants = new ArrayList<>(chat.getParticipants());
             for (UserEntity user : participants) {
@@ -111,6 +119,17 @@ public class ChatServiceImpl implements ChatService {
             chat.getMessages().clear();
         }
 
+        if (chat.getAttachments() != null) {
+            // files that were never sent as a message -> their blob references are released as well
+            for (Attachment attachment : new ArrayList<>(chat.getAttachments())) {
+                try {
+                    attachmentService.deleteAttachment(chat.getId(), attachment.getId());
+                } catch (Exception e) {
+                    log.error("Unable to delete file {}: {}", attachment.getId(), e.getMessage());
+                }
+            }
+        }
+
         chatRepository.delete(chat);
     }
     @Override
@@ -120,14 +139,15 @@ public class ChatServiceImpl implements ChatService {
 
     @Transactional
     @Override
-    public void clearMessages(Chat chat) {
-        Chat managedChat = chatRepository.findById(chat.getId())
+    public void clearMessages(Chat detachedChat) {
+        // messages are loaded lazily -> work with the managed instance only, the caller's chat is detached
+        Chat managedChat = chatRepository.findById(detachedChat.getId())
                 .orElseThrow(() -> new EntityNotFoundException("Chat not found"));
 
         List<Message> messages = new ArrayList<>(managedChat.getMessages());
         for (Message message : messages) {
             managedChat.getMessages().remove(message);
-            messageService.deleteMessage(message, chat);
+            messageService.deleteMessage(message, managedChat);
         }
 
         managedChat.getMessages().clear();
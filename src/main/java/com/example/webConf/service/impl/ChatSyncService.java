@@ -0,0 +1,147 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.config.message.MessageType;
+import com.example.webConf.dto.message.ChatSyncResponse;
+import com.example.webConf.dto.message.MessageView;
+import com.example.webConf.model.chat.ChatEvent;
+import com.example.webConf.repository.ChatEventRepository;
+import com.example.webConf.repository.MessageRepository;
+import com.example.webConf.service.MessageService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/// Delta sync for reconnecting chat clients.
+/// Deletes and clears are recorded as chat events, a client sends the last event id it has seen and the cursor of its last
+/// sync (or of the rendered page) and gets only the events and messages after them.
+/// Message ids are handed out before the insert (write-behind, several instances), so a lower id can be committed after a
+/// higher one: the cursor is not a message id but a position in commit order, "transaction:id". Messages are read in
+/// (tx_id, id) order and only from transactions below the horizon (txid_snapshot_xmin), which have all finished, so nothing
+/// committed later can fall behind a cursor. A cursor can send a message the client already has (live broadcast), the
+/// chat scripts skip ids they show already.
+/// The horizon is the oldest writing transaction still open anywhere in the database: while one stays open, messages
+/// committed after it started are synced only once it ends (they are still broadcast live). Read-only transactions hold
+/// no transaction id and do not count. The background jobs keep their writing transactions short (one chunk or batch,
+/// cut off after "chat.sync.job-transaction-timeout-seconds"), the attachment migration copies large objects in
+/// read-only transactions.
+@Service
+@Slf4j
+public class ChatSyncService {
+    private static final Pattern CURSOR = Pattern.compile("^(\\d+):(\\d+)$");
+
+    private final ChatEventRepository chatEventRepository;
+    private final MessageRepository messageRepository;
+    private final MessageService messageService;
+    private final MessageWriteBehindService messageWriteBehindService;
+    private final int maxMessages;
+    private final int eventRetentionDays;
+
+    public ChatSyncService(ChatEventRepository chatEventRepository,
+                           MessageRepository messageRepository,
+                           MessageService messageService,
+                           MessageWriteBehindService messageWriteBehindService,
+                           @Value("${chat.sync.max-messages}") int maxMessages,
+                           @Value("${chat.sync.event-retention-days}") int eventRetentionDays) {
+        this.chatEventRepository = chatEventRepository;
+        this.messageRepository = messageRepository;
+        this.messageService = messageService;
+        this.messageWriteBehindService = messageWriteBehindService;
+        this.maxMessages = maxMessages;
+        this.eventRetentionDays = eventRetentionDays;
+    }
+
+    public ChatEvent recordDelete(Long chatId, Long messageId) {
+        return save(chatId, MessageType.DELETE, messageId);
+    }
+
+    /// Must be called before the messages are deleted (the event remembers the highest cleared id)
+    public ChatEvent recordClear(Long chatId) {
+        return save(chatId, MessageType.CLEAR, messageRepository.findLastIdByChatId(chatId));
+    }
+
+    /// Cursor for a freshly rendered chat page
+    public Long lastEventId(Long chatId) {
+        Long lastEventId = chatEventRepository.findLastIdByChatId(chatId);
+        return lastEventId != null ? lastEventId : 0L;
+    }
+
+    /// Message cursor for a freshly rendered chat page, taken before its messages are read (the sync may send some again)
+    public String cursor() {
+        return messageRepository.findTransactionHorizon() + ":0";
+    }
+
+    public ChatSyncResponse sync(Long chatId, String cursor, Long lastEventId) {
+        messageWriteBehindService.flush(); // messages sent while the client was away may still be buffered
+        long eventCursor = lastEventId != null ? lastEventId : 0L;
+        long horizon = messageRepository.findTransactionHorizon();
+        long[] from = parseCursor(cursor, horizon);
+
+        List<MessageView> events = chatEventRepository.findAllByChatIdAndIdGreaterThanOrderById(chatId, eventCursor).stream()
+                .map(ChatSyncService::toView)
+                .toList();
+        List<MessageView> newer = messageService.findChatMessagesCommittedAfter(chatId, from[0], from[1], horizon,
+                maxMessages + 1); // one extra row tells if there is more
+        boolean hasMore = newer.size() > maxMessages;
+        if (hasMore) {
+            newer = newer.subList(0, maxMessages);
+        }
+        MessageView last = hasMore ? newer.get(newer.size() - 1) : null;
+
+        return ChatSyncResponse.builder()
+                .events(events)
+                .messages(newer)
+                .lastEventId(events.isEmpty() ? eventCursor : events.get(events.size() - 1).getEventId())
+                .cursor(last != null ? last.getTxId() + ":" + last.getId() : horizon + ":0") // all of the horizon is sent
+                .hasMore(hasMore)
+                .build();
+    }
+
+    /// {transaction, message id}, an unreadable cursor starts at the horizon (messages from now on)
+    private long[] parseCursor(String cursor, long horizon) {
+        Matcher matcher = cursor != null ? CURSOR.matcher(cursor) : null;
+        if (matcher == null || !matcher.matches()) {
+            log.warn("Chat synced with an invalid cursor ({}), messages are sent from now on", cursor);
+            return new long[]{horizon, 0};
+        }
+        return new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))};
+    }
+
+    public void forgetChat(Long chatId) {
+        chatEventRepository.deleteAllByChatId(chatId);
+    }
+
+    /// Clients offline for longer than the retention reload the page anyway
+    @Scheduled(cron = "0 30 3 * * *")
+    public void deleteOldEvents() {
+        int deleted = chatEventRepository.deleteAllCreatedBefore(LocalDateTime.now().minusDays(eventRetentionDays));
+        if (deleted > 0) {
+            log.info("Deleted {} chat events older than {} days", deleted, eventRetentionDays);
+        }
+    }
+
+    /// Same shape as the live notifications sent by ChatController
+    public static MessageView toView(ChatEvent event) {
+        Long messageId = event.getMessageId();
+        return MessageView.builder()
+                .type(event.getType())
+                .id(messageId)
+                .text(event.getType() == MessageType.DELETE ? String.valueOf(messageId) : "Chat was cleared")
+                .eventId(event.getId())
+                .build();
+    }
+
+    private ChatEvent save(Long chatId, MessageType type, Long messageId) {
+        return chatEventRepository.save(ChatEvent.builder()
+                .chatId(chatId)
+                .type(type)
+                .messageId(messageId)
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
+}
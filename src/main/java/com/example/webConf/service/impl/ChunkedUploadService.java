@@ -0,0 +1,167 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.config.exception.UploadException;
+import com.example.webConf.dto.ChunkedUploadStatus;
+import com.example.webConf.model.attachment.Attachment;
+import com.example.webConf.model.attachment.ChunkedUpload;
+import com.example.webConf.model.chat.Chat;
+import com.example.webConf.model.user.UserEntity;
+import com.example.webConf.repository.ChunkedUploadRepository;
+import com.example.webConf.service.AttachmentService;
+import com.example.webConf.service.storage.BlobStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/// Chunked, resumable uploads: init -> PUT parts at increasing offsets -> complete.
+/// Parts are streamed straight into a part file of the blob store (encrypted as they arrive when attachment encryption
+/// is on), so neither the heap nor the multipart size limit bounds the file. A client that lost its connection asks for the status and continues at "received".
+/// Uploads nobody has written to for "idle-hours" are deleted on a schedule.
+@Service
+@Slf4j
+public class ChunkedUploadService {
+    private final ChunkedUploadRepository chunkedUploadRepository;
+    private final BlobStore blobStore;
+    private final AttachmentService attachmentService;
+    private final StorageQuotaService storageQuotaService;
+    private final long chunkSize;
+    private final long maxFileSize;
+    private final long idleHours;
+
+    public ChunkedUploadService(ChunkedUploadRepository chunkedUploadRepository,
+                                BlobStore blobStore,
+                                AttachmentService attachmentService,
+                                StorageQuotaService storageQuotaService,
+                                @Value("${attachment.chunked-upload.chunk-size}") long chunkSize,
+                                @Value("${attachment.chunked-upload.max-file-size}") long maxFileSize,
+                                @Value("${attachment.chunked-upload.idle-hours}") long idleHours) {
+        this.chunkedUploadRepository = chunkedUploadRepository;
+        this.blobStore = blobStore;
+        this.attachmentService = attachmentService;
+        this.storageQuotaService = storageQuotaService;
+        this.chunkSize = chunkSize;
+        this.maxFileSize = maxFileSize;
+        this.idleHours = idleHours;
+    }
+
+    public ChunkedUploadStatus init(Chat chat, UserEntity user, String fileName, String fileType, long size) {
+        String cleanName = fileName != null ? StringUtils.cleanPath(fileName) : "";
+        if (cleanName.isBlank() || cleanName.contains("..")) {
+            throw new UploadException(HttpStatus.BAD_REQUEST, "Filename contains invalid path sequence" + cleanName);
+        }
+        if (size <= 0 || size > maxFileSize) {
+            throw new UploadException(HttpStatus.PAYLOAD_TOO_LARGE, "File size must be between 1 and " + maxFileSize + " bytes");
+        }
+        storageQuotaService.checkQuota(chat.getId(), user.getId(), size); // before the first part is sent
+        LocalDateTime now = LocalDateTime.now();
+        ChunkedUpload upload = chunkedUploadRepository.save(ChunkedUpload.builder()
+                .uploadId(UUID.randomUUID().toString())
+                .chatId(chat.getId())
+                .userId(user.getId())
+                .fileName(cleanName)
+                .fileType(fileType)
+                .size(size)
+                .received(0L)
+                .createdAt(now)
+                .updatedAt(now)
+                .build());
+        return toStatus(upload, 0);
+    }
+
+    /// Only the user who started an upload can see or continue it
+    public ChunkedUpload getUpload(String uploadId, UserEntity user) {
+        return chunkedUploadRepository.findById(uploadId)
+                .filter(upload -> Objects.equals(upload.getUserId(), user.getId()))
+                .orElseThrow(() -> new UploadException(HttpStatus.NOT_FOUND, "Upload not found"));
+    }
+
+    public ChunkedUploadStatus getStatus(ChunkedUpload upload) throws IOException {
+        return toStatus(upload, blobStore.partLength(upload.getUploadId())); // the part file is the truth, the row may lag
+    }
+
+    /// "contentLength" is the request's Content-Length (-1 when unknown), checked before anything is read
+    public ChunkedUploadStatus writeChunk(ChunkedUpload upload, long offset, long contentLength, InputStream content) throws IOException {
+        long maxBytes = Math.min(chunkSize, upload.getSize() - offset);
+        if (offset < 0 || maxBytes < 0) {
+            throw new UploadException(HttpStatus.BAD_REQUEST, "Offset " + offset + " is outside of the file");
+        }
+        if (contentLength > maxBytes) {
+            throw new UploadException(HttpStatus.PAYLOAD_TOO_LARGE, "Part is larger than " + maxBytes + " bytes");
+        }
+        long received;
+        try {
+            received = blobStore.writePart(upload.getUploadId(), offset, content, maxBytes);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new UploadException(HttpStatus.CONFLICT, e.getMessage()); // client asks for the status and continues from there
+        }
+        upload.setReceived(received);
+        upload.setUpdatedAt(LocalDateTime.now());
+        chunkedUploadRepository.save(upload);
+        return toStatus(upload, received);
+    }
+
+    public Attachment complete(ChunkedUpload upload, Chat chat, UserEntity user) throws Exception {
+        long received = blobStore.partLength(upload.getUploadId());
+        if (received != upload.getSize()) {
+            throw new UploadException(HttpStatus.CONFLICT, "Upload is incomplete: " + received + " of " + upload.getSize() + " bytes received");
+        }
+        BlobStore.StagedBlob blob;
+        try {
+            blob = blobStore.stagePart(upload.getUploadId());
+        } catch (IllegalStateException e) {
+            throw new UploadException(HttpStatus.CONFLICT, e.getMessage()); // a part is still being written
+        }
+        Attachment attachment = attachmentService.saveAttachment(blob, upload.getFileName(), upload.getFileType(), chat, user);
+        chunkedUploadRepository.delete(upload);
+        return attachment;
+    }
+
+    public void abort(ChunkedUpload upload) throws IOException {
+        blobStore.deletePart(upload.getUploadId());
+        chunkedUploadRepository.delete(upload);
+    }
+
+    @Scheduled(cron = "0 */15 * * * *")
+    public void deleteAbandonedUploads() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(idleHours);
+        List<ChunkedUpload> abandoned = chunkedUploadRepository.findAllByUpdatedAtBefore(cutoff);
+        for (ChunkedUpload upload : abandoned) {
+            try {
+                abort(upload);
+            } catch (Exception e) {
+                log.warn("Unable to delete abandoned upload {}: {}", upload.getUploadId(), e.getMessage());
+            }
+        }
+        try {
+            // part files whose record is gone (crash between the two deletes)
+            int orphans = blobStore.deletePartsOlderThan(Instant.now().minus(idleHours, ChronoUnit.HOURS));
+            if (!abandoned.isEmpty() || orphans > 0) {
+                log.info("Deleted {} abandoned chunked uploads and {} orphaned parts", abandoned.size(), orphans);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to delete orphaned upload parts: {}", e.getMessage());
+        }
+    }
+
+    private ChunkedUploadStatus toStatus(ChunkedUpload upload, long received) {
+        return ChunkedUploadStatus.builder()
+                .uploadId(upload.getUploadId())
+                .fileName(upload.getFileName())
+                .size(upload.getSize())
+                .received(received)
+                .chunkSize(chunkSize)
+                .build();
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.conference.ConferenceLifecycleStats;
+import com.example.webConf.repository.ConferenceRepository;
+import com.example.webConf.repository.UserConferenceJoinRepository;
+import com.example.webConf.service.event.ConferenceOccupancyEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// Lifecycle of the conferences in use: created -> live -> idle -> ended.
+/// Driven by the roster (first participant -> live, last one gone -> idle). A conference that stays empty for
+/// "idle-grace-minutes" is closed: session counters left behind by pages closed without a leave are deleted and its roster and
+/// buffered chat history are dropped. Ended conferences are not tracked any more, so memory and the join table follow the
+/// live conferences. The conference itself stays (deleted by DynamicSchedulerService), joining it again makes it live.
+/// Device selections ("conference_devices") have no state in memory to evict, and their rows are kept: they are the saved
+/// configurations a user picks from when joining any later conference (ConferenceDevicesService.findUserDevices).
+/// Rosters are per instance, so closing is off in relay broker mode (a conference may be live on another instance).
+@Service
+@Slf4j
+public class ConferenceLifecycleService {
+
+    public enum State {
+        CREATED, LIVE, IDLE, ENDED
+    }
+
+    private record Lifecycle(State state, Instant since) {
+    }
+
+    private final ConferenceRosterService conferenceRosterService;
+    private final ConferenceSessionService conferenceSessionService;
+    private final UserConferenceJoinRepository userConferenceJoinRepository;
+    private final ConferenceRepository conferenceRepository;
+    private final RecentMessageBuffer recentMessageBuffer;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration grace;
+
+    private final Map<String, Lifecycle> conferences = new ConcurrentHashMap<>();
+
+    /// Metrics
+    private final AtomicLong ended = new AtomicLong();
+    private final AtomicLong compactedJoins = new AtomicLong();
+
+    public ConferenceLifecycleService(ConferenceRosterService conferenceRosterService,
+                                      ConferenceSessionService conferenceSessionService,
+                                      UserConferenceJoinRepository userConferenceJoinRepository,
+                                      ConferenceRepository conferenceRepository,
+                                      RecentMessageBuffer recentMessageBuffer,
+                                      TransactionTemplate transactionTemplate,
+                                      @Value("${conference.lifecycle.enabled}") boolean enabled,
+                                      @Value("${conference.lifecycle.idle-grace-minutes}") long graceMinutes,
+                                      @Value("${websocket.broker.mode}") String brokerMode) {
+        this.conferenceRosterService = conferenceRosterService;
+        this.conferenceSessionService = conferenceSessionService;
+        this.userConferenceJoinRepository = userConferenceJoinRepository;
+        this.conferenceRepository = conferenceRepository;
+        this.recentMessageBuffer = recentMessageBuffer;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled && !"relay".equalsIgnoreCase(brokerMode);
+        if (enabled && !this.enabled) {
+            log.info("Closing idle conferences is disabled in relay broker mode (rosters are local to each instance)");
+        }
+        this.grace = Duration.ofMinutes(graceMinutes);
+    }
+
+    public void created(String conferenceId) {
+        conferences.putIfAbsent(conferenceId, new Lifecycle(State.CREATED, Instant.now()));
+    }
+
+    public State getState(String conferenceId) {
+        Lifecycle lifecycle = conferences.get(conferenceId);
+        return lifecycle != null ? lifecycle.state() : State.ENDED;
+    }
+
+    @EventListener
+    public void onOccupancyChanged(ConferenceOccupancyEvent event) {
+        conferences.put(event.conferenceId(), new Lifecycle(event.occupied() ? State.LIVE : State.IDLE, Instant.now()));
+    }
+
+    /// Closes conferences empty for longer than the grace period (and live ones whose pages are all gone without a leave)
+    @Scheduled(fixedDelay = 60000)
+    public void closeIdleConferences() {
+        if (!enabled) {
+            return;
+        }
+        Instant before = Instant.now().minus(grace);
+        conferences.forEach((conferenceId, lifecycle) -> {
+            if (lifecycle.since().isBefore(before)) {
+                try {
+                    close(conferenceId, lifecycle, before);
+                } catch (Exception e) {
+                    log.warn("Unable to close conference {}: {}", conferenceId, e.getMessage());
+                }
+            }
+        });
+    }
+
+    public ConferenceLifecycleStats getStats() {
+        long created = 0, live = 0, idle = 0;
+        for (Lifecycle lifecycle : conferences.values()) {
+            switch (lifecycle.state()) {
+                case CREATED -> created++;
+                case LIVE -> live++;
+                case IDLE -> idle++;
+                default -> {
+                }
+            }
+        }
+        return ConferenceLifecycleStats.builder()
+                .enabled(enabled)
+                .created(created)
+                .live(live)
+                .idle(idle)
+                .ended(ended.get())
+                .compactedJoins(compactedJoins.get())
+                .graceMinutes(grace.toMinutes())
+                .build();
+    }
+
+    private void close(String conferenceId, Lifecycle lifecycle, Instant before) {
+        // a followed roster or a change within the grace period -> still in use
+        if (!conferenceRosterService.evictIdle(conferenceId, before) || !conferences.remove(conferenceId, lifecycle)) {
+            return;
+        }
+        // joins saved after "before" belong to participants on their way in
+        LocalDateTime joinedBefore = LocalDateTime.ofInstant(before, ZoneId.systemDefault());
+        Integer deleted = transactionTemplate.execute(status ->
+                userConferenceJoinRepository.deleteAllByConferenceIdAndJoinTimeBefore(conferenceId, joinedBefore));
+        conferenceSessionService.reload(conferenceId);
+        Long chatId = conferenceRepository.findChatIdById(conferenceId);
+        if (chatId != null) {
+            recentMessageBuffer.invalidate(chatId);
+        }
+        // device selections stay (see class doc), they are reused outside this conference
+        ended.incrementAndGet();
+        compactedJoins.addAndGet(deleted != null ? deleted : 0);
+        log.info("Conference {} ended after {} minutes {} ({} join rows compacted)", conferenceId, grace.toMinutes(),
+                lifecycle.state() == State.LIVE ? "without activity" : "empty", deleted);
+    }
+}
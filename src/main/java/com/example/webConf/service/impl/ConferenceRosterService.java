@@ -0,0 +1,254 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.conference.ConferenceRoster;
+import com.example.webConf.dto.conference.RosterChange;
+import com.example.webConf.dto.conference.UserJoinCount;
+import com.example.webConf.repository.UserConferenceJoinRepository;
+import com.example.webConf.service.event.ConferenceOccupancyEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/// Live roster of the conferences: how many times every user is in a conference.
+/// Kept in memory and changed by join / leave and by the STOMP sessions of the conference page, every change is
+/// published as a RosterChange on "/topic/conference/{id}/roster" (clients load the snapshot once and then follow the diffs).
+/// A roster is loaded from user_conference_join (one GROUP BY) the first time its conference is touched.
+/// A join counts once: the session opened by the joined page takes over the count of its join ("pending"), a reload or
+/// reconnect counts again and a closed session without a leave counts as gone.
+/// A conference getting its first or losing its last participant is published as ConferenceOccupancyEvent (lifecycle).
+/// In "relay" broker mode (several instances behind one database) a roster in memory would only know the joins and pages of
+/// its instance and its versions would clash with the other instances' ones on the shared topic: the counts are read from
+/// user_conference_join instead (one GROUP BY for a snapshot, one indexed sum per join / leave) and published with
+/// version 0, page sessions are not counted (a page closed without a leave stays until the conference is deleted).
+@Service
+@Slf4j
+public class ConferenceRosterService {
+    private final UserConferenceJoinRepository userConferenceJoinRepository;
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean relay;
+
+    private final Map<String, Roster> rosters = new ConcurrentHashMap<>();
+    private final Map<String, Presence> sessions = new ConcurrentHashMap<>(); // STOMP session id -> user in a conference
+
+    private static class Roster {
+        private long version;
+        private boolean removed;
+        private final Map<String, Integer> counts = new HashMap<>();
+        private final Map<String, Integer> pending = new HashMap<>(); // joins whose page has not connected yet
+        private int sessions;
+        private Instant lastChange = Instant.now();
+    }
+
+    private static class Presence {
+        private final String conferenceId;
+        private final String userName;
+        private volatile boolean left; // counted down by leave() already
+
+        private Presence(String conferenceId, String userName) {
+            this.conferenceId = conferenceId;
+            this.userName = userName;
+        }
+    }
+
+    public ConferenceRosterService(UserConferenceJoinRepository userConferenceJoinRepository,
+                                   SimpMessageSendingOperations messagingTemplate,
+                                   ApplicationEventPublisher eventPublisher,
+                                   @Value("${websocket.broker.mode}") String brokerMode) {
+        this.userConferenceJoinRepository = userConferenceJoinRepository;
+        this.messagingTemplate = messagingTemplate;
+        this.eventPublisher = eventPublisher;
+        this.relay = "relay".equalsIgnoreCase(brokerMode);
+    }
+
+    /// After the join row is saved
+    public void join(String conferenceId, String userName) {
+        if (relay) {
+            publishStored(conferenceId, userName);
+            return;
+        }
+        if (!rosters.containsKey(conferenceId)) {
+            roster(conferenceId); // loaded with the new join
+            return;
+        }
+        update(conferenceId, roster -> {
+            roster.pending.merge(userName, 1, Integer::sum);
+            change(conferenceId, roster, userName, 1);
+        });
+    }
+
+    /// After the join row is deleted (a query in the same transaction sees the deletion)
+    public void leave(String conferenceId, String userName) {
+        if (relay) {
+            publishStored(conferenceId, userName);
+            return;
+        }
+        if (!rosters.containsKey(conferenceId)) {
+            roster(conferenceId); // loaded without the join
+            return;
+        }
+        update(conferenceId, roster -> {
+            if (roster.pending.containsKey(userName)) {
+                roster.pending.computeIfPresent(userName, (name, count) -> count > 1 ? count - 1 : null);
+            } else {
+                // the page of this join is connected -> its disconnect must not count again
+                sessions.values().stream()
+                        .filter(presence -> !presence.left && presence.conferenceId.equals(conferenceId) && presence.userName.equals(userName))
+                        .findFirst()
+                        .ifPresent(presence -> presence.left = true);
+            }
+            change(conferenceId, roster, userName, -1);
+        });
+    }
+
+    /// STOMP session of the conference page subscribed to the roster
+    public void connect(String sessionId, String conferenceId, String userName) {
+        if (relay) {
+            return;
+        }
+        if (sessions.putIfAbsent(sessionId, new Presence(conferenceId, userName)) != null) {
+            return;
+        }
+        update(conferenceId, roster -> {
+            roster.sessions++;
+            if (roster.pending.containsKey(userName)) {
+                roster.pending.computeIfPresent(userName, (name, count) -> count > 1 ? count - 1 : null);
+            } else {
+                change(conferenceId, roster, userName, 1); // reload or reconnect
+            }
+        });
+    }
+
+    public void disconnect(String sessionId) {
+        Presence presence = sessions.remove(sessionId);
+        if (presence == null) {
+            return;
+        }
+        update(presence.conferenceId, roster -> {
+            roster.sessions--;
+            if (!presence.left) {
+                change(presence.conferenceId, roster, presence.userName, -1);
+            }
+        });
+    }
+
+    public ConferenceRoster snapshot(String conferenceId) {
+        if (relay) {
+            Map<String, Integer> counts = new HashMap<>();
+            userConferenceJoinRepository.countJoinsByConferenceId(conferenceId)
+                    .forEach(joinCount -> counts.put(joinCount.getUserName(), (int) joinCount.getJoins()));
+            return ConferenceRoster.builder()
+                    .conferenceId(conferenceId)
+                    .counts(counts)
+                    .build();
+        }
+        Roster roster = roster(conferenceId);
+        synchronized (roster) {
+            return ConferenceRoster.builder()
+                    .conferenceId(conferenceId)
+                    .version(roster.version)
+                    .counts(new HashMap<>(roster.counts))
+                    .build();
+        }
+    }
+
+    public int count(String conferenceId, String userName) {
+        if (relay) {
+            return (int) userConferenceJoinRepository.countJoinsByConferenceIdAndUserName(conferenceId, userName);
+        }
+        return snapshot(conferenceId).getCounts().getOrDefault(userName, 0);
+    }
+
+    /// Drops the roster of a conference nobody follows and nothing happened in since "before" (closed by the lifecycle).
+    /// false -> the conference is still in use
+    public boolean evictIdle(String conferenceId, Instant before) {
+        Roster roster = rosters.get(conferenceId);
+        if (roster == null) {
+            return true;
+        }
+        synchronized (roster) {
+            if (roster.removed) {
+                return true;
+            }
+            if (roster.sessions > 0 || !roster.lastChange.isBefore(before)) {
+                return false;
+            }
+            roster.removed = true;
+            rosters.remove(conferenceId, roster);
+            return true;
+        }
+    }
+
+    private Roster roster(String conferenceId) {
+        return rosters.computeIfAbsent(conferenceId, this::load);
+    }
+
+    private Roster load(String conferenceId) {
+        Roster roster = new Roster();
+        for (UserJoinCount joinCount : userConferenceJoinRepository.countJoinsByConferenceId(conferenceId)) {
+            roster.counts.put(joinCount.getUserName(), (int) joinCount.getJoins());
+            roster.pending.put(joinCount.getUserName(), (int) joinCount.getJoins()); // open pages connect again
+        }
+        log.debug("Loaded roster of conference {}: {} users", conferenceId, roster.counts.size());
+        if (!roster.counts.isEmpty()) {
+            eventPublisher.publishEvent(new ConferenceOccupancyEvent(conferenceId, true));
+        }
+        return roster;
+    }
+
+    /// Runs "change" on the roster, an empty roster is dropped (loaded again with its next change)
+    private void update(String conferenceId, Consumer<Roster> change) {
+        while (true) {
+            Roster roster = roster(conferenceId);
+            synchronized (roster) {
+                if (roster.removed) {
+                    continue; // dropped meanwhile -> the new one
+                }
+                change.accept(roster);
+                if (roster.counts.isEmpty() && roster.pending.isEmpty() && roster.sessions == 0) {
+                    roster.removed = true;
+                    rosters.remove(conferenceId, roster);
+                }
+                return;
+            }
+        }
+    }
+
+    /// Relay mode: the count every instance sees, unversioned
+    private void publishStored(String conferenceId, String userName) {
+        long count = userConferenceJoinRepository.countJoinsByConferenceIdAndUserName(conferenceId, userName);
+        messagingTemplate.convertAndSend("/topic/conference/" + conferenceId + "/roster", RosterChange.builder()
+                .userName(userName)
+                .count((int) count)
+                .build());
+    }
+
+    /// Count of "userName" changed by "delta", published under the roster lock -> versions arrive in order
+    private void change(String conferenceId, Roster roster, String userName, int delta) {
+        boolean wasOccupied = !roster.counts.isEmpty();
+        Integer count = roster.counts.merge(userName, delta, Integer::sum);
+        if (count != null && count <= 0) {
+            roster.counts.remove(userName);
+            roster.pending.remove(userName);
+            count = 0;
+        }
+        roster.version++;
+        roster.lastChange = Instant.now();
+        if (wasOccupied == roster.counts.isEmpty()) {
+            eventPublisher.publishEvent(new ConferenceOccupancyEvent(conferenceId, !wasOccupied));
+        }
+        messagingTemplate.convertAndSend("/topic/conference/" + conferenceId + "/roster", RosterChange.builder()
+                .version(roster.version)
+                .userName(userName)
+                .count(count)
+                .build());
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.conference.ActiveConference;
+import com.example.webConf.model.job.JobCheckpoint;
+import com.example.webConf.model.userJoinConference.ConferenceSessionEvent;
+import com.example.webConf.repository.JobCheckpointRepository;
+import com.example.webConf.repository.UserConferenceJoinRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/// Open sessions of users in conferences.
+/// Counters by (conference, user) live in memory (membership checks and counts are map lookups) and are written through
+/// to user_conference_join, one row per (user, conference) changed by deltas. Every join and leave is also appended to
+/// conference_session_log, which is written in batches (history only, nothing reads it on the hot path).
+/// The counters in memory only know the joins and leaves this instance has seen: a membership miss is checked against
+/// user_conference_join, and in "relay" broker mode (several instances behind one database) the table is the only source
+/// of membership and leaves.
+/// The active conferences of a user (home and control page) are cached per user and dropped with every join / leave of
+/// that user, the expiry only bounds what another instance's joins can leave stale.
+/// The move from the old one-row-per-join layout runs once per database: it is recorded in "job_checkpoint", and an
+/// advisory lock makes instances starting together wait for the one that runs it.
+@Service
+@Slf4j
+public class ConferenceSessionService {
+    public static final String COMPACTION_JOB_NAME = "conference-join-compaction";
+    private static final long COMPACTION_LOCK_KEY = COMPACTION_JOB_NAME.hashCode();
+    private static final String LOCK_SQL = "SELECT pg_advisory_xact_lock(?)";
+    private static final String COMPACT_SQL = "UPDATE user_conference_join j SET sessions = g.joins, join_time = g.last_join " +
+            "FROM (SELECT MIN(id) AS keep_id, COUNT(*) AS joins, MAX(join_time) AS last_join FROM user_conference_join " +
+            "WHERE sessions IS NULL GROUP BY user_id, conference_id) g WHERE j.id = g.keep_id";
+    private static final String DELETE_COMPACTED_SQL = "DELETE FROM user_conference_join WHERE sessions IS NULL";
+    private static final String UNIQUE_INDEX_SQL = "CREATE UNIQUE INDEX IF NOT EXISTS uk_user_conference_join ON user_conference_join (user_id, conference_id)";
+    private static final String LOAD_SQL = "SELECT conference_id, user_id, sessions FROM user_conference_join WHERE sessions > 0";
+    private static final String LOAD_CONFERENCE_SQL = LOAD_SQL + " AND conference_id = ?";
+    private static final String INSERT_LOG_SQL = "INSERT INTO conference_session_log (conference_id, user_id, type, created_at) VALUES (?, ?, ?, ?)";
+
+    private record Key(String conferenceId, Long userId) {
+    }
+
+    private final UserConferenceJoinRepository userConferenceJoinRepository;
+    private final JobCheckpointRepository checkpointRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final boolean local; // only instance -> the counters in memory are complete
+
+    private final Map<Key, Integer> sessions = new ConcurrentHashMap<>();
+    private final Queue<ConferenceSessionEvent> pendingLog = new ConcurrentLinkedQueue<>();
+    private final Cache<Long, List<ActiveConference>> activeConferences = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    public ConferenceSessionService(UserConferenceJoinRepository userConferenceJoinRepository,
+                                    JobCheckpointRepository checkpointRepository,
+                                    JdbcTemplate jdbcTemplate,
+                                    TransactionTemplate transactionTemplate,
+                                    @Value("${conference.session-log.batch-size}") int batchSize,
+                                    @Value("${websocket.broker.mode}") String brokerMode) {
+        this.userConferenceJoinRepository = userConferenceJoinRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.local = !"relay".equalsIgnoreCase(brokerMode);
+    }
+
+    /// Before the first request: the layout migration (once), then the counters are loaded
+    @PostConstruct
+    public void init() {
+        if (!checkpointRepository.existsById(COMPACTION_JOB_NAME)) {
+            compactJoinRows();
+        }
+        jdbcTemplate.query(LOAD_SQL, rs -> {
+            sessions.put(new Key(rs.getString(1), rs.getLong(2)), rs.getInt(3));
+        });
+        log.info("Loaded {} open conference sessions", sessions.size());
+    }
+
+    /// Rows of the old one-row-per-join layout become one counter row, then (user_id, conference_id) gets its unique index
+    private void compactJoinRows() {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.query(LOCK_SQL, rs -> {
+            }, COMPACTION_LOCK_KEY); // held until the commit
+            if (checkpointRepository.existsById(COMPACTION_JOB_NAME)) {
+                return; // another instance ran it while this one waited
+            }
+            int compacted = jdbcTemplate.update(COMPACT_SQL);
+            int deleted = jdbcTemplate.update(DELETE_COMPACTED_SQL);
+            if (compacted > 0) {
+                log.info("Compacted {} conference join rows into {} session counters", compacted + deleted, compacted);
+            }
+            jdbcTemplate.execute(UNIQUE_INDEX_SQL);
+            checkpointRepository.save(JobCheckpoint.builder()
+                    .jobName(COMPACTION_JOB_NAME)
+                    .processed((long) compacted + deleted)
+                    .state("COMPLETED")
+                    .updatedAt(LocalDateTime.now())
+                    .build());
+        });
+    }
+
+    public void join(String conferenceId, Long userId) {
+        transactionTemplate.executeWithoutResult(status -> userConferenceJoinRepository.addSession(conferenceId, userId));
+        sessions.merge(new Key(conferenceId, userId), 1, Integer::sum);
+        activeConferences.invalidate(userId);
+        append(conferenceId, userId, ConferenceSessionEvent.Type.JOIN);
+    }
+
+    /// false -> the user had no session in the conference
+    public boolean leave(String conferenceId, Long userId) {
+        boolean[] open = {false};
+        sessions.computeIfPresent(new Key(conferenceId, userId), (key, count) -> {
+            open[0] = true;
+            return count > 1 ? count - 1 : null;
+        });
+        if (!open[0] && local) {
+            return false;
+        }
+        // another instance may have seen the join -> the table decides
+        boolean removed = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            boolean found = userConferenceJoinRepository.removeSession(conferenceId, userId) > 0;
+            userConferenceJoinRepository.deleteIfNoSessions(conferenceId, userId);
+            return found;
+        }));
+        if (!removed) {
+            return false;
+        }
+        activeConferences.invalidate(userId);
+        append(conferenceId, userId, ConferenceSessionEvent.Type.LEAVE);
+        return true;
+    }
+
+    public int getSessions(String conferenceId, Long userId) {
+        return sessions.getOrDefault(new Key(conferenceId, userId), 0);
+    }
+
+    /// Map hit on a single instance, otherwise the (user_id, conference_id) index: the join may have gone to another instance
+    public boolean isInConference(String conferenceId, Long userId) {
+        if (local && sessions.containsKey(new Key(conferenceId, userId))) {
+            return true;
+        }
+        return userConferenceJoinRepository.hasSession(conferenceId, userId);
+    }
+
+    /// Conferences the user has open sessions in, latest join first
+    public List<ActiveConference> getActiveConferences(Long userId) {
+        return activeConferences.get(userId, userConferenceJoinRepository::findActiveConferencesByUserId);
+    }
+
+    /// Conference deleted
+    public void forget(String conferenceId) {
+        sessions.keySet().removeIf(key -> key.conferenceId().equals(conferenceId));
+        activeConferences.invalidateAll(); // rare, not worth an index by conference
+    }
+
+    /// Account deleted (its rows go with it)
+    public void forgetUser(Long userId) {
+        sessions.keySet().removeIf(key -> key.userId().equals(userId));
+        activeConferences.invalidate(userId);
+    }
+
+    /// Rows of the conference were deleted or compacted in the database -> counters read again
+    public void reload(String conferenceId) {
+        forget(conferenceId);
+        jdbcTemplate.query(LOAD_CONFERENCE_SQL, rs -> {
+            sessions.put(new Key(rs.getString(1), rs.getLong(2)), rs.getInt(3));
+        }, conferenceId);
+    }
+
+    @Scheduled(fixedDelayString = "${conference.session-log.flush-interval-ms}")
+    public void flushLog() {
+        List<ConferenceSessionEvent> batch = new ArrayList<>(batchSize);
+        ConferenceSessionEvent event;
+        while ((event = pendingLog.poll()) != null) {
+            batch.add(event);
+            if (batch.size() == batchSize) {
+                insert(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            insert(batch);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        flushLog();
+    }
+
+    private void append(String conferenceId, Long userId, ConferenceSessionEvent.Type type) {
+        pendingLog.add(ConferenceSessionEvent.builder()
+                .conferenceId(conferenceId)
+                .userId(userId)
+                .type(type)
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
+
+    private void insert(List<ConferenceSessionEvent> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_LOG_SQL, batch, batch.size(), (ps, event) -> {
+                ps.setString(1, event.getConferenceId());
+                ps.setLong(2, event.getUserId());
+                ps.setString(3, event.getType().name());
+                ps.setTimestamp(4, Timestamp.valueOf(event.getCreatedAt()));
+            }));
+        } catch (Exception e) {
+            log.warn("Unable to write {} conference session log entries: {}", batch.size(), e.getMessage());
+        }
+    }
+}
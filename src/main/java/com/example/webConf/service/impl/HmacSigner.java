@@ -0,0 +1,74 @@
+package com.example.webConf.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/// HMAC-SHA256 signatures of everything the application hands out signed (attachment URLs, chat access tokens).
+/// One secret ("signing.secret"), one key per purpose derived from it (HMAC of the purpose name): a signature made for one
+/// purpose never verifies for another, whatever the payloads look like.
+/// Without a secret the key is random per start, which is refused in relay broker mode (every instance must check what the
+/// others signed).
+@Component
+@Slf4j
+public class HmacSigner {
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    public enum Purpose {
+        ATTACHMENT_URL, CHAT_ACCESS_TOKEN
+    }
+
+    private final Map<Purpose, SecretKeySpec> keys = new EnumMap<>(Purpose.class);
+
+    public HmacSigner(@Value("${signing.secret}") String secret,
+                      @Value("${websocket.broker.mode}") String brokerMode) {
+        byte[] key;
+        if (secret == null || secret.isBlank()) {
+            if ("relay".equalsIgnoreCase(brokerMode)) {
+                throw new IllegalStateException("signing.secret must be set in relay broker mode: "
+                        + "URLs and tokens signed by one instance are checked by the others");
+            }
+            log.info("No signing secret configured, signed URLs and chat access tokens are valid on this instance until it restarts");
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        } else {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        SecretKeySpec master = new SecretKeySpec(key, HMAC_ALGORITHM);
+        for (Purpose purpose : Purpose.values()) {
+            keys.put(purpose, new SecretKeySpec(mac(master, purpose.name().toLowerCase(Locale.ROOT)), HMAC_ALGORITHM));
+        }
+    }
+
+    /// URL-safe Base64 signature of "payload"
+    public String sign(Purpose purpose, String payload) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(mac(keys.get(purpose), payload));
+    }
+
+    /// Constant time comparison, false for a missing signature
+    public boolean verify(Purpose purpose, String payload, String signature) {
+        return signature != null && MessageDigest.isEqual(sign(purpose, payload).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] mac(SecretKeySpec key, String payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to compute " + HMAC_ALGORITHM, e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.LargeObjectCollectorStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/// Unlinks Postgres large objects that no "attachment.data" references any more.
+/// Hibernate does not unlink the large object of a deleted "oid" row, so every attachment deleted before the blob store
+/// (or with a chat) left its content in pg_largeobject. The collector walks pg_largeobject_metadata in oid order,
+/// "batch-size" objects per transaction with a pause in between, and re-checks the reference in the unlink statement itself.
+/// A dry run only counts what would be reclaimed (the default, "attachment.lo-collector.dry-run").
+/// Every large object of the database without an attachment row counts as orphaned: the database must not hold large
+/// objects of another application or table.
+@Service
+@Slf4j
+public class LargeObjectCollector {
+    private static final String SELECT_ORPHANS_SQL = "SELECT m.oid::bigint FROM pg_largeobject_metadata m " +
+            "WHERE m.oid > CAST(? AS oid) AND NOT EXISTS (SELECT 1 FROM attachment a WHERE a.data = m.oid) ORDER BY m.oid LIMIT ?";
+    // size without reading pg_largeobject (only readable by superusers): seek to the end of the object (262144 = INV_READ)
+    private static final String SIZE_SQL = "SELECT lo_lseek64(lo_open(CAST(? AS oid), 262144), 0, 2)";
+    private static final String UNLINK_SQL = "SELECT COUNT(lo_unlink(m.oid)) FROM pg_largeobject_metadata m " +
+            "WHERE m.oid = CAST(? AS oid) AND NOT EXISTS (SELECT 1 FROM attachment a WHERE a.data = m.oid)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final boolean dryRun;
+    private final int batchSize;
+    private final long batchPauseMs;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /// Metrics
+    private volatile boolean lastRunDryRun;
+    private volatile LocalDateTime lastRunStartedAt;
+    private volatile LocalDateTime lastRunFinishedAt;
+    private volatile long lastRunFound;
+    private volatile long lastRunUnlinked;
+    private volatile long lastRunBytes;
+    private volatile long totalUnlinked;
+    private volatile long totalBytesReclaimed;
+    private volatile String lastError;
+
+    public LargeObjectCollector(JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${attachment.lo-collector.enabled}") boolean enabled,
+                                @Value("${attachment.lo-collector.dry-run}") boolean dryRun,
+                                @Value("${attachment.lo-collector.batch-size}") int batchSize,
+                                @Value("${attachment.lo-collector.batch-pause-ms}") long batchPauseMs,
+                                @Value("${chat.sync.job-transaction-timeout-seconds}") int jobTransactionTimeoutSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        // writing transactions hold back the delta sync horizon (ChatSyncService) -> cut off after a bounded time
+        this.transactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.transactionTemplate.setTimeout(jobTransactionTimeoutSeconds);
+        this.enabled = enabled;
+        this.dryRun = dryRun;
+        this.batchSize = batchSize;
+        this.batchPauseMs = batchPauseMs;
+    }
+
+    @Scheduled(cron = "${attachment.lo-collector.cron}")
+    public void collectScheduled() {
+        if (enabled) {
+            collect(dryRun);
+        }
+    }
+
+    /// Run from the control page, in the background
+    public LargeObjectCollectorStats start(boolean dryRun) {
+        if (!running.get()) {
+            Thread worker = new Thread(() -> collect(dryRun), "large-object-collector");
+            worker.setDaemon(true);
+            worker.start();
+        }
+        return getStats();
+    }
+
+    public LargeObjectCollectorStats getStats() {
+        return LargeObjectCollectorStats.builder()
+                .running(running.get())
+                .lastRunDryRun(lastRunDryRun)
+                .lastRunStartedAt(lastRunStartedAt)
+                .lastRunFinishedAt(lastRunFinishedAt)
+                .lastRunFound(lastRunFound)
+                .lastRunUnlinked(lastRunUnlinked)
+                .lastRunBytes(lastRunBytes)
+                .totalUnlinked(totalUnlinked)
+                .totalBytesReclaimed(totalBytesReclaimed)
+                .lastError(lastError)
+                .build();
+    }
+
+    private void collect(boolean dryRun) {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        lastRunDryRun = dryRun;
+        lastRunStartedAt = LocalDateTime.now();
+        lastRunFinishedAt = null;
+        lastRunFound = 0;
+        lastRunUnlinked = 0;
+        lastRunBytes = 0;
+        lastError = null;
+        try {
+            long lastOid = 0;
+            while (true) {
+                List<Long> orphans = jdbcTemplate.queryForList(SELECT_ORPHANS_SQL, Long.class, lastOid, batchSize);
+                if (orphans.isEmpty()) {
+                    break;
+                }
+                collectBatch(orphans, dryRun);
+                lastOid = orphans.get(orphans.size() - 1);
+                TimeUnit.MILLISECONDS.sleep(batchPauseMs);
+            }
+            if (lastRunFound > 0) {
+                log.info("Large object collector{}: {} orphaned large objects, {} unlinked, {} bytes",
+                        dryRun ? " (dry run)" : "", lastRunFound, lastRunUnlinked, lastRunBytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Large object collector failed", e);
+            lastError = e.getMessage();
+        } finally {
+            lastRunFinishedAt = LocalDateTime.now();
+            running.set(false);
+        }
+    }
+
+    /// One transaction per batch -> locks on pg_largeobject are held briefly. Counters are taken over after the commit.
+    private void collectBatch(List<Long> orphans, boolean dryRun) {
+        long[] unlinkedAndBytes = transactionTemplate.execute(status -> {
+            long unlinked = 0;
+            long bytes = 0;
+            for (Long oid : orphans) {
+                Long size = jdbcTemplate.queryForObject(SIZE_SQL, Long.class, oid);
+                if (dryRun) {
+                    bytes += size != null ? size : 0;
+                    continue;
+                }
+                Long count = jdbcTemplate.queryForObject(UNLINK_SQL, Long.class, oid);
+                if (count != null && count > 0) { // still unreferenced
+                    unlinked++;
+                    bytes += size != null ? size : 0;
+                }
+            }
+            return new long[]{unlinked, bytes};
+        });
+        lastRunFound += orphans.size();
+        lastRunUnlinked += unlinkedAndBytes[0];
+        lastRunBytes += unlinkedAndBytes[1];
+        if (!dryRun) {
+            totalUnlinked += unlinkedAndBytes[0];
+            totalBytesReclaimed += unlinkedAndBytes[1];
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.webConf.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/// Hands out message ids before the row is inserted (the write-behind pipeline broadcasts messages before they are saved).
+/// The only id source of messages: the write-behind batches and MessageService.appendMessage both take their ids here
+/// (Message has no generator), so ids of one instance are handed out in the order the messages were sent.
+/// Every nextval() of "message_seq" reserves a block of ALLOCATION_SIZE ids.
+@Component
+@RequiredArgsConstructor
+public class MessageIdAllocator {
+    private static final int ALLOCATION_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private long next = 1;
+    private long hi = 0;
+
+    /// Created by Hibernate before the generator was removed, a new database gets it here
+    @PostConstruct
+    public void init() {
+        transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS message_seq START WITH 1 INCREMENT BY " + ALLOCATION_SIZE));
+    }
+
+    public synchronized long nextId() {
+        while (next > hi) {
+            Long value = jdbcTemplate.queryForObject("SELECT nextval('message_seq')", Long.class);
+            hi = value;
+            next = value - ALLOCATION_SIZE + 1;
+            if (next < 1) { // first block of a fresh sequence -> reserve a full one
+                next = hi + 1;
+            }
+        }
+        return next++;
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.message.ReEncryptionStatus;
+import com.example.webConf.model.job.JobCheckpoint;
+import com.example.webConf.repository.JobCheckpointRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/// Online re-encryption of "message.text" to the configured cipher engine.
+/// Walks the table in id order chunk by chunk, re-encrypts a chunk in parallel and writes it back with one batch update.
+/// The last processed id is saved in "job_checkpoint" together with every chunk, so a stopped or crashed run continues from there.
+/// Throughput is capped by "max-rows-per-second" so the live chat path keeps its share of the database.
+@Service
+@Slf4j
+public class MessageReEncryptionService {
+    public static final String JOB_NAME = "message-re-encryption";
+
+    private static final String SELECT_CHUNK_SQL = "SELECT id, text FROM message WHERE id > ? AND text IS NOT NULL ORDER BY id LIMIT ?";
+    // "AND text = ?" -> a row that changed meanwhile is left alone instead of being overwritten
+    private static final String UPDATE_SQL = "UPDATE message SET text = ? WHERE id = ? AND text = ?";
+
+    private final EncoderService encoderService;
+    private final JobCheckpointRepository checkpointRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int maxRowsPerSecond;
+    private final boolean resumeOnStartup;
+    private final ForkJoinPool pool; // own pool -> the common pool stays free for history decryption
+
+    private volatile ReEncryptionStatus.State state = ReEncryptionStatus.State.IDLE;
+    private volatile boolean stopRequested;
+    private Thread worker;
+
+    /// Current run
+    private volatile long lastId;
+    private volatile long maxId;
+    private volatile long processed;
+    private volatile long reEncrypted;
+    private volatile long skipped;
+    private volatile long failed;
+    private volatile long runProcessed;
+    private volatile long runStartNanos;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime updatedAt;
+    private volatile String lastError;
+
+    public MessageReEncryptionService(EncoderService encoderService,
+                                      JobCheckpointRepository checkpointRepository,
+                                      JdbcTemplate jdbcTemplate,
+                                      TransactionTemplate transactionTemplate,
+                                      @Value("${chat.re-encryption.chunk-size}") int chunkSize,
+                                      @Value("${chat.re-encryption.max-rows-per-second}") int maxRowsPerSecond,
+                                      @Value("${chat.re-encryption.parallelism}") int parallelism,
+                                      @Value("${chat.re-encryption.resume-on-startup}") boolean resumeOnStartup,
+                                      @Value("${chat.sync.job-transaction-timeout-seconds}") int jobTransactionTimeoutSeconds) {
+        this.encoderService = encoderService;
+        this.checkpointRepository = checkpointRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        // writing transactions hold back the delta sync horizon (ChatSyncService) -> cut off after a bounded time
+        this.transactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.transactionTemplate.setTimeout(jobTransactionTimeoutSeconds);
+        this.chunkSize = chunkSize;
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        this.resumeOnStartup = resumeOnStartup;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    ///  Continue a run that was interrupted by a shutdown
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeAfterRestart() {
+        if (!resumeOnStartup) {
+            return;
+        }
+        checkpointRepository.findById(JOB_NAME)
+                .filter(checkpoint -> ReEncryptionStatus.State.RUNNING.name().equals(checkpoint.getState()))
+                .ifPresent(checkpoint -> {
+                    log.info("Resuming message re-encryption from id {}", checkpoint.getLastId());
+                    start();
+                });
+    }
+
+    public synchronized ReEncryptionStatus start() {
+        if (worker != null && worker.isAlive()) {
+            return getStatus();
+        }
+        JobCheckpoint checkpoint = checkpointRepository.findById(JOB_NAME).orElse(null);
+        lastId = checkpoint != null && checkpoint.getLastId() != null ? checkpoint.getLastId() : 0;
+        processed = checkpoint != null && checkpoint.getProcessed() != null ? checkpoint.getProcessed() : 0;
+        maxId = Objects.requireNonNullElse(jdbcTemplate.queryForObject("SELECT MAX(id) FROM message", Long.class), 0L);
+        reEncrypted = 0;
+        skipped = 0;
+        failed = 0;
+        runProcessed = 0;
+        lastError = null;
+        stopRequested = false;
+        startedAt = LocalDateTime.now();
+        runStartNanos = System.nanoTime();
+        state = ReEncryptionStatus.State.RUNNING;
+        saveCheckpoint();
+
+        log.info("Message re-encryption started from id {} (max id {}) to {}", lastId, maxId, encoderService.currentEngineName());
+        worker = new Thread(this::run, "message-re-encryption");
+        worker.setDaemon(true);
+        worker.start();
+        return getStatus();
+    }
+
+    /// Pause the job, the checkpoint is kept so start() continues from there
+    public synchronized ReEncryptionStatus stop() {
+        if (worker != null && worker.isAlive()) {
+            stopRequested = true;
+            state = ReEncryptionStatus.State.STOPPING;
+        }
+        return getStatus();
+    }
+
+    /// Forget the checkpoint, the next start() walks the whole table again
+    public synchronized ReEncryptionStatus reset() {
+        if (worker != null && worker.isAlive()) {
+            return getStatus();
+        }
+        checkpointRepository.deleteById(JOB_NAME);
+        lastId = 0;
+        processed = 0;
+        state = ReEncryptionStatus.State.IDLE;
+        return getStatus();
+    }
+
+    public ReEncryptionStatus getStatus() {
+        long elapsedNanos = System.nanoTime() - runStartNanos;
+        double rowsPerSecond = runStartNanos == 0 || elapsedNanos <= 0 ? 0 : runProcessed / (elapsedNanos / 1_000_000_000.0);
+        return ReEncryptionStatus.builder()
+                .state(state)
+                .targetCipher(encoderService.currentEngineName())
+                .lastId(lastId)
+                .maxId(maxId)
+                .processed(processed)
+                .reEncrypted(reEncrypted)
+                .skipped(skipped)
+                .failed(failed)
+                .progressPercent(maxId == 0 ? (state == ReEncryptionStatus.State.COMPLETED ? 100 : 0) : Math.min(100, lastId * 100.0 / maxId))
+                .rowsPerSecond(rowsPerSecond)
+                .maxRowsPerSecond(maxRowsPerSecond)
+                .startedAt(startedAt)
+                .updatedAt(updatedAt)
+                .lastError(lastError)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Thread current = worker;
+        if (current != null && current.isAlive()) {
+            stopRequested = true; // checkpoint keeps state RUNNING -> resumed after restart
+            try {
+                current.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pool.shutdown();
+    }
+
+    private void run() {
+        try {
+            while (!stopRequested) {
+                List<Row> chunk = jdbcTemplate.query(SELECT_CHUNK_SQL,
+                        (rs, rowNum) -> new Row(rs.getLong("id"), rs.getString("text")), lastId, chunkSize);
+                if (chunk.isEmpty()) {
+                    state = ReEncryptionStatus.State.COMPLETED;
+                    saveCheckpoint();
+                    log.info("Message re-encryption completed: {} rows re-encrypted, {} skipped, {} failed", reEncrypted, skipped, failed);
+                    return;
+                }
+                processChunk(chunk);
+                throttle();
+            }
+            // shutdown() leaves the state RUNNING on purpose, stop() from the control page marks it as stopped
+            if (state == ReEncryptionStatus.State.STOPPING) {
+                state = ReEncryptionStatus.State.STOPPED;
+            }
+            saveCheckpoint();
+            log.info("Message re-encryption paused at id {}", lastId);
+        } catch (Exception e) {
+            log.error("Message re-encryption failed at id {}", lastId, e);
+            lastError = e.getMessage();
+            state = ReEncryptionStatus.State.FAILED;
+            saveCheckpoint();
+        }
+    }
+
+    private void processChunk(List<Row> chunk) throws Exception {
+        List<Row> stale = chunk.stream().filter(row -> !encoderService.isCurrentFormat(row.text())).toList();
+        List<Update> updates = stale.isEmpty() ? List.of() : pool.submit(() -> stale.parallelStream().map(this::reEncrypt).toList()).get();
+        List<Update> successful = new ArrayList<>(updates.size());
+        updates.forEach(update -> {
+            if (update.newText() != null) {
+                successful.add(update);
+            }
+        });
+        long chunkLastId = chunk.get(chunk.size() - 1).id();
+
+        // rows and checkpoint in one transaction -> a resumed run never skips or repeats a chunk
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!successful.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_SQL, successful, successful.size(), (ps, update) -> {
+                    ps.setString(1, update.newText());
+                    ps.setLong(2, update.id());
+                    ps.setString(3, update.oldText());
+                });
+            }
+            lastId = chunkLastId;
+            processed += chunk.size();
+            saveCheckpoint();
+        });
+        runProcessed += chunk.size();
+        reEncrypted += successful.size();
+        failed += updates.size() - successful.size();
+        skipped += chunk.size() - stale.size();
+    }
+
+    private Update reEncrypt(Row row) {
+        try {
+            return new Update(row.id(), row.text(), encoderService.reEncrypt(row.text()));
+        } catch (Exception e) {
+            log.warn("Unable to re-encrypt message {}: {}", row.id(), e.getMessage());
+            return new Update(row.id(), row.text(), null);
+        }
+    }
+
+    /// Sleep until the run is back under "max-rows-per-second"
+    private void throttle() throws InterruptedException {
+        if (maxRowsPerSecond <= 0) {
+            return;
+        }
+        long expectedNanos = runProcessed * 1_000_000_000L / maxRowsPerSecond;
+        long aheadNanos = expectedNanos - (System.nanoTime() - runStartNanos);
+        if (aheadNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        }
+    }
+
+    private void saveCheckpoint() {
+        updatedAt = LocalDateTime.now();
+        checkpointRepository.save(JobCheckpoint.builder()
+                .jobName(JOB_NAME)
+                .lastId(lastId)
+                .processed(processed)
+                .state(state.name())
+                .updatedAt(updatedAt)
+                .build());
+    }
+
+    private record Row(long id, String text) {
+    }
+
+    private record Update(long id, String oldText, String newText) {
+    }
+}
@@ -1,22 +1,36 @@
 package com.example.webConf.service.impl;
 
 import com.example.webConf.config.exception.AuthException;
+import com.example.webConf.config.exception.ChatException;
+import com.example.webConf.dto.message.MessagePage;
+import com.example.webConf.dto.message.MessageView;
 import com.example.webConf.model.chat.Chat;
 import com.example.webConf.model.chat.Message;
 import com.example.webConf.model.user.UserEntity;
+import com.example.webConf.repository.ChatRepository;
 import com.example.webConf.repository.MessageRepository;
+import com.example.webConf.repository.UserEntityRepository;
 import com.example.webConf.service.AttachmentService;
-import com.example.webConf.service.ChatService;
 import com.example.webConf.service.MessageService;
 import com.example.webConf.service.UserEntityService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -25,43 +39,127 @@ public class MessageServiceImpl implements MessageService {
     @Autowired
     private MessageRepository messageRepository;
     @Autowired
-    private UserEntityService userService;
+    private ChatRepository chatRepository;
+    @Autowired
+    private UserEntityRepository userRepository;
     @Autowired
-    private ChatService chatService;
+    private UserEntityService userService;
     @Autowired
     private EncoderService encoderService;
     @Autowired
     private AttachmentService attachmentService;
+    @Autowired
+    private MessageTextCache messageTextCache;
+    @Autowired
+    private RecentMessageBuffer recentMessageBuffer;
+    @Autowired
+    private MessageIdAllocator idAllocator;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${chat.history.page-size}")
+    private int defaultPageSize;
+    @Value("${chat.history.max-page-size}")
+    private int maxPageSize;
 
     @Override
     public List<Message> findAllChatMessage(Long chatId) {
-        return messageRepository.findAllByChatId(chatId).stream()
-                .peek(message -> message.setText(encoderService.decryptText(message.getText())))
-                .collect(Collectors.toList());
+        List<Message> messages = messageRepository.findAllByChatId(chatId);
+        List<String> texts = messageTextCache.decryptAll(messages.stream().map(Message::getId).toList(),
+                messages.stream().map(Message::getText).toList());
+        for (int i = 0; i < messages.size(); i++) {
+            messages.get(i).setText(texts.get(i));
+        }
+        return messages;
     }
 
     @Override
-    public Message saveMessage(Message message, Long chatId, UserEntity user) {
+    public MessagePage findChatMessagesPage(Long chatId, Long before, Long after, Integer size) {
+        int pageSize = (size == null || size <= 0) ? defaultPageSize : Math.min(size, maxPageSize);
+        if (before == null && after == null) {
+            return recentMessageBuffer.newestPage(chatId, pageSize, count -> loadChatMessagesPage(chatId, null, null, count));
+        }
+        return loadChatMessagesPage(chatId, before, after, pageSize);
+    }
 
-        Chat chat = chatService.findById(chatId).get();
+    private MessagePage loadChatMessagesPage(Long chatId, Long before, Long after, int pageSize) {
+        PageRequest limit = PageRequest.of(0, pageSize + 1); // one extra row tells if there is a further page
 
-        message.setChat(chat);
+        List<MessageView> messages;
+        if (after != null) {
+            messages = new ArrayList<>(messageRepository.findChatPageAfter(chatId, after, limit));
+        } else {
+            messages = new ArrayList<>(messageRepository.findChatPageBefore(chatId, before != null ? before : Long.MAX_VALUE, limit));
+        }
+
+        boolean hasMore = messages.size() > pageSize;
+        if (hasMore) {
+            messages = new ArrayList<>(messages.subList(0, pageSize));
+        }
+        if (after == null) {
+            Collections.reverse(messages); // "before" pages are read newest first
+        }
+        decrypt(messages);
+
+        return MessagePage.builder()
+                .messages(messages)
+                .oldestId(messages.isEmpty() ? null : messages.get(0).getId())
+                .newestId(messages.isEmpty() ? null : messages.get(messages.size() - 1).getId())
+                .hasMore(hasMore)
+                .build();
+    }
 
+    @Override
+    public List<MessageView> findChatMessagesCommittedAfter(Long chatId, long txId, long id, long horizon, int limit) {
+        List<MessageView> messages = messageRepository.findChatPageCommittedAfter(chatId, txId, id, horizon, PageRequest.of(0, limit));
+        decrypt(messages);
+        return messages;
+    }
+
+    private void decrypt(List<MessageView> messages) {
+        List<String> texts = messageTextCache.decryptAll(messages.stream().map(MessageView::getId).toList(),
+                messages.stream().map(MessageView::getText).toList());
+        for (int i = 0; i < messages.size(); i++) {
+            messages.get(i).setText(texts.get(i));
+        }
+    }
+
+    @Override
+    public Message saveMessage(Message message, Long chatId, UserEntity user) {
         if (user.getEmail() != null && !user.getEmail().isEmpty()) {
             message.setAuthor(user.getEmail());  // for permanent accounts
         } else {
             message.setAuthor(user.getSurname()); // for temporary accounts
         }
+        return appendMessage(message, chatId, user.getId());
+    }
+
+    @Override
+    public Message appendMessage(Message message, Long chatId, Long authorId) {
+        // Only references -> the chat (participants, messages, conference) and the author are never loaded or merged
+        message.setChat(chatRepository.getReferenceById(chatId));
+        message.setUser(authorId != null ? userRepository.getReferenceById(authorId) : null);
+        message.setId(idAllocator.nextId()); // same id source as the write-behind batches
 
         // Encode message
         String originalText = message.getText();
-        String encodedText = encoderService.encryptText(message.getText());
-        message.setText(encodedText);
-
-        chatService.updateChat(chat);
-        messageRepository.save(message);
-
-        message.setText(originalText); // replace for displaying on page
+        message.setText(encoderService.encryptText(originalText));
+        MessageView view = new MessageView(message.getId(), originalText, message.getAuthor(), message.getPubDate(),
+                message.getType(), message.getFileId(), message.getFileName(), message.getViewUrl(), message.getDownloadUrl());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                entityManager.persist(message); // assigned id -> single INSERT, nothing is merged
+                recentMessageBuffer.append(chatId, view); // once committed (see RecentMessageBuffer)
+            });
+            messageTextCache.put(message.getId(), originalText);
+        } catch (DataIntegrityViolationException e) {
+            log.error("Unable to save message into chat {}: {}", chatId, e.getMessage());
+            throw new ChatException("Chat not found");
+        } finally {
+            message.setText(originalText); // replace for displaying on page
+        }
         return message;
     }
 
@@ -73,8 +171,10 @@ public class MessageServiceImpl implements MessageService {
     @Transactional
     @Override
     public void deleteMessage(Message message, Chat chat) {
+        // both collections are lazy: only loaded ones are kept in step (loading them would read the whole history, and a
+        // detached chat can not load at all)
         UserEntity user = message.getUser();
-        if (user != null)
+        if (user != null && Hibernate.isInitialized(user.getMessages()))
             user.getMessages().remove(message);
         if (message.getFileId() != null) {
             try {
@@ -83,8 +183,24 @@ public class MessageServiceImpl implements MessageService {
                 log.error("Unable to delete file {}: {}" , message.getFileId(),e.getMessage());
             }
         }
-        chat.getMessages().remove(message);
+        if (Hibernate.isInitialized(chat.getMessages()))
+            chat.getMessages().remove(message);
         messageRepository.delete(message);
+        messageTextCache.invalidate(message.getId());
+        invalidateRecentBuffer(chat.getId());
+    }
+
+    /// Again after commit -> a page read from the table before the delete was committed is not kept
+    private void invalidateRecentBuffer(Long chatId) {
+        recentMessageBuffer.invalidate(chatId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recentMessageBuffer.invalidate(chatId);
+                }
+            });
+        }
     }
 
     @Override
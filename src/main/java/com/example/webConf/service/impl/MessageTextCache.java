@@ -0,0 +1,99 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.message.MessageCacheStats;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// Decrypted message texts by message id, so repeated views of a chat skip the crypto.
+/// Bounded by the estimated size of the texts ("max-bytes"), Caffeine evicts with W-TinyLFU.
+/// Message texts never change once written (re-encryption keeps the plain text), so only deletions invalidate.
+@Component
+@Slf4j
+public class MessageTextCache {
+    private static final int ENTRY_OVERHEAD_BYTES = 64; // key, String header and map node
+
+    private final EncoderService encoderService;
+    private final boolean enabled;
+    private final long maxBytes;
+    private final Cache<Long, String> cache;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public MessageTextCache(EncoderService encoderService,
+                            @Value("${chat.message-cache.enabled}") boolean enabled,
+                            @Value("${chat.message-cache.max-bytes}") long maxBytes) {
+        this.encoderService = encoderService;
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long id, String text) -> ENTRY_OVERHEAD_BYTES + text.length() * 2)
+                .recordStats()
+                .build();
+    }
+
+    /// Plain texts for the given cipher texts (same order), only cache misses are decrypted
+    public List<String> decryptAll(List<Long> ids, List<String> cipherTexts) {
+        if (!enabled) {
+            return encoderService.decryptAll(cipherTexts);
+        }
+        Map<Long, String> cached = cache.getAllPresent(ids);
+        List<String> result = new ArrayList<>(ids.size());
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            String text = ids.get(i) != null ? cached.get(ids.get(i)) : null;
+            result.add(text);
+            if (text == null && cipherTexts.get(i) != null) {
+                missing.add(i);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        List<String> decrypted = encoderService.decryptAll(missing.stream().map(cipherTexts::get).toList());
+        for (int i = 0; i < missing.size(); i++) {
+            int index = missing.get(i);
+            result.set(index, decrypted.get(i));
+            put(ids.get(index), decrypted.get(i));
+        }
+        return result;
+    }
+
+    /// Newly sent messages are the ones everybody reads next
+    public void put(Long messageId, String text) {
+        if (enabled && messageId != null && text != null) {
+            cache.put(messageId, text);
+        }
+    }
+
+    public void invalidate(Long messageId) {
+        if (enabled && messageId != null) {
+            cache.invalidate(messageId);
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public MessageCacheStats getStats() {
+        CacheStats stats = cache.stats();
+        return MessageCacheStats.builder()
+                .enabled(enabled)
+                .entries(cache.estimatedSize())
+                .weightBytes(cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .maxBytes(maxBytes)
+                .hits(stats.hitCount())
+                .misses(stats.missCount())
+                .hitRate(stats.hitRate())
+                .evictions(stats.evictionCount())
+                .evictedBytes(stats.evictionWeight())
+                .invalidations(invalidations.get())
+                .build();
+    }
+}
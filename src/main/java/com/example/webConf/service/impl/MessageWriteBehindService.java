@@ -0,0 +1,326 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.message.MessageView;
+import com.example.webConf.dto.message.WriteBehindStats;
+import com.example.webConf.model.chat.Message;
+import com.example.webConf.model.user.UserEntity;
+import com.example.webConf.service.MessageService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/// Write-behind stage between ChatController and the "message" table.
+/// Messages get their id and encrypted text right away (so they can be broadcast immediately),
+/// are buffered in a bounded queue and written by one background thread with JDBC batch inserts,
+/// when "batch-size" messages are waiting or "flush-interval-ms" has passed.
+/// Every message gets a local sequence number until its insert has run: flush() waits for all messages submitted before it,
+/// including a batch the background thread has already taken from the queue but not written yet.
+@Service
+@Slf4j
+public class MessageWriteBehindService {
+    private static final String INSERT_SQL = "INSERT INTO message (id, text, author, pub_date, type, chat_id, author_id, file_id, file_name, view_url, download_url) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final MessageService messageService;
+    private final EncoderService encoderService;
+    private final MessageIdAllocator idAllocator;
+    private final MessageTextCache messageTextCache;
+    private final RecentMessageBuffer recentMessageBuffer;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final int queueCapacity;
+    private final BlockingQueue<PendingMessage> queue;
+    private final ReentrantLock flushLock = new ReentrantLock(); // one flush at a time (background thread or flush())
+    private final Condition batchWritten = flushLock.newCondition();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentSkipListSet<Long> unwritten = new ConcurrentSkipListSet<>(); // sequence numbers not inserted yet
+    private volatile boolean running;
+    private Thread flusher;
+
+    /// Metrics
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong synchronousFallbacks = new AtomicLong();
+    private final AtomicLong totalFlushMillis = new AtomicLong();
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+
+    public MessageWriteBehindService(MessageService messageService,
+                                     EncoderService encoderService,
+                                     MessageIdAllocator idAllocator,
+                                     MessageTextCache messageTextCache,
+                                     RecentMessageBuffer recentMessageBuffer,
+                                     JdbcTemplate jdbcTemplate,
+                                     TransactionTemplate transactionTemplate,
+                                     @Value("${chat.write-behind.enabled}") boolean enabled,
+                                     @Value("${chat.write-behind.queue-capacity}") int queueCapacity,
+                                     @Value("${chat.write-behind.batch-size}") int batchSize,
+                                     @Value("${chat.write-behind.flush-interval-ms}") long flushIntervalMs,
+                                     @Value("${chat.write-behind.offer-timeout-ms}") long offerTimeoutMs) {
+        this.messageService = messageService;
+        this.encoderService = encoderService;
+        this.idAllocator = idAllocator;
+        this.messageTextCache = messageTextCache;
+        this.recentMessageBuffer = recentMessageBuffer;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("Message write-behind is disabled, messages are saved synchronously");
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "message-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    ///  Flush everything that is still buffered before the datasource goes away
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (flusher != null) {
+            flusher.interrupt();
+            try {
+                flusher.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        log.info("Message write-behind stopped, {} messages flushed in total", flushed.get());
+    }
+
+    /// Prepare the message for broadcasting and queue it for saving
+    public Message submit(Message message, Long chatId, UserEntity user) {
+        boolean permanent = user.getEmail() != null && !user.getEmail().isEmpty();
+        return submit(message, chatId, user.getId(), permanent ? user.getEmail() : user.getSurname());
+    }
+
+    /// Same, with the author already resolved (email for permanent accounts, surname for temporary accounts)
+    public Message submit(Message message, Long chatId, Long authorId, String author) {
+        message.setAuthor(author);
+        if (!enabled) {
+            return messageService.appendMessage(message, chatId, authorId);
+        }
+        message.setId(idAllocator.nextId());
+        messageTextCache.put(message.getId(), message.getText());
+
+        PendingMessage pending = new PendingMessage(sequence.incrementAndGet(), message.getId(), encoderService.encryptText(message.getText()),
+                message.getAuthor(), message.getPubDate(), message.getType() != null ? message.getType().name() : null,
+                chatId, authorId, message.getFileId(), message.getFileName(), message.getViewUrl(), message.getDownloadUrl(),
+                new MessageView(message.getId(), message.getText(), message.getAuthor(), message.getPubDate(), message.getType(),
+                        message.getFileId(), message.getFileName(), message.getViewUrl(), message.getDownloadUrl()));
+        unwritten.add(pending.sequence()); // before it can be taken from the queue
+        try {
+            // Backpressure: wait a little for free space, then save on the caller thread instead of dropping the message
+            if (!queue.offer(pending, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                synchronousFallbacks.incrementAndGet();
+                log.warn("Message write-behind queue is full ({}), saving message {} synchronously", queueCapacity, pending.id());
+                write(List.of(pending));
+                return message;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            write(List.of(pending));
+            return message;
+        }
+        enqueued.incrementAndGet();
+        return message;
+    }
+
+    /// Write all buffered messages now (before reads that must see them, e.g. delete or clear of a chat).
+    /// Returns once every message submitted before the call was inserted (or given up after its single retry).
+    public void flush() {
+        long target = sequence.get();
+        flushLock.lock();
+        try {
+            List<PendingMessage> batch = new ArrayList<>();
+            while (queue.drainTo(batch, batchSize) > 0) {
+                write(batch);
+                batch.clear();
+            }
+            // the rest was taken by the background thread, its write needs the lock -> await releases it
+            while (hasUnwrittenUpTo(target)) {
+                batchWritten.await(flushIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public WriteBehindStats getStats() {
+        long flushCount = flushes.get();
+        return WriteBehindStats.builder()
+                .enabled(enabled)
+                .queueDepth(queue.size())
+                .queueCapacity(queueCapacity)
+                .enqueued(enqueued.get())
+                .flushed(flushed.get())
+                .flushes(flushCount)
+                .failed(failed.get())
+                .synchronousFallbacks(synchronousFallbacks.get())
+                .lastFlushMillis(lastFlushMillis)
+                .maxFlushMillis(maxFlushMillis)
+                .avgFlushMillis(flushCount == 0 ? 0 : (double) totalFlushMillis.get() / flushCount)
+                .build();
+    }
+
+    private void flushLoop() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                // stop() was called -> write what was already collected, stop() flushes the rest of the queue
+            }
+            if (!batch.isEmpty()) {
+                flushLock.lock();
+                try {
+                    write(batch);
+                } finally {
+                    flushLock.unlock();
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    /// Size trigger: batch is full, time trigger: "flush-interval-ms" passed since the first message of the batch
+    private void collect(List<PendingMessage> batch) throws InterruptedException {
+        PendingMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.currentTimeMillis() + flushIntervalMs;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long wait = deadline - System.currentTimeMillis();
+            if (batch.size() >= batchSize || wait <= 0) {
+                return;
+            }
+            PendingMessage next = queue.poll(wait, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private boolean hasUnwrittenUpTo(long target) {
+        Long oldest = unwritten.ceiling(Long.MIN_VALUE); // null when empty (first() would throw)
+        return oldest != null && oldest <= target;
+    }
+
+    private void write(List<PendingMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            insert(batch);
+        } finally {
+            batch.forEach(message -> unwritten.remove(message.sequence()));
+            flushLock.lock();
+            try {
+                batchWritten.signalAll();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    private void insert(List<PendingMessage> batch) {
+        // buffer per chat -> rows of one chat are inserted next to each other
+        Map<Long, List<PendingMessage>> byChat = new LinkedHashMap<>();
+        batch.forEach(message -> byChat.computeIfAbsent(message.chatId(), id -> new ArrayList<>()).add(message));
+        List<PendingMessage> ordered = new ArrayList<>(batch.size());
+        byChat.values().forEach(ordered::addAll);
+
+        long start = System.currentTimeMillis();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_SQL, ordered, ordered.size(), (ps, message) -> {
+                    ps.setLong(1, message.id());
+                    ps.setString(2, message.text());
+                    ps.setString(3, message.author());
+                    ps.setString(4, message.pubDate());
+                    ps.setString(5, message.type());
+                    ps.setLong(6, message.chatId());
+                    ps.setObject(7, message.authorId(), Types.BIGINT);
+                    ps.setObject(8, message.fileId(), Types.BIGINT);
+                    ps.setString(9, message.fileName());
+                    ps.setString(10, message.viewUrl());
+                    ps.setString(11, message.downloadUrl());
+                });
+                // once committed (see RecentMessageBuffer)
+                ordered.forEach(message -> recentMessageBuffer.append(message.chatId(), message.view()));
+            });
+            flushed.addAndGet(ordered.size());
+        } catch (Exception e) {
+            // one bad row (e.g. chat was deleted meanwhile) must not lose the whole batch
+            log.warn("Batch insert of {} messages failed ({}), retrying one by one", ordered.size(), e.getMessage());
+            ordered.forEach(this::writeSingle);
+        } finally {
+            long duration = System.currentTimeMillis() - start;
+            flushes.incrementAndGet();
+            totalFlushMillis.addAndGet(duration);
+            lastFlushMillis = duration;
+            maxFlushMillis = Math.max(maxFlushMillis, duration);
+        }
+    }
+
+    private void writeSingle(PendingMessage message) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update(INSERT_SQL, message.id(), message.text(), message.author(), message.pubDate(), message.type(),
+                        message.chatId(), message.authorId(), message.fileId(), message.fileName(), message.viewUrl(), message.downloadUrl());
+                recentMessageBuffer.append(message.chatId(), message.view());
+            });
+            flushed.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.error("Unable to save message {} into chat {}: {}", message.id(), message.chatId(), e.getMessage());
+        }
+    }
+
+    private record PendingMessage(long sequence, Long id, String text, String author, String pubDate, String type, Long chatId,
+                                  Long authorId, Long fileId, String fileName, String viewUrl, String downloadUrl,
+                                  MessageView view) { // plain text view for the recent buffer
+    }
+}
@@ -0,0 +1,353 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.message.MessagePage;
+import com.example.webConf.dto.message.MessageView;
+import com.example.webConf.dto.message.RecentBufferStats;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/// Last "capacity" messages of every active chat, serialized (JSON) into fixed-size slots of a direct ByteBuffer slab.
+/// The newest history page of a chat (chat page, conference page) is served from here, Postgres is read only on a miss.
+/// Messages are appended once the transaction that inserts them has committed (a rolled back insert is never seen): a page
+/// read by the sender after the insert returns has the message, other readers get it a moment after the commit. A chat
+/// loaded meanwhile collects the appends and merges them with the page read from the table. Ids are handed out before the
+/// insert, so a lower id can arrive after a higher one: it is put in its place by id.
+/// Slabs are pooled: "max-bytes" is the off-heap ceiling, chats idle for "idle-minutes" give their slab back.
+/// The buffer is local to this instance, so it is switched off in "relay" broker mode (several instances, one database).
+@Component
+@Slf4j
+public class RecentMessageBuffer {
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int capacity;
+    private final int slotBytes;
+    private final int maxSlabs;
+    private final Cache<Long, Ring> rings;
+    private final ConcurrentLinkedQueue<ByteBuffer> freeSlabs = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger allocatedSlabs = new AtomicInteger();
+
+    /// Metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong slabShortages = new AtomicLong();
+
+    public RecentMessageBuffer(ObjectMapper objectMapper,
+                               @Value("${chat.recent-buffer.enabled}") boolean enabled,
+                               @Value("${chat.recent-buffer.capacity}") int capacity,
+                               @Value("${chat.recent-buffer.slot-bytes}") int slotBytes,
+                               @Value("${chat.recent-buffer.max-bytes}") long maxBytes,
+                               @Value("${chat.recent-buffer.idle-minutes}") long idleMinutes,
+                               @Value("${websocket.broker.mode}") String brokerMode) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled && !"relay".equalsIgnoreCase(brokerMode);
+        if (enabled && !this.enabled) {
+            log.info("Recent message buffer is disabled in relay broker mode (messages of other instances would be missing)");
+        }
+        this.capacity = capacity;
+        this.slotBytes = slotBytes;
+        this.maxSlabs = (int) Math.max(1, maxBytes / ((long) capacity * slotBytes));
+        this.rings = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxSlabs - 1)) // one spare slab -> a new chat can load while the coldest one is evicted
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .executor(Runnable::run) // slab is back in the pool as soon as the ring is removed
+                .removalListener((Long chatId, Ring ring, RemovalCause cause) -> {
+                    if (ring != null) {
+                        release(ring);
+                    }
+                    if (cause.wasEvicted()) {
+                        evictions.incrementAndGet();
+                    }
+                })
+                .build();
+    }
+
+    /// Newest page of a chat, from the buffer or (on a miss) from "loader", which then fills the buffer.
+    /// "loader" gets the number of messages to read.
+    public MessagePage newestPage(Long chatId, int size, IntFunction<MessagePage> loader) {
+        if (!enabled || size > capacity) {
+            return loader.apply(size);
+        }
+        Ring ring = rings.getIfPresent(chatId);
+        if (ring != null) {
+            synchronized (ring) {
+                MessagePage page = ring.read(size);
+                if (page != null) {
+                    hits.incrementAndGet();
+                    return page;
+                }
+            }
+        }
+        misses.incrementAndGet();
+
+        // Register the ring before reading the table -> messages written meanwhile are collected and merged
+        Ring loading = newRing();
+        if (loading != null) {
+            rings.put(chatId, loading);
+        }
+        boolean filled = false;
+        try {
+            MessagePage page = loader.apply(capacity);
+            if (loading != null) {
+                synchronized (loading) {
+                    filled = loading.released || loading.fill(page);
+                }
+            }
+            return trim(page, size);
+        } finally {
+            if (loading != null && !filled) {
+                discard(chatId, loading); // a ring left loading (failed read) would never answer and keep its slab
+            }
+        }
+    }
+
+    /// Called in the transaction that inserts the message, appended once it commits (right away outside a transaction)
+    public void append(Long chatId, MessageView message) {
+        if (!enabled || message.getId() == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    appendCommitted(chatId, message);
+                }
+            });
+        } else {
+            appendCommitted(chatId, message);
+        }
+    }
+
+    private void appendCommitted(Long chatId, MessageView message) {
+        Ring ring = rings.getIfPresent(chatId);
+        if (ring == null) {
+            return; // not buffered -> the next read loads it from the table
+        }
+        boolean stale;
+        synchronized (ring) {
+            stale = !ring.released && !ring.append(message);
+        }
+        if (stale) {
+            invalidate(chatId);
+        } else {
+            appends.incrementAndGet();
+        }
+    }
+
+    /// Message deleted or chat cleared -> reload on the next read
+    public void invalidate(Long chatId) {
+        if (enabled && chatId != null) {
+            rings.invalidate(chatId);
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /// Only this ring: another reader may have registered a newer one meanwhile
+    private void discard(Long chatId, Ring ring) {
+        if (rings.asMap().remove(chatId, ring)) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /// Return slabs of idle chats even when nobody touches the buffer
+    @Scheduled(fixedDelay = 60000)
+    public void cleanUp() {
+        rings.cleanUp();
+    }
+
+    public RecentBufferStats getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        return RecentBufferStats.builder()
+                .enabled(enabled)
+                .chats(rings.estimatedSize())
+                .capacity(capacity)
+                .slotBytes(slotBytes)
+                .allocatedSlabs(allocatedSlabs.get())
+                .maxSlabs(maxSlabs)
+                .offHeapBytes((long) allocatedSlabs.get() * capacity * slotBytes)
+                .hits(hitCount)
+                .misses(missCount)
+                .hitRate(hitCount + missCount == 0 ? 0 : (double) hitCount / (hitCount + missCount))
+                .appends(appends.get())
+                .invalidations(invalidations.get())
+                .evictions(evictions.get())
+                .slabShortages(slabShortages.get())
+                .build();
+    }
+
+    private Ring newRing() {
+        ByteBuffer slab = freeSlabs.poll();
+        if (slab == null) {
+            if (allocatedSlabs.incrementAndGet() > maxSlabs) {
+                allocatedSlabs.decrementAndGet();
+                slabShortages.incrementAndGet(); // evicted slabs come back once Caffeine has done its maintenance
+                return null;
+            }
+            slab = ByteBuffer.allocateDirect(capacity * slotBytes);
+        }
+        return new Ring(slab);
+    }
+
+    private void release(Ring ring) {
+        ByteBuffer slab;
+        synchronized (ring) {
+            if (ring.released) {
+                return;
+            }
+            ring.released = true;
+            slab = ring.slab;
+        }
+        slab.clear();
+        freeSlabs.offer(slab);
+    }
+
+    private MessagePage trim(MessagePage page, int size) {
+        List<MessageView> messages = page.getMessages();
+        if (messages.size() <= size) {
+            return page;
+        }
+        List<MessageView> newest = new ArrayList<>(messages.subList(messages.size() - size, messages.size()));
+        return MessagePage.builder()
+                .messages(newest)
+                .oldestId(newest.get(0).getId())
+                .newestId(newest.get(newest.size() - 1).getId())
+                .hasMore(true)
+                .build();
+    }
+
+    /// Ring of "capacity" slots, slot = [int length][JSON bytes]. All access is synchronized on the ring.
+    private class Ring {
+        private final ByteBuffer slab;
+        private boolean loading = true;
+        private boolean released;
+        private final List<MessageView> appendedWhileLoading = new ArrayList<>();
+        private int head;           // slot of the oldest message
+        private int count;
+        private final long[] ids = new long[capacity]; // message id of every slot
+        private boolean hasOlder;   // the table has messages older than the buffered ones
+
+        private Ring(ByteBuffer slab) {
+            this.slab = slab;
+        }
+
+        /// false -> the page can not be buffered (see append)
+        private boolean fill(MessagePage page) {
+            Map<Long, MessageView> merged = new TreeMap<>();
+            page.getMessages().forEach(message -> merged.put(message.getId(), message));
+            appendedWhileLoading.forEach(message -> merged.put(message.getId(), message));
+            appendedWhileLoading.clear();
+            loading = false;
+            hasOlder = page.isHasMore();
+            for (MessageView message : merged.values()) {
+                if (!append(message)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /// false -> the buffer can not represent the chat any more (too big message)
+        private boolean append(MessageView message) {
+            if (loading) {
+                appendedWhileLoading.add(message);
+                return true;
+            }
+            long id = message.getId();
+            int position = count; // from the oldest message, almost always behind the newest one
+            while (position > 0 && ids[slot(position - 1)] > id) {
+                position--;
+            }
+            if (position > 0 && ids[slot(position - 1)] == id) {
+                return true; // already buffered
+            }
+            if (position == 0 && count > 0 && (hasOlder || count == capacity)) {
+                hasOlder = true; // older than everything buffered -> part of the history read from the table
+                return true;
+            }
+            byte[] bytes;
+            try {
+                bytes = objectMapper.writeValueAsBytes(message);
+            } catch (IOException e) {
+                log.warn("Unable to serialize message {} for the recent buffer: {}", message.getId(), e.getMessage());
+                return false;
+            }
+            if (bytes.length + Integer.BYTES > slotBytes) {
+                return false;
+            }
+            if (count == capacity) { // the oldest message makes room
+                head = (head + 1) % capacity;
+                count--;
+                position--;
+                hasOlder = true;
+            }
+            for (int i = count; i > position; i--) { // newer messages move up by one slot
+                copy(slot(i - 1), slot(i));
+            }
+            int offset = slot(position) * slotBytes;
+            slab.putInt(offset, bytes.length);
+            slab.put(offset + Integer.BYTES, bytes);
+            ids[slot(position)] = id;
+            count++;
+            return true;
+        }
+
+        private int slot(int position) {
+            return (head + position) % capacity;
+        }
+
+        private void copy(int from, int to) {
+            int length = Integer.BYTES + slab.getInt(from * slotBytes);
+            slab.put(to * slotBytes, slab, from * slotBytes, length);
+            ids[to] = ids[from];
+        }
+
+        /// null -> can not answer, read the table
+        private MessagePage read(int size) {
+            if (loading || released || (count < size && hasOlder)) {
+                return null;
+            }
+            int n = Math.min(size, count);
+            List<MessageView> messages = new ArrayList<>(n);
+            try {
+                for (int i = count - n; i < count; i++) {
+                    int offset = ((head + i) % capacity) * slotBytes;
+                    byte[] bytes = new byte[slab.getInt(offset)];
+                    slab.get(offset + Integer.BYTES, bytes);
+                    messages.add(objectMapper.readValue(bytes, MessageView.class));
+                }
+            } catch (IOException e) {
+                log.warn("Unable to read the recent buffer: {}", e.getMessage());
+                return null;
+            }
+            return MessagePage.builder()
+                    .messages(messages)
+                    .oldestId(messages.isEmpty() ? null : messages.get(0).getId())
+                    .newestId(messages.isEmpty() ? null : messages.get(messages.size() - 1).getId())
+                    .hasMore(count > n || hasOlder)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.config.exception.UploadException;
+import com.example.webConf.dto.StorageConsumer;
+import com.example.webConf.dto.StorageUsageStats;
+import com.example.webConf.model.attachment.StorageUsage;
+import com.example.webConf.model.user.UserEntity;
+import com.example.webConf.repository.StorageUsageRepository;
+import com.example.webConf.repository.UserEntityRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/// Attachment bytes per chat and per user ("storage_usage"), changed together with every attachment row, so quotas and
+/// the admin usage list never scan attachments or blobs. Counted bytes are the file sizes the owner uploaded,
+/// deduplication (AttachmentBlobService) does not lower them.
+@Service
+@Slf4j
+public class StorageQuotaService {
+    private final StorageUsageRepository storageUsageRepository;
+    private final UserEntityRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long userQuotaBytes;
+    private final long chatQuotaBytes;
+
+    public StorageQuotaService(StorageUsageRepository storageUsageRepository,
+                               UserEntityRepository userRepository,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${attachment.quota.user-bytes}") long userQuotaBytes,
+                               @Value("${attachment.quota.chat-bytes}") long chatQuotaBytes) {
+        this.storageUsageRepository = storageUsageRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.userQuotaBytes = userQuotaBytes;
+        this.chatQuotaBytes = chatQuotaBytes;
+    }
+
+    /// Before the first request: counters for attachments saved before they existed (once, while the table is empty)
+    @PostConstruct
+    public void countExistingUsage() {
+        if (storageUsageRepository.count() > 0) {
+            return;
+        }
+        Integer inserted = transactionTemplate.execute(status -> storageUsageRepository.insertMissingUsage());
+        if (inserted != null && inserted > 0) {
+            log.info("Counted attachment storage of {} existing chats and users", inserted);
+        }
+    }
+
+    /// Early check with the announced size (Content-Length, chunked upload size) before any content is read.
+    /// Only an estimate under concurrency, charge() is the binding check.
+    public void checkQuota(Long chatId, Long userId, long size) {
+        check(StorageUsage.OwnerType.CHAT, chatId, chatQuotaBytes, size);
+        check(StorageUsage.OwnerType.USER, userId, userQuotaBytes, size);
+    }
+
+    /// Counts a new attachment, inside the transaction that saves it (rolled back together when over quota)
+    public void charge(Long chatId, Long userId, long size) {
+        charge(StorageUsage.OwnerType.CHAT, chatId, chatQuotaBytes, size);
+        charge(StorageUsage.OwnerType.USER, userId, userQuotaBytes, size);
+    }
+
+    /// Deleted attachment
+    public void release(Long chatId, Long userId, long size) {
+        add(StorageUsage.OwnerType.CHAT, chatId, -size, -1);
+        add(StorageUsage.OwnerType.USER, userId, -size, -1);
+    }
+
+    /// Size of an old row became known (large object migration), the file itself was counted already
+    public void addBytes(Long chatId, Long userId, long size) {
+        add(StorageUsage.OwnerType.CHAT, chatId, size, 0);
+        add(StorageUsage.OwnerType.USER, userId, size, 0);
+    }
+
+    public StorageUsageStats getTopConsumers(int limit) {
+        PageRequest top = PageRequest.of(0, Math.max(1, limit));
+        List<StorageUsage> users = storageUsageRepository.findAllByOwnerTypeAndBytesGreaterThanOrderByBytesDesc(StorageUsage.OwnerType.USER, 0, top);
+        List<StorageUsage> chats = storageUsageRepository.findAllByOwnerTypeAndBytesGreaterThanOrderByBytesDesc(StorageUsage.OwnerType.CHAT, 0, top);
+        Map<Long, UserEntity> userNames = userRepository.findAllById(users.stream().map(StorageUsage::getOwnerId).toList()).stream()
+                .collect(Collectors.toMap(UserEntity::getId, Function.identity()));
+
+        return StorageUsageStats.builder()
+                .userQuotaBytes(userQuotaBytes)
+                .chatQuotaBytes(chatQuotaBytes)
+                .users(users.stream().map(usage -> toConsumer(usage, userQuotaBytes, displayName(userNames.get(usage.getOwnerId())))).toList())
+                .chats(chats.stream().map(usage -> toConsumer(usage, chatQuotaBytes, "Chat " + usage.getOwnerId())).toList())
+                .build();
+    }
+
+    private void check(StorageUsage.OwnerType type, Long ownerId, long quota, long size) {
+        if (ownerId == null || quota <= 0) {
+            return;
+        }
+        long used = storageUsageRepository.findById(new StorageUsage.Key(type, ownerId)).map(StorageUsage::getBytes).orElse(0L);
+        if (used + size > quota) {
+            throw overQuota(type, used, quota);
+        }
+    }
+
+    private void charge(StorageUsage.OwnerType type, Long ownerId, long quota, long size) {
+        if (ownerId == null) {
+            return;
+        }
+        if (quota <= 0) {
+            add(type, ownerId, size, 1);
+            return;
+        }
+        add(type, ownerId, 0, 0); // make sure the row exists, the conditional update below needs it
+        if (storageUsageRepository.addWithinQuota(type.name(), ownerId, size, quota) == 0) {
+            long used = storageUsageRepository.findById(new StorageUsage.Key(type, ownerId)).map(StorageUsage::getBytes).orElse(0L);
+            throw overQuota(type, used, quota);
+        }
+    }
+
+    private void add(StorageUsage.OwnerType type, Long ownerId, long bytes, long files) {
+        if (ownerId != null) {
+            storageUsageRepository.add(type.name(), ownerId, bytes, files);
+        }
+    }
+
+    private UploadException overQuota(StorageUsage.OwnerType type, long used, long quota) {
+        String owner = type == StorageUsage.OwnerType.CHAT ? "Chat" : "User";
+        return new UploadException(HttpStatus.PAYLOAD_TOO_LARGE,
+                owner + " storage quota exceeded: " + used + " of " + quota + " bytes used");
+    }
+
+    private StorageConsumer toConsumer(StorageUsage usage, long quota, String name) {
+        return StorageConsumer.builder()
+                .id(usage.getOwnerId())
+                .name(name)
+                .bytes(usage.getBytes())
+                .files(usage.getFiles())
+                .quotaPercent(quota <= 0 ? 0 : usage.getBytes() * 100.0 / quota)
+                .build();
+    }
+
+    private static String displayName(UserEntity user) {
+        if (user == null) {
+            return "Deleted user";
+        }
+        return user.getEmail() != null && !user.getEmail().isEmpty() ? user.getEmail() : user.getSurname();
+    }
+}
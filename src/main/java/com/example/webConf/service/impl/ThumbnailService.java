@@ -0,0 +1,167 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.service.storage.BlobStore;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/// Downscaled JPEG previews of image attachments, stored as a "thumb" variant next to the blob.
+/// Generated after the upload on a small bounded pool: a burst of uploads queues up to "queue-capacity" images and drops
+/// the rest (they are generated when somebody asks for the thumbnail). Decoding is subsampled, so even a large photo
+/// is never fully expanded in memory.
+@Service
+@Slf4j
+public class ThumbnailService {
+    public static final String VARIANT = "thumb";
+
+    private final BlobStore blobStore;
+    private final boolean enabled;
+    private final int maxSize;
+    private final long maxPixels;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet(); // one job per content
+    private final Cache<String, Boolean> unsupported = Caffeine.newBuilder().maximumSize(10_000).build();
+
+    public ThumbnailService(BlobStore blobStore,
+                            @Value("${attachment.thumbnail.enabled}") boolean enabled,
+                            @Value("${attachment.thumbnail.max-size}") int maxSize,
+                            @Value("${attachment.thumbnail.max-pixels}") long maxPixels,
+                            @Value("${attachment.thumbnail.threads}") int threads,
+                            @Value("${attachment.thumbnail.queue-capacity}") int queueCapacity) {
+        this.blobStore = blobStore;
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.maxPixels = maxPixels;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "thumbnail-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY); // previews must not slow down the chat
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /// Queue the thumbnail of an uploaded file (does nothing for other files or when it already exists)
+    public void submit(String storageKey, String fileType) {
+        if (!enabled || storageKey == null || !isImage(fileType)
+                || unsupported.getIfPresent(storageKey) != null || blobStore.existsVariant(storageKey, VARIANT)
+                || !pending.add(storageKey)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(storageKey);
+                } finally {
+                    pending.remove(storageKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(storageKey);
+            log.debug("Thumbnail queue is full, {} is generated on the next request", storageKey);
+        }
+    }
+
+    public Optional<Resource> find(String storageKey) {
+        if (storageKey == null || !blobStore.existsVariant(storageKey, VARIANT)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(blobStore.getVariant(storageKey, VARIANT));
+        } catch (IOException e) {
+            return Optional.empty(); // deleted meanwhile
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void generate(String storageKey) {
+        try {
+            BufferedImage source = readSubsampled(storageKey);
+            if (source == null) {
+                unsupported.put(storageKey, Boolean.TRUE);
+                return;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+            ImageIO.write(scale(source), "jpg", out);
+            blobStore.putVariant(storageKey, VARIANT, out.toByteArray());
+        } catch (Exception e) {
+            log.warn("Unable to create thumbnail of blob {}: {}", storageKey, e.getMessage());
+            unsupported.put(storageKey, Boolean.TRUE);
+        }
+    }
+
+    /// null -> no ImageIO reader for the format or too many pixels
+    private BufferedImage readSubsampled(String storageKey) throws IOException {
+        Resource resource = blobStore.get(storageKey);
+        try (InputStream in = resource.isFile() ? null : resource.getInputStream();
+             ImageInputStream input = ImageIO.createImageInputStream(resource.isFile() ? resource.getFile() : in)) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    return null;
+                }
+                // read every n-th pixel only, keeping twice the target size for a smooth final scale
+                int step = Math.max(1, Math.max(width, height) / (maxSize * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /// Fit into maxSize x maxSize, flattened onto white (JPEG has no alpha)
+    private BufferedImage scale(BufferedImage source) {
+        double ratio = Math.min(1.0, (double) maxSize / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private static boolean isImage(String fileType) {
+        return fileType != null && fileType.startsWith("image/") && !fileType.equals("image/gif"); // gifs stay animated
+    }
+}
@@ -1,6 +1,15 @@
 let stompClient = null;
 let chatId, username, participants, userEmail;
 let isFirstJoin = true;
+// History paging
+let oldestMessageId = null;
+let hasOlderMessages = false;
+let loadingOlderMessages = false;
+// Reconnect + delta sync
+let syncCursor = null;
+let lastEventId = 0;
+let everConnected = false;
+let reconnectDelay = 1000;
 
 
 document.addEventListener('DOMContentLoaded', function () {
@@ -13,6 +22,8 @@ document.addEventListener('DOMContentLoaded', function () {
 
         // Check if user have already logged in to this chat room for the first time (i store variable into localStorage, because every time the page refreshes, it'll be gone. )
         isFirstJoin = !localStorage.getItem(`hasJoined_${chatId}`);
+        lastEventId = typeof lastChatEventId !== 'undefined' && lastChatEventId ? lastChatEventId : 0;
+        syncCursor = typeof chatSyncCursor !== 'undefined' ? chatSyncCursor : null;
 
         connect();
 
@@ -81,6 +92,13 @@ function connect() {
     const socket = new SockJS('/ws');
     stompClient = Stomp.over(socket);
     stompClient.connect({}, function (frame) {
+        reconnectDelay = 1000;
+        if (everConnected) { // reconnect -> subscribe again and fetch only what was missed
+            subscribeToChat(chatId);
+            syncChat();
+            return;
+        }
+        everConnected = true;
         addUserToTheChat()
 
         if (isFirstJoin) {
@@ -88,12 +106,107 @@ function connect() {
             localStorage.setItem(`hasJoined_${chatId}`, 'true');
         }
 
-        JSON.parse(initialMessages).forEach(showMessage); // display saved messages from database
+        const messages = JSON.parse(initialMessages); // newest page of saved messages from database
+        messages.forEach(message => showMessage(message));
+        oldestMessageId = messages.length > 0 ? messages[0].id : null;
+        hasOlderMessages = typeof hasMoreMessages !== 'undefined' && hasMoreMessages;
+        document.querySelector('.projects-list').addEventListener('scroll', function () {
+            if (this.scrollTop === 0) {
+                loadOlderMessages();
+            }
+        });
     }, function (error) {
         console.error('STOMP error:', error);
+        setTimeout(connect, reconnectDelay);
+        reconnectDelay = Math.min(reconnectDelay * 2, 30000);
     });
 }
 
+// Catch up after a reconnect: deletes / clears and messages committed after the sync cursor (some may already be shown)
+function syncChat() {
+    const subscription = stompClient.subscribe('/app/chat/' + chatId + '/sync', function (response) {
+        subscription.unsubscribe();
+        const sync = JSON.parse(response.body);
+        sync.events.forEach(event => {
+            if (event.type === 'DELETE') {
+                handleDeletedMessage(event);
+            } else if (event.type === 'CLEAR') {
+                removeMessagesUpTo(event.id);
+            }
+        });
+        sync.messages.forEach(message => showMessage(message));
+        lastEventId = Math.max(lastEventId, sync.lastEventId || 0);
+        syncCursor = sync.cursor;
+        if (sync.hasMore) {
+            syncChat();
+        }
+    }, syncCursor ? {cursor: syncCursor, lastEventId: String(lastEventId)} : {lastEventId: String(lastEventId)});
+}
+
+// Clear event replayed by the sync -> only messages that existed at the time of the clear are removed
+function removeMessagesUpTo(messageId) {
+    if (messageId == null) {
+        return;
+    }
+    document.querySelectorAll('.projects-list [data-message-id]').forEach(element => {
+        if (Number(element.dataset.messageId) <= messageId) {
+            element.remove();
+        }
+    });
+}
+
+function loadOlderMessages() {
+    if (!hasOlderMessages || loadingOlderMessages || oldestMessageId == null) {
+        return;
+    }
+    loadingOlderMessages = true;
+    const chatContainer = document.querySelector('.projects-list');
+    const previousHeight = chatContainer.scrollHeight;
+
+    fetch(`/chat/${chatId}/messages?before=${oldestMessageId}`)
+        .then(response => {
+            if (!response.ok) {
+                throw new Error(`HTTP ${response.status}`);
+            }
+            return response.json();
+        })
+        .then(page => {
+            // page is ordered oldest -> newest, prepend from the newest one
+            page.messages.slice().reverse().forEach(message => showMessage(message, true));
+            if (page.oldestId != null) {
+                oldestMessageId = page.oldestId;
+            }
+            hasOlderMessages = page.hasMore;
+            chatContainer.scrollTop = chatContainer.scrollHeight - previousHeight; // stay on the same message
+        })
+        .catch(error => console.error('Failed to load older messages:', error))
+        .finally(() => loadingOlderMessages = false);
+}
+
+// Messages don't arrive in id order (sync after a reconnect, parallel senders) -> new ones are placed by id
+function placeMessage(chatContainer, element, prepend) {
+    if (prepend) {
+        chatContainer.insertBefore(element, chatContainer.firstChild);
+    } else {
+        chatContainer.insertBefore(element, nextNewerMessage(chatContainer, Number(element.dataset.messageId)));
+        chatContainer.scrollTop = chatContainer.scrollHeight;
+    }
+}
+
+function nextNewerMessage(chatContainer, messageId) {
+    if (isNaN(messageId)) {
+        return null;
+    }
+    let next = null;
+    for (let child = chatContainer.lastElementChild; child; child = child.previousElementSibling) {
+        if (child.dataset.messageId == null || Number(child.dataset.messageId) <= messageId) {
+            break;
+        }
+        next = child;
+    }
+    return next;
+}
+
 function addUserToTheChat(newChatId) {
     const targetChatId = newChatId != null ? newChatId : chatId;
 
@@ -142,6 +255,9 @@ function addUserAndWait(targetChatId) {
 function subscribeToChat(chatId) {
     stompClient.subscribe('/topic/chat/' + chatId, function (response) {
         const message = JSON.parse(response.body);
+        if (message.eventId != null) {
+            lastEventId = Math.max(lastEventId, message.eventId);
+        }
         if (message.type === 'JOIN') {
             showMessage(message);
         } else if (message.type === 'DELETE') {
@@ -183,7 +299,10 @@ function confirmAction(message) {
     return confirm(message)
 }
 
-function showMessage(message) {
+function showMessage(message, prepend = false) {
+    if (message.id != null && !prepend && document.querySelector(`.projects-list [data-message-id="${message.id}"]`)) {
+        return; // already shown (broadcast before the sync, or rendered with the page)
+    }
     if (!message.text || message.text.trim() === '') {
         console.log('Received empty message:', message);
         return;
@@ -266,7 +385,8 @@ function showMessage(message) {
 
         if (message.viewUrl && /\.(jpg|jpeg|png|gif|webp)$/i.test(message.fileName)) {
             imgPreview = document.createElement('img');
-            imgPreview.src = message.viewUrl;
+            imgPreview.src = message.thumbnailUrl || message.viewUrl; // a few KB preview, the modal opens the full image
+            imgPreview.loading = 'lazy';
             imgPreview.alt = message.fileName;
             imgPreview.className = 'file-preview';
             imgPreview.style.cursor = 'pointer';
@@ -341,7 +461,7 @@ function showMessage(message) {
 
             imgPreview.addEventListener('dblclick', () => {
                 const modalImage = document.getElementById('modal-image');
-                modalImage.src = imgPreview.src;
+                modalImage.src = message.viewUrl;
                 modalImage.alt = imgPreview.alt;
                 imageModal.style.display = 'flex';
             });
@@ -351,7 +471,8 @@ function showMessage(message) {
         messageContent.appendChild(textParagraph);
         messageContent.appendChild(fileContainer);
         messageContent.appendChild(dateParagraph);
-        chatContainer.appendChild(messageContent);
+        placeMessage(chatContainer, messageContent, prepend);
+        return;
     } else {
         const messageContent = document.createElement('div');
         const authorParagraph = document.createElement('p');
@@ -392,8 +513,7 @@ function showMessage(message) {
         messageDiv.appendChild(dateParagraph);
     }
 
-    chatContainer.appendChild(messageDiv);
-    chatContainer.scrollTop = chatContainer.scrollHeight;
+    placeMessage(chatContainer, messageDiv, prepend);
 }
 
 function addUser(targetChatId, addInvitation) {
@@ -6,6 +6,15 @@ class ChatManager {
         this.chatId = chatId;
         this.isFirstJoin = true;
         this.isConnected = false; // Добавляем флаг соединения
+        // History paging
+        this.oldestMessageId = null;
+        this.hasOlderMessages = false;
+        this.loadingOlderMessages = false;
+        // Reconnect + delta sync
+        this.syncCursor = typeof chatSyncCursor !== 'undefined' ? chatSyncCursor : null;
+        this.lastEventId = typeof lastChatEventId !== 'undefined' && lastChatEventId ? lastChatEventId : 0;
+        this.everConnected = false;
+        this.reconnectDelay = 1000;
     }
 
     async init() {
@@ -24,8 +33,24 @@ class ChatManager {
             const socket = new SockJS('/ws');
             this.stompClient = Stomp.over(socket);
 
-            this.stompClient.connect({}, (frame) => {
+            // userName -> the server resolves the sender once per session (temporary users have no login)
+            this.stompClient.connect({userName: this.userName}, (frame) => {
                 this.isConnected = true; // Устанавливаем флаг
+                this.reconnectDelay = 1000;
+                if (this.conferenceId) { // live user counts of the conference (a new session counts the user again)
+                    ConferenceUtils.subscribeRoster(this.stompClient, this.conferenceId);
+                }
+                if (this.everConnected) { // reconnect -> subscribe again and fetch only what was missed
+                    if (this.chatId) {
+                        this.subscribeToChat(this.chatId);
+                        this.syncChat();
+                    } else if (this.conferenceId) {
+                        this.subscribeToConferenceChat(this.conferenceId);
+                    }
+                    resolve();
+                    return;
+                }
+                this.everConnected = true;
 
                 if (this.chatId) {
                     this.subscribeToChat(this.chatId);
@@ -41,6 +66,8 @@ class ChatManager {
                         const messages = JSON.parse(initialMessages);
                         if (Array.isArray(messages)) {
                             messages.forEach(msg => this.showMessage(msg));
+                            this.oldestMessageId = messages.length > 0 ? messages[0].id : null;
+                            this.hasOlderMessages = typeof hasMoreMessages !== 'undefined' && hasMoreMessages;
                         }
                     } catch (e) {
                         console.error('Failed to parse initial messages:', e);
@@ -50,11 +77,48 @@ class ChatManager {
             }, (error) => {
                 console.error('STOMP error:', error);
                 this.isConnected = false;
+                if (this.everConnected) {
+                    setTimeout(() => this.connectChat().catch(() => {}), this.reconnectDelay);
+                    this.reconnectDelay = Math.min(this.reconnectDelay * 2, 30000);
+                }
                 reject(error); // Отклоняем промис при ошибке
             });
         });
     }
 
+    // Catch up after a reconnect: deletes / clears and messages newer than the last shown one
+    syncChat() {
+        const subscription = this.stompClient.subscribe('/app/chat/' + this.chatId + '/sync', (response) => {
+            subscription.unsubscribe();
+            const sync = JSON.parse(response.body);
+            sync.events.forEach(event => {
+                if (event.type === 'DELETE') {
+                    this.handleDeletedMessage({messageId: event.id});
+                } else if (event.type === 'CLEAR') {
+                    this.removeMessagesUpTo(event.id);
+                }
+            });
+            sync.messages.forEach(msg => this.showMessage(msg));
+            this.lastEventId = Math.max(this.lastEventId, sync.lastEventId || 0);
+            this.syncCursor = sync.cursor;
+            if (sync.hasMore) {
+                this.syncChat();
+            }
+        }, this.syncCursor ? {cursor: this.syncCursor, lastEventId: String(this.lastEventId)} : {lastEventId: String(this.lastEventId)});
+    }
+
+    // Clear event replayed by the sync -> only messages that existed at the time of the clear are removed
+    removeMessagesUpTo(messageId) {
+        if (messageId == null) {
+            return;
+        }
+        document.querySelectorAll('.projects-list [data-message-id]').forEach(element => {
+            if (Number(element.dataset.messageId) <= messageId) {
+                element.remove();
+            }
+        });
+    }
+
     // Добавляем метод для подписки на конференцию
     subscribeToConferenceChat(conferenceId) {
         this.stompClient.subscribe('/topic/conference/' + conferenceId + '/chat', (response) => {
@@ -79,6 +143,9 @@ class ChatManager {
             if (message === null) {
                 return;
             }
+            if (message.eventId != null) {
+                this.lastEventId = Math.max(this.lastEventId, message.eventId);
+            }
 
             if (message.type === 'JOIN') {
                 this.showMessage(message);
@@ -107,8 +174,42 @@ class ChatManager {
         });
     }
 
+    // Load previous page of chat history (when chat is scrolled to the top)
+    loadOlderMessages() {
+        if (!this.hasOlderMessages || this.loadingOlderMessages || this.oldestMessageId == null || !this.chatId) {
+            return;
+        }
+        this.loadingOlderMessages = true;
+        const chatContainer = document.querySelector('.projects-list');
+        const previousHeight = chatContainer.scrollHeight;
+
+        fetch(`/chat/${this.chatId}/messages?before=${this.oldestMessageId}`, {
+            headers: typeof chatAccessToken !== 'undefined' && chatAccessToken ? {'X-Chat-Token': chatAccessToken} : {}
+        })
+            .then(response => {
+                if (!response.ok) {
+                    throw new Error(`HTTP ${response.status}`);
+                }
+                return response.json();
+            })
+            .then(page => {
+                // page is ordered oldest -> newest, prepend from the newest one
+                page.messages.slice().reverse().forEach(msg => this.showMessage(msg, true));
+                if (page.oldestId != null) {
+                    this.oldestMessageId = page.oldestId;
+                }
+                this.hasOlderMessages = page.hasMore;
+                chatContainer.scrollTop = chatContainer.scrollHeight - previousHeight; // stay on the same message
+            })
+            .catch(error => console.error('Failed to load older messages:', error))
+            .finally(() => this.loadingOlderMessages = false);
+    }
+
     // Show message in chat
-    showMessage(message) {
+    showMessage(message, prepend = false) {
+        if (message.id != null && !prepend && document.querySelector(`.projects-list [data-message-id="${message.id}"]`)) {
+            return; // already shown (broadcast before the sync, or rendered with the page)
+        }
         if (!message.text && !message.content) {
             return;
         }
@@ -188,8 +289,27 @@ class ChatManager {
             messageDiv.appendChild(dateParagraph);
         }
 
-        chatContainer.appendChild(messageDiv);
-        chatContainer.scrollTop = chatContainer.scrollHeight;
+        if (prepend) {
+            chatContainer.insertBefore(messageDiv, chatContainer.firstChild);
+        } else {
+            // messages don't arrive in id order (sync after a reconnect, parallel senders) -> new ones are placed by id
+            chatContainer.insertBefore(messageDiv, this.nextNewerMessage(chatContainer, Number(message.id)));
+            chatContainer.scrollTop = chatContainer.scrollHeight;
+        }
+    }
+
+    nextNewerMessage(chatContainer, messageId) {
+        if (isNaN(messageId)) {
+            return null;
+        }
+        let next = null;
+        for (let child = chatContainer.lastElementChild; child; child = child.previousElementSibling) {
+            if (child.dataset.messageId == null || Number(child.dataset.messageId) <= messageId) {
+                break;
+            }
+            next = child;
+        }
+        return next;
     }
 
     handleDeletedMessage(message) {
@@ -337,6 +457,15 @@ class ChatManager {
             console.error("Toggle chat button not found");
         }
 
+        const chatContainer = document.querySelector('.projects-list');
+        if (chatContainer) {
+            chatContainer.addEventListener('scroll', () => {
+                if (chatContainer.scrollTop === 0) {
+                    this.loadOlderMessages();
+                }
+            });
+        }
+
         const commentText = document.getElementById('commentText');
         if (commentText) {
             commentText.addEventListener('input', () => {
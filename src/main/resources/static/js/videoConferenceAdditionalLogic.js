@@ -1,49 +1,89 @@
 const ConferenceUtils = {
     cameraOrderMap: new Map(),
+    roster: {version: -1, buffered: [], loading: null},
+    // Counts come from the live roster (snapshot + changes on /topic/conference/{id}/roster), nothing is fetched
     async updateUserCount(conferenceId, userName, userCounts, displayName, reconnecting, callback) {
-        console.log(`Update user count started for: ${userName}`);
-
-        try {
-            let userDisplayName = userName;
-            if (userDisplayName && userDisplayName.includes('_technical')) {
-                userDisplayName = userDisplayName.split('_technical')[0];
-            }
-
-            if (reconnecting && userDisplayName === displayName) {
-                console.log('Skipping user count update for reconnecting user');
-                return userCounts.get(userDisplayName) || 1;
-            }
-
-            console.log(`Fetching user count for: ${userDisplayName}`);
+        let userDisplayName = userName;
+        if (userDisplayName && userDisplayName.includes('_technical')) {
+            userDisplayName = userDisplayName.split('_technical')[0];
+        }
+        if (ConferenceUtils.roster.loading) {
+            await ConferenceUtils.roster.loading;
+        }
+        if (callback && typeof callback === 'function') {
+            callback();
+        }
+        return userCounts.get(userDisplayName) || 1;
+    },
 
-            const response = await fetch(`/conference/updateUserJoinCount?userName=${encodeURIComponent(userDisplayName)}&conferenceId=${encodeURIComponent(conferenceId)}`);
+    // Called on every STOMP (re)connect of the conference page: follow the changes, then load the snapshot
+    subscribeRoster(stompClient, conferenceId) {
+        ConferenceUtils.roster.version = -1;
+        ConferenceUtils.roster.buffered = [];
+        stompClient.subscribe('/topic/conference/' + conferenceId + '/roster', (response) => {
+            ConferenceUtils.applyRosterChange(conferenceId, JSON.parse(response.body));
+        });
+        return ConferenceUtils.loadRoster(conferenceId);
+    },
 
-            if (!response.ok) {
-                throw new Error(`HTTP ${response.status}: Failed to update user count`);
-            }
+    loadRoster(conferenceId) {
+        const roster = ConferenceUtils.roster;
+        roster.version = -1;
+        roster.loading = fetch(`/conference/${encodeURIComponent(conferenceId)}/roster`)
+            .then(response => {
+                if (!response.ok) {
+                    throw new Error(`HTTP ${response.status}: Failed to load conference roster`);
+                }
+                return response.json();
+            })
+            .then(snapshot => {
+                const conference = ConferenceUtils.getConferenceInstance();
+                if (conference) {
+                    conference.userCounts.clear();
+                    Object.entries(snapshot.counts || {}).forEach(([userName, count]) => conference.userCounts.set(userName, count));
+                }
+                roster.version = snapshot.version;
+                const buffered = roster.buffered;
+                roster.buffered = [];
+                buffered.forEach(change => ConferenceUtils.applyRosterChange(conferenceId, change));
+                ConferenceUtils.updateUsersList();
+            })
+            .catch(error => {
+                console.error('Error loading conference roster:', error);
+                ConferenceUtils.showError('Error while updating users count');
+            })
+            .finally(() => {
+                roster.loading = null;
+            });
+        return roster.loading;
+    },
 
-            let count;
-            try {
-                count = await response.json();
-            } catch (parseError) {
-                console.warn('Failed to parse JSON response, defaulting to 0');
-                count = 0;
+    applyRosterChange(conferenceId, change) {
+        const roster = ConferenceUtils.roster;
+        if (roster.version < 0) { // snapshot still loading
+            roster.buffered.push(change);
+            return;
+        }
+        if (change.version !== 0) { // 0 -> relay broker mode: count read from the table, applied as is
+            if (change.version <= roster.version) {
+                return;
             }
-
-            console.log(`Received count ${count} for user: ${userDisplayName}`);
-            userCounts.set(userDisplayName, count);
-
-            if (callback && typeof callback === 'function') {
-                callback();
+            if (change.version !== roster.version + 1) { // missed a change -> snapshot again
+                ConferenceUtils.loadRoster(conferenceId);
+                return;
             }
-
-            return count;
-
-        } catch (error) {
-            console.error(`Error updating user count for ${userName}:`, error);
-            ConferenceUtils.showError('Error while updating users count');
-            return null;
+            roster.version = change.version;
+        }
+        const conference = ConferenceUtils.getConferenceInstance();
+        if (!conference) {
+            return;
+        }
+        if (change.count > 0) {
+            conference.userCounts.set(change.userName, change.count);
+        } else {
+            conference.userCounts.delete(change.userName);
         }
+        ConferenceUtils.updateUsersList();
     },
 
     getParticipantSection(displayName, conference) {
@@ -97,25 +137,6 @@ const ConferenceUtils = {
             throw error;
         }
     },
-    startUserCountUpdates() {
-        if (this.userUpdateInterval) {
-            clearInterval(this.userUpdateInterval);
-            this.userUpdateInterval = null;
-        }
-        this.userUpdateInterval = setInterval(() => {
-            console.log("Running background user count verification");
-            this.userCounts.forEach((_, userName) => {
-                this.updateUserCount(
-                    this.conferenceId,
-                    userName,
-                    this.userCounts,
-                    this.displayName,
-                    false,
-                    () => ConferenceUtils.updateUsersList()
-                );
-            });
-        }, 300000);
-    },
     updateButtonState(buttonId, enabled) {
         const button = document.getElementById(buttonId);
         if (button) {
@@ -151,9 +172,6 @@ const ConferenceUtils = {
         document.getElementById('loading').style.display = 'none';
     },
     onDisconnected() {
-        if (this.userUpdateInterval) {
-            clearInterval(this.userUpdateInterval);
-        }
         console.log('The connection is broken');
     }
 }
@@ -11,9 +11,8 @@ class VideoConference {
         this.remoteTracks = new Map();
         this.deviceConfig = null;
         this.participants = new Map();
-        this.userCounts = new Map();
+        this.userCounts = new Map(); // live roster, see ConferenceUtils.subscribeRoster
         this.userVisibility = new Map();
-        this.userUpdateInterval = null;
         this.reconnecting = false;
         this.myParticipantId = null;
         this.displayNameToSectionMap = new Map();
@@ -513,13 +512,6 @@ class VideoConference {
 
         if (participant) {
             const displayName = participant.displayName;
-            const currentCount = this.userCounts.get(displayName);
-
-            if (currentCount > 1) {
-                this.userCounts.set(displayName, currentCount - 1);
-            } else {
-                this.userCounts.delete(displayName);
-            }
 
             ConferenceUtils.updateUserCount(
                 this.conferenceId,
@@ -1307,8 +1299,6 @@ class VideoConference {
     async leaveConference() {
         sessionStorage.removeItem('conferenceUserId');
         sessionStorage.removeItem('conferenceId');
-        let currentCount = this.userCounts.get(this.userName) || 0;
-        this.userCounts.set(this.userName, Math.max(0, currentCount - 1));
 
         try {
             ConferenceUtils.updateUserCount(
@@ -1858,7 +1848,6 @@ class VideoConference {
             }
 
             await ConferenceUtils.setupControlButtons(this);
-            ConferenceUtils.startUserCountUpdates();
             JitsiMeetJS.setLogLevel(JitsiMeetJS.logLevels.ERROR);
             this.connection.addEventListener(
                 JitsiMeetJS.events.connection.CONNECTION_FAILED,
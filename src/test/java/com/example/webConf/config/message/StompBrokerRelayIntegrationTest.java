@@ -0,0 +1,158 @@
+package com.example.webConf.config.message;
+
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/// Relay broker mode against an embedded Artemis (STOMP acceptor as in the docker compose "artemis" service): two app
+/// instances, each with its own broker connection, and a message sent on one reaches the subscribers of both.
+/// Instances are Spring's STOMP relay handlers as WebSocketConfig sets them up, the client sessions are simulated frames.
+class StompBrokerRelayIntegrationTest {
+    private static final String DESTINATION = "/topic/chat/1";
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @TempDir
+    Path brokerDir;
+
+    private EmbeddedActiveMQ broker;
+    private Instance first;
+    private Instance second;
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        int port = freePort();
+        broker = new EmbeddedActiveMQ().setConfiguration(new ConfigurationImpl()
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .setJournalDirectory(brokerDir.resolve("journal").toString())
+                .setBindingsDirectory(brokerDir.resolve("bindings").toString())
+                .setLargeMessagesDirectory(brokerDir.resolve("large").toString())
+                .setPagingDirectory(brokerDir.resolve("paging").toString())
+                .addAcceptorConfiguration("stomp", "tcp://127.0.0.1:" + port + "?protocols=STOMP"));
+        broker.start();
+        first = new Instance(port);
+        second = new Instance(port);
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        if (first != null) {
+            first.relay.stop();
+        }
+        if (second != null) {
+            second.relay.stop();
+        }
+        broker.stop();
+    }
+
+    @Test
+    void messageSentOnOneInstanceReachesSubscribersOfBoth() throws Exception {
+        first.subscribe("first-client", DESTINATION);
+        second.subscribe("second-client", DESTINATION);
+
+        // what @SendTo / SimpMessagingTemplate hand to the broker: no client session, sent on the system connection
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setDestination(DESTINATION);
+        first.relay.handleMessage(MessageBuilder.createMessage("{\"text\":\"hello\"}".getBytes(StandardCharsets.UTF_8), headers.getMessageHeaders()));
+
+        assertEquals("{\"text\":\"hello\"}", first.nextMessage("first-client"));
+        assertEquals("{\"text\":\"hello\"}", second.nextMessage("second-client"));
+    }
+
+    @Test
+    void subscriberOfAnotherDestinationGetsNothing() throws Exception {
+        second.subscribe("second-client", "/topic/chat/2");
+        first.subscribe("first-client", DESTINATION);
+
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setDestination(DESTINATION);
+        second.relay.handleMessage(MessageBuilder.createMessage("{}".getBytes(StandardCharsets.UTF_8), headers.getMessageHeaders()));
+
+        assertEquals("{}", first.nextMessage("first-client"));
+        assertTrue(second.toClients.isEmpty());
+    }
+
+    /// One app instance: its own relay (system connection + one broker connection per client session)
+    private static class Instance {
+        private final BlockingQueue<Message<?>> toClients = new LinkedBlockingQueue<>();
+        private final StompBrokerRelayMessageHandler relay;
+
+        private Instance(int port) throws InterruptedException {
+            relay = new StompBrokerRelayMessageHandler(new ExecutorSubscribableChannel(), (message, timeout) -> toClients.add(message),
+                    new ExecutorSubscribableChannel(), List.of("/topic"));
+            relay.setRelayHost("127.0.0.1");
+            relay.setRelayPort(port);
+            relay.setClientLogin("guest");
+            relay.setClientPasscode("guest");
+            relay.setSystemLogin("guest");
+            relay.setSystemPasscode("guest");
+            relay.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (!relay.isBrokerAvailable()) {
+                assertTrue(System.nanoTime() < deadline, "system connection to the broker was not established");
+                Thread.sleep(50);
+            }
+        }
+
+        /// CONNECT and SUBSCRIBE of a browser session, returns once the broker confirmed the subscription
+        private void subscribe(String sessionId, String destination) throws InterruptedException {
+            StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+            connect.setSessionId(sessionId);
+            connect.setAcceptVersion("1.2");
+            connect.setHeartbeat(0, 0);
+            relay.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+            next(sessionId, StompCommand.CONNECTED);
+
+            StompHeaderAccessor subscribe = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+            subscribe.setSessionId(sessionId);
+            subscribe.setSubscriptionId("sub-0");
+            subscribe.setDestination(destination);
+            subscribe.setReceipt("subscribed");
+            relay.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+            next(sessionId, StompCommand.RECEIPT);
+        }
+
+        private String nextMessage(String sessionId) throws InterruptedException {
+            return new String((byte[]) next(sessionId, StompCommand.MESSAGE).getPayload(), StandardCharsets.UTF_8);
+        }
+
+        private Message<?> next(String sessionId, StompCommand command) throws InterruptedException {
+            Message<?> message = toClients.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(message, command + " was not received");
+            StompHeaderAccessor headers = StompHeaderAccessor.wrap(message);
+            assertEquals(sessionId, headers.getSessionId());
+            assertEquals(command, headers.getCommand());
+            return message;
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.webConf.config.message;
+
+import com.example.webConf.model.user.UserEntity;
+import com.example.webConf.repository.UserEntityRepository;
+import com.example.webConf.service.event.UserAccountChangedEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StompSenderResolverTest {
+    private final UserEntityRepository repository = mock(UserEntityRepository.class);
+    private final StompSenderResolver resolver = new StompSenderResolver(repository);
+
+    @Test
+    void temporaryUserNamedByHeaderIsNoPermanentSender() {
+        when(repository.findStompSenderByUserName("guest")).thenReturn(List.of(
+                new StompSender(2L, null, "guest", "Guest", UserEntity.AccountType.TEMPORARY)));
+
+        SimpMessageHeaderAccessor session = session("s1", null);
+        assertTrue(resolver.getSender(session, "guest").isPresent());
+        assertTrue(resolver.getPermanentSender(session).isEmpty());
+    }
+
+    @Test
+    void principalOfPermanentAccountIsPermanentSender() {
+        when(repository.findStompSenderByEmail("alice@example.com")).thenReturn(List.of(
+                new StompSender(1L, "alice@example.com", "alice", "Smith", UserEntity.AccountType.PERMANENT)));
+
+        assertEquals(1L, resolver.getPermanentSender(session("s1", () -> "alice@example.com")).orElseThrow().getUserId());
+    }
+
+    @Test
+    void accountVersionIsDroppedWithTheLastSession() {
+        StompSender sender = new StompSender(1L, "alice@example.com", "alice", "Smith", UserEntity.AccountType.PERMANENT);
+        resolver.store(new HashMap<>(), "s1", sender);
+        resolver.store(new HashMap<>(), "s2", sender);
+
+        resolver.onAccountChanged(new UserAccountChangedEvent(1L));
+        assertTrue(resolver.isStale(sender));
+
+        resolver.disconnect("s1");
+        assertTrue(resolver.isStale(sender)); // s2 still holds the old version
+        resolver.disconnect("s2");
+        assertFalse(resolver.isStale(sender));
+
+        resolver.onAccountChanged(new UserAccountChangedEvent(1L)); // no session -> nothing kept
+        assertFalse(resolver.isStale(sender));
+    }
+
+    private static SimpMessageHeaderAccessor session(String sessionId, Principal principal) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        Map<String, Object> attributes = new HashMap<>();
+        accessor.setSessionAttributes(attributes);
+        accessor.setSessionId(sessionId);
+        accessor.setUser(principal);
+        return accessor;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.webConf.controller;
+
+import com.example.webConf.config.message.MessageType;
+import com.example.webConf.dto.message.MessageView;
+import com.example.webConf.model.chat.Chat;
+import com.example.webConf.model.chat.Message;
+import com.example.webConf.model.user.UserEntity;
+import com.example.webConf.repository.ChatRepository;
+import com.example.webConf.service.ChatService;
+import com.example.webConf.service.ConferenceService;
+import com.example.webConf.service.UserEntityService;
+import com.example.webConf.service.impl.MessageWriteBehindService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChatControllerTest {
+    @Mock
+    private ChatService chatService;
+    @Mock
+    private UserEntityService userService;
+    @Mock
+    private ConferenceService conferenceService;
+    @Mock
+    private ChatRepository chatRepository;
+    @Mock
+    private MessageWriteBehindService messageWriteBehindService;
+    @InjectMocks
+    private ChatController chatController;
+
+    @Test
+    void acceptedInvitationIsSavedAsAMessageNotCascadedFromTheChat() {
+        UserEntity owner = UserEntity.builder().id(1L).email("owner@example.com").userName("owner").build();
+        UserEntity invited = UserEntity.builder().id(2L).email("invited@example.com").userName("invited").chats(new ArrayList<>()).build();
+        Chat chat = new Chat();
+        chat.setId(5L);
+        chat.setParticipants(new ArrayList<>(List.of(owner)));
+        when(chatService.findById(5L)).thenReturn(Optional.of(chat));
+        when(userService.findByEmail("invited@example.com")).thenReturn(Optional.of(invited));
+
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create();
+        headers.setUser(() -> "invited@example.com");
+        MessageView view = MessageView.builder()
+                .id(999L) // whatever the client sends, the id comes from the allocator
+                .text("joined")
+                .author("invited@example.com")
+                .type(MessageType.JOIN)
+                .invitation(true)
+                .build();
+
+        assertNotNull(chatController.addUser(5L, view, headers));
+
+        ArgumentCaptor<Message> saved = ArgumentCaptor.forClass(Message.class);
+        verify(messageWriteBehindService).submit(saved.capture(), eq(5L), same(invited));
+        assertEquals("joined", saved.getValue().getText());
+        assertNull(saved.getValue().getChat());
+        verify(chatRepository).save(chat);
+        assertTrue(chat.getParticipants().contains(invited));
+        assertTrue(chat.getMessages().isEmpty());
+    }
+}
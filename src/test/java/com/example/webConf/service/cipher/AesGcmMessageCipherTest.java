@@ -0,0 +1,62 @@
+package com.example.webConf.service.cipher;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AesGcmMessageCipherTest {
+    private final AesGcmMessageCipher cipher = new AesGcmMessageCipher(key((byte) 1));
+
+    @Test
+    void roundTrip() {
+        String text = "Hello, привет, 👋";
+        String cipherText = cipher.encrypt(text);
+
+        assertTrue(cipherText.startsWith(AesGcmMessageCipher.PREFIX));
+        assertEquals(text, cipher.decrypt(cipherText));
+    }
+
+    @Test
+    void sameTextGetsAnotherIv() {
+        assertNotEquals(cipher.encrypt("same"), cipher.encrypt("same"));
+    }
+
+    @Test
+    void passwordDerivedKeyIsStable() {
+        String cipherText = new AesGcmMessageCipher("password", "salt").encrypt("message");
+        assertEquals("message", new AesGcmMessageCipher("password", "salt").decrypt(cipherText));
+    }
+
+    @Test
+    void tamperedCipherTextIsRejected() {
+        byte[] data = Base64.getDecoder().decode(cipher.encrypt("message").substring(AesGcmMessageCipher.PREFIX.length()));
+        data[data.length - 1] ^= 1;
+        String tampered = AesGcmMessageCipher.PREFIX + Base64.getEncoder().encodeToString(data);
+
+        assertThrows(IllegalStateException.class, () -> cipher.decrypt(tampered));
+    }
+
+    @Test
+    void otherKeyIsRejected() {
+        String cipherText = cipher.encrypt("message");
+        assertThrows(IllegalStateException.class, () -> new AesGcmMessageCipher(key((byte) 2)).decrypt(cipherText));
+    }
+
+    @Test
+    void unversionedCipherTextIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> cipher.decrypt("DdZK7daeHrauXChJZcBcxA=="));
+    }
+
+    private static SecretKeySpec key(byte value) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, value);
+        return new SecretKeySpec(key, "AES");
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.model.attachment.AttachmentBlob;
+import com.example.webConf.repository.AttachmentBlobRepository;
+import com.example.webConf.service.storage.BlobStore;
+import com.example.webConf.service.storage.FileSystemBlobStore;
+import com.example.webConf.service.storage.SegmentedBlobCipher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/// Reference counting on a real blob store directory, the attachment_blob table is a map behaving like its upsert
+class AttachmentBlobServiceTest {
+    private final Map<String, AttachmentBlob> rows = new HashMap<>();
+    private final AttachmentBlobRepository repository = mock(AttachmentBlobRepository.class);
+
+    @TempDir
+    Path root;
+
+    private BlobStore blobStore;
+    private AttachmentBlobService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        doAnswer(invocation -> rows.merge(invocation.getArgument(0),
+                AttachmentBlob.builder().storageKey(invocation.getArgument(0)).size(invocation.getArgument(1)).refCount(1L).build(),
+                (row, added) -> {
+                    row.setRefCount(row.getRefCount() + 1);
+                    return row;
+                })).when(repository).addReference(anyString(), anyLong());
+        when(repository.findForUpdate(anyString())).thenAnswer(invocation -> Optional.ofNullable(rows.get(invocation.<String>getArgument(0))));
+        doAnswer(invocation -> rows.remove(invocation.<AttachmentBlob>getArgument(0).getStorageKey())).when(repository).delete(any(AttachmentBlob.class));
+
+        blobStore = new FileSystemBlobStore(root.toString(), new SegmentedBlobCipher(false, "", 4096, "password", "salt"));
+        service = new AttachmentBlobService(repository, blobStore, mock(JdbcTemplate.class), mock(TransactionTemplate.class));
+    }
+
+    @Test
+    void sameContentIsStoredOnce() throws IOException {
+        BlobStore.StagedBlob first = stage("same content");
+        BlobStore.StagedBlob second = stage("same content");
+        service.addReference(first);
+        service.addReference(second);
+
+        assertEquals(first.key(), second.key());
+        assertEquals(2L, rows.get(first.key()).getRefCount());
+        assertTrue(blobStore.exists(first.key()));
+        assertFalse(Files.exists(second.file())); // staged duplicate dropped
+    }
+
+    @Test
+    void blobStaysWhileAnotherReferenceExists() throws IOException {
+        BlobStore.StagedBlob blob = stage("shared");
+        service.addReference(blob);
+        service.addReference(stage("shared"));
+
+        service.removeReference(blob.key());
+
+        assertEquals(1L, rows.get(blob.key()).getRefCount());
+        assertTrue(blobStore.exists(blob.key()));
+    }
+
+    @Test
+    void blobIsDeletedWithItsLastReference() throws IOException {
+        BlobStore.StagedBlob blob = stage("alone");
+        service.addReference(blob);
+
+        service.removeReference(blob.key());
+
+        assertFalse(rows.containsKey(blob.key()));
+        assertFalse(blobStore.exists(blob.key()));
+    }
+
+    @Test
+    void blobWithoutReferenceCountIsKept() throws IOException {
+        BlobStore.StagedBlob blob = stage("uncounted");
+        blobStore.commit(blob);
+
+        service.removeReference(blob.key());
+
+        assertTrue(blobStore.exists(blob.key()));
+    }
+
+    private BlobStore.StagedBlob stage(String content) throws IOException {
+        return blobStore.stage(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.AttachmentMetadata;
+import com.example.webConf.repository.AttachmentRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+class AttachmentUrlSignerTest {
+    private static final AttachmentMetadata ATTACHMENT =
+            new AttachmentMetadata(5L, "report+final.pdf", "application/pdf", "ab/cdef", 1024L, null, 1L);
+
+    private final AttachmentUrlSigner signer =
+            new AttachmentUrlSigner(mock(AttachmentRepository.class), new HmacSigner("test-secret", "simple"), 3600);
+
+    @Test
+    void signedUrlVerifies() {
+        MultiValueMap<String, String> query = query(signer.sign(AttachmentUrlSigner.Mode.VIEW, ATTACHMENT));
+
+        assertEquals(AttachmentUrlSigner.Verification.VALID, verify(AttachmentUrlSigner.Mode.VIEW, query, param(query, "name")));
+    }
+
+    @Test
+    void changedFileNameOrModeIsRejected() {
+        MultiValueMap<String, String> query = query(signer.sign(AttachmentUrlSigner.Mode.VIEW, ATTACHMENT));
+
+        assertEquals(AttachmentUrlSigner.Verification.INVALID, verify(AttachmentUrlSigner.Mode.VIEW, query, "other.pdf"));
+        assertEquals(AttachmentUrlSigner.Verification.INVALID, verify(AttachmentUrlSigner.Mode.DOWNLOAD, query, param(query, "name")));
+    }
+
+    @Test
+    void expiredUrlIsReportedAsExpired() {
+        long expires = Instant.now().getEpochSecond() - 1;
+        String signature = new HmacSigner("test-secret", "simple").sign(HmacSigner.Purpose.ATTACHMENT_URL,
+                "view\n5\nab/cdef\nreport+final.pdf\napplication/pdf\n" + expires);
+
+        assertEquals(AttachmentUrlSigner.Verification.EXPIRED, signer.verify(AttachmentUrlSigner.Mode.VIEW, 5L, "ab/cdef",
+                "report+final.pdf", "application/pdf", expires, signature));
+    }
+
+    @Test
+    void urlOfAnotherSecretIsRejected() {
+        AttachmentUrlSigner other =
+                new AttachmentUrlSigner(mock(AttachmentRepository.class), new HmacSigner("other-secret", "simple"), 3600);
+        MultiValueMap<String, String> query = query(other.sign(AttachmentUrlSigner.Mode.VIEW, ATTACHMENT));
+
+        assertEquals(AttachmentUrlSigner.Verification.INVALID, verify(AttachmentUrlSigner.Mode.VIEW, query, param(query, "name")));
+    }
+
+    @Test
+    void rowWithoutStorageKeyGetsNoSignedUrl() {
+        assertNull(signer.sign(AttachmentUrlSigner.Mode.VIEW, new AttachmentMetadata(6L, "a.txt", "text/plain", null, 1L, null, 1L)));
+    }
+
+    private AttachmentUrlSigner.Verification verify(AttachmentUrlSigner.Mode mode, MultiValueMap<String, String> query, String name) {
+        return signer.verify(mode, ATTACHMENT.getId(), param(query, "key"), name, param(query, "type"),
+                Long.parseLong(param(query, "expires")), param(query, "signature"));
+    }
+
+    private static MultiValueMap<String, String> query(String url) {
+        UriComponents components = UriComponentsBuilder.fromUriString(url).build();
+        return components.getQueryParams();
+    }
+
+    private static String param(MultiValueMap<String, String> query, String name) {
+        return URLDecoder.decode(query.getFirst(name), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.webConf.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatAccessTokenServiceTest {
+    private final ChatAccessTokenService tokens = new ChatAccessTokenService(new HmacSigner("test-secret", "simple"), 3600);
+
+    @Test
+    void issuedTokenNamesItsUser() {
+        assertEquals(Optional.of(7L), tokens.verify(1L, tokens.issue(1L, 7L)));
+    }
+
+    @Test
+    void tokenOfAnotherChatIsRejected() {
+        assertTrue(tokens.verify(2L, tokens.issue(1L, 7L)).isEmpty());
+    }
+
+    @Test
+    void changedUserIsRejected() {
+        String token = tokens.issue(1L, 7L);
+        assertTrue(tokens.verify(1L, "8" + token.substring(1)).isEmpty());
+    }
+
+    @Test
+    void tokenOfAnotherSecretIsRejected() {
+        String token = new ChatAccessTokenService(new HmacSigner("other-secret", "simple"), 3600).issue(1L, 7L);
+        assertTrue(tokens.verify(1L, token).isEmpty());
+    }
+
+    @Test
+    void missingOrMalformedTokenIsRejected() {
+        assertTrue(tokens.verify(1L, null).isEmpty());
+        assertTrue(tokens.verify(1L, "alice").isEmpty());
+    }
+}
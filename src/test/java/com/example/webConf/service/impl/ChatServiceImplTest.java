@@ -0,0 +1,58 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.model.chat.Chat;
+import com.example.webConf.model.chat.Message;
+import com.example.webConf.repository.ChatRepository;
+import com.example.webConf.repository.ConferenceRepository;
+import com.example.webConf.service.MessageService;
+import org.hibernate.collection.spi.PersistentBag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChatServiceImplTest {
+    @Mock
+    private ChatRepository chatRepository;
+    @Mock
+    private MessageService messageService;
+    @Mock
+    private ConferenceRepository conferenceRepository;
+    @InjectMocks
+    private ChatServiceImpl chatService;
+
+    @Test
+    void clearingDeletesEveryMessageThroughTheManagedChat() {
+        Message first = Message.builder().id(1L).text("first").build();
+        Message second = Message.builder().id(2L).text("second").build();
+        Chat managed = new Chat();
+        managed.setId(5L);
+        managed.setMessages(new ArrayList<>(List.of(first, second)));
+        when(chatRepository.findById(5L)).thenReturn(Optional.of(managed));
+
+        // what the controller hands over: loaded in an earlier transaction, its lazy messages can not be read any more
+        Chat detached = new Chat();
+        detached.setId(5L);
+        detached.setMessages(new PersistentBag<>());
+
+        chatService.clearMessages(detached);
+
+        verify(messageService).deleteMessage(same(first), same(managed));
+        verify(messageService).deleteMessage(same(second), same(managed));
+        verify(messageService, never()).deleteMessage(any(), same(detached));
+        assertTrue(managed.getMessages().isEmpty());
+    }
+}
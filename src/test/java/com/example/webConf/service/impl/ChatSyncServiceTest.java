@@ -0,0 +1,150 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.config.message.MessageType;
+import com.example.webConf.dto.message.ChatSyncResponse;
+import com.example.webConf.dto.message.MessageView;
+import com.example.webConf.model.chat.ChatEvent;
+import com.example.webConf.repository.ChatEventRepository;
+import com.example.webConf.repository.MessageRepository;
+import com.example.webConf.service.MessageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/// Cursor semantics: "transaction:id" positions in commit order, bounded by the transaction horizon
+class ChatSyncServiceTest {
+    private static final long CHAT_ID = 7L;
+    private static final long HORIZON = 5000L;
+    private static final int MAX_MESSAGES = 3;
+
+    private ChatEventRepository chatEventRepository;
+    private MessageRepository messageRepository;
+    private MessageService messageService;
+    private MessageWriteBehindService messageWriteBehindService;
+    private ChatSyncService service;
+
+    @BeforeEach
+    void setUp() {
+        chatEventRepository = mock(ChatEventRepository.class);
+        messageRepository = mock(MessageRepository.class);
+        messageService = mock(MessageService.class);
+        messageWriteBehindService = mock(MessageWriteBehindService.class);
+        when(messageRepository.findTransactionHorizon()).thenReturn(HORIZON);
+        when(chatEventRepository.findAllByChatIdAndIdGreaterThanOrderById(eq(CHAT_ID), anyLong())).thenReturn(List.of());
+        service = new ChatSyncService(chatEventRepository, messageRepository, messageService, messageWriteBehindService,
+                MAX_MESSAGES, 7);
+    }
+
+    @Test
+    void readsAfterTheCursorUpToTheHorizonWithOneExtraRow() {
+        service.sync(CHAT_ID, "4100:42", 0L);
+
+        verify(messageService).findChatMessagesCommittedAfter(CHAT_ID, 4100L, 42L, HORIZON, MAX_MESSAGES + 1);
+    }
+
+    @Test
+    void flushesBufferedMessagesBeforeTheHorizonIsTaken() {
+        service.sync(CHAT_ID, "4100:42", 0L);
+
+        InOrder order = inOrder(messageWriteBehindService, messageRepository, messageService);
+        order.verify(messageWriteBehindService).flush();
+        order.verify(messageRepository).findTransactionHorizon();
+        order.verify(messageService).findChatMessagesCommittedAfter(anyLong(), anyLong(), anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    void invalidCursorStartsAtTheHorizon() {
+        for (String cursor : new String[]{null, "", "42", "abc:1", "-1:0", "1:2:3"}) {
+            ChatSyncResponse response = service.sync(CHAT_ID, cursor, 0L);
+
+            assertEquals(HORIZON + ":0", response.getCursor(), String.valueOf(cursor));
+        }
+        verify(messageService, times(6))
+                .findChatMessagesCommittedAfter(CHAT_ID, HORIZON, 0L, HORIZON, MAX_MESSAGES + 1);
+    }
+
+    @Test
+    void everythingBelowTheHorizonSentMovesTheCursorToTheHorizon() {
+        when(messageService.findChatMessagesCommittedAfter(CHAT_ID, 4100L, 42L, HORIZON, MAX_MESSAGES + 1))
+                .thenReturn(messages(4200, 4300));
+
+        ChatSyncResponse response = service.sync(CHAT_ID, "4100:42", 0L);
+
+        assertFalse(response.isHasMore());
+        assertEquals(2, response.getMessages().size());
+        assertEquals(HORIZON + ":0", response.getCursor());
+    }
+
+    @Test
+    void morePendingTrimsThePageAndPointsTheCursorAtItsLastMessage() {
+        // a lower id committed in a later transaction comes after the higher one
+        when(messageService.findChatMessagesCommittedAfter(CHAT_ID, 4100L, 42L, HORIZON, MAX_MESSAGES + 1))
+                .thenReturn(List.of(message(4200, 50), message(4300, 44), message(4400, 51), message(4500, 45)));
+
+        ChatSyncResponse response = service.sync(CHAT_ID, "4100:42", 0L);
+
+        assertTrue(response.isHasMore());
+        assertEquals(List.of(50L, 44L, 51L), response.getMessages().stream().map(MessageView::getId).toList());
+        assertEquals("4400:51", response.getCursor());
+    }
+
+    @Test
+    void emptyPageKeepsTheHorizonCursor() {
+        when(messageService.findChatMessagesCommittedAfter(CHAT_ID, HORIZON, 0L, HORIZON, MAX_MESSAGES + 1))
+                .thenReturn(List.of());
+
+        ChatSyncResponse response = service.sync(CHAT_ID, HORIZON + ":0", 0L);
+
+        assertTrue(response.getMessages().isEmpty());
+        assertEquals(HORIZON + ":0", response.getCursor());
+    }
+
+    @Test
+    void lastEventIdFollowsTheEvents() {
+        when(chatEventRepository.findAllByChatIdAndIdGreaterThanOrderById(CHAT_ID, 10L)).thenReturn(List.of(
+                event(11L, MessageType.DELETE, 40L), event(12L, MessageType.CLEAR, 45L)));
+
+        ChatSyncResponse response = service.sync(CHAT_ID, "4100:42", 10L);
+
+        assertEquals(12L, response.getLastEventId());
+        assertEquals(List.of(11L, 12L), response.getEvents().stream().map(MessageView::getEventId).toList());
+    }
+
+    @Test
+    void lastEventIdStaysWithoutNewEvents() {
+        assertEquals(10L, service.sync(CHAT_ID, "4100:42", 10L).getLastEventId());
+        assertEquals(0L, service.sync(CHAT_ID, "4100:42", null).getLastEventId());
+    }
+
+    @Test
+    void renderedPageCursorIsTheHorizon() {
+        assertEquals(HORIZON + ":0", service.cursor());
+    }
+
+    private static List<MessageView> messages(long... txIds) {
+        return LongStream.of(txIds).mapToObj(txId -> message(txId, txId)).toList();
+    }
+
+    private static MessageView message(long txId, long id) {
+        return MessageView.builder().id(id).txId(txId).text("m" + id).build();
+    }
+
+    private static ChatEvent event(Long id, MessageType type, Long messageId) {
+        return ChatEvent.builder().id(id).chatId(CHAT_ID).type(type).messageId(messageId).build();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.conference.ConferenceRoster;
+import com.example.webConf.dto.conference.RosterChange;
+import com.example.webConf.dto.conference.UserJoinCount;
+import com.example.webConf.repository.UserConferenceJoinRepository;
+import com.example.webConf.service.event.ConferenceOccupancyEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/// Published diffs are collected, the join table is mocked
+class ConferenceRosterServiceTest {
+    private static final String CONFERENCE_ID = "conf-1";
+    private static final String TOPIC = "/topic/conference/" + CONFERENCE_ID + "/roster";
+
+    private UserConferenceJoinRepository userConferenceJoinRepository;
+    private final List<RosterChange> changes = new ArrayList<>();
+    private final List<ConferenceOccupancyEvent> occupancy = new ArrayList<>();
+    private SimpMessageSendingOperations messagingTemplate;
+    private ApplicationEventPublisher eventPublisher;
+
+    @BeforeEach
+    void setUp() {
+        userConferenceJoinRepository = mock(UserConferenceJoinRepository.class);
+        when(userConferenceJoinRepository.countJoinsByConferenceId(CONFERENCE_ID)).thenReturn(List.of());
+        messagingTemplate = mock(SimpMessageSendingOperations.class);
+        doAnswer(invocation -> {
+            assertEquals(TOPIC, invocation.getArgument(0));
+            changes.add(invocation.getArgument(1));
+            return null;
+        }).when(messagingTemplate).convertAndSend(anyString(), any(Object.class));
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        doAnswer(invocation -> occupancy.add(invocation.getArgument(0))).when(eventPublisher).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void joinIsCountedOnceWhenItsPageConnects() {
+        ConferenceRosterService roster = roster("simple");
+        roster.snapshot(CONFERENCE_ID); // loaded empty
+
+        roster.join(CONFERENCE_ID, "alice");
+        roster.connect("s1", CONFERENCE_ID, "alice"); // the joined page takes over the count
+
+        assertEquals(List.of(change(1, "alice", 1)), changes);
+        assertEquals(Map.of("alice", 1), roster.snapshot(CONFERENCE_ID).getCounts());
+    }
+
+    @Test
+    void reloadCountsAgainAndDisconnectCountsDown() {
+        ConferenceRosterService roster = roster("simple");
+        roster.snapshot(CONFERENCE_ID);
+        roster.join(CONFERENCE_ID, "alice");
+        roster.connect("s1", CONFERENCE_ID, "alice");
+
+        roster.connect("s2", CONFERENCE_ID, "alice"); // second tab / reconnect
+        roster.disconnect("s1");
+
+        assertEquals(List.of(change(1, "alice", 1), change(2, "alice", 2), change(3, "alice", 1)), changes);
+    }
+
+    @Test
+    void leaveOfAConnectedPageIsNotCountedAgainOnDisconnect() {
+        ConferenceRosterService roster = roster("simple");
+        roster.snapshot(CONFERENCE_ID);
+        roster.join(CONFERENCE_ID, "alice");
+        roster.connect("s1", CONFERENCE_ID, "alice");
+
+        roster.leave(CONFERENCE_ID, "alice");
+        roster.disconnect("s1");
+
+        assertEquals(List.of(change(1, "alice", 1), change(2, "alice", 0)), changes);
+        assertTrue(roster.snapshot(CONFERENCE_ID).getCounts().isEmpty());
+    }
+
+    @Test
+    void versionsFollowEachOtherAcrossUsers() {
+        ConferenceRosterService roster = roster("simple");
+        roster.snapshot(CONFERENCE_ID);
+        roster.join(CONFERENCE_ID, "alice");
+        roster.join(CONFERENCE_ID, "bob");
+        roster.leave(CONFERENCE_ID, "alice");
+
+        assertEquals(List.of(1L, 2L, 3L), changes.stream().map(RosterChange::getVersion).toList());
+        ConferenceRoster snapshot = roster.snapshot(CONFERENCE_ID);
+        assertEquals(3, snapshot.getVersion());
+        assertEquals(Map.of("bob", 1), snapshot.getCounts());
+    }
+
+    @Test
+    void loadedJoinsReconnectWithoutCountingAgain() {
+        when(userConferenceJoinRepository.countJoinsByConferenceId(CONFERENCE_ID))
+                .thenReturn(List.of(new UserJoinCount("alice", 2)));
+        ConferenceRosterService roster = roster("simple");
+
+        roster.connect("s1", CONFERENCE_ID, "alice");
+        roster.connect("s2", CONFERENCE_ID, "alice");
+
+        assertTrue(changes.isEmpty());
+        assertEquals(Map.of("alice", 2), roster.snapshot(CONFERENCE_ID).getCounts());
+    }
+
+    @Test
+    void firstAndLastParticipantArePublishedAsOccupancy() {
+        ConferenceRosterService roster = roster("simple");
+        roster.snapshot(CONFERENCE_ID);
+
+        roster.join(CONFERENCE_ID, "alice");
+        roster.join(CONFERENCE_ID, "bob");
+        roster.leave(CONFERENCE_ID, "alice");
+        roster.leave(CONFERENCE_ID, "bob");
+
+        assertEquals(List.of(new ConferenceOccupancyEvent(CONFERENCE_ID, true), new ConferenceOccupancyEvent(CONFERENCE_ID, false)),
+                occupancy);
+    }
+
+    @Test
+    void followedRosterIsNotEvicted() {
+        ConferenceRosterService roster = roster("simple");
+        roster.join(CONFERENCE_ID, "alice");
+        roster.connect("s1", CONFERENCE_ID, "alice");
+
+        assertFalse(roster.evictIdle(CONFERENCE_ID, Instant.now().plusSeconds(60)));
+        roster.disconnect("s1");
+        roster.join(CONFERENCE_ID, "bob"); // pending join, nobody connected
+        assertTrue(roster.evictIdle(CONFERENCE_ID, Instant.now().plusSeconds(60)));
+    }
+
+    @Test
+    void relayModePublishesTheStoredCountsUnversioned() {
+        ConferenceRosterService roster = roster("relay");
+        when(userConferenceJoinRepository.countJoinsByConferenceIdAndUserName(CONFERENCE_ID, "alice")).thenReturn(2L, 1L);
+        when(userConferenceJoinRepository.countJoinsByConferenceId(CONFERENCE_ID))
+                .thenReturn(List.of(new UserJoinCount("alice", 1), new UserJoinCount("bob", 3)));
+
+        roster.join(CONFERENCE_ID, "alice"); // alice also joined through another instance
+        roster.connect("s1", CONFERENCE_ID, "alice"); // pages are not counted
+        roster.leave(CONFERENCE_ID, "alice");
+        roster.disconnect("s1");
+
+        assertEquals(List.of(change(0, "alice", 2), change(0, "alice", 1)), changes);
+        ConferenceRoster snapshot = roster.snapshot(CONFERENCE_ID);
+        assertEquals(0, snapshot.getVersion());
+        assertEquals(Map.of("alice", 1, "bob", 3), snapshot.getCounts());
+    }
+
+    private ConferenceRosterService roster(String brokerMode) {
+        return new ConferenceRosterService(userConferenceJoinRepository, messagingTemplate, eventPublisher, brokerMode);
+    }
+
+    private static RosterChange change(long version, String userName, int count) {
+        return RosterChange.builder().version(version).userName(userName).count(count).build();
+    }
+}
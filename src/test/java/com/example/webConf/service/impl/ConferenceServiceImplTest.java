@@ -0,0 +1,81 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.conference.UserJoinCount;
+import com.example.webConf.repository.UserConferenceJoinRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ConferenceServiceImplTest {
+    private static final String CONFERENCE_ID = "conf-1";
+
+    @Mock
+    private UserConferenceJoinRepository userConferenceJoinRepository;
+    @InjectMocks
+    private ConferenceServiceImpl conferenceService;
+
+    @Test
+    void joinCountsOfAllParticipantsComeFromOneQuery() {
+        when(userConferenceJoinRepository.countJoinsByConferenceId(CONFERENCE_ID))
+                .thenReturn(List.of(new UserJoinCount("alice", 2), new UserJoinCount("bob", 1)));
+
+        assertEquals(Map.of("alice", 2L, "bob", 1L), conferenceService.countJoins(CONFERENCE_ID));
+        verify(userConferenceJoinRepository, times(1)).countJoinsByConferenceId(CONFERENCE_ID);
+    }
+
+    @Test
+    void concurrentCallersShareTheQueryInFlight() throws Exception {
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        when(userConferenceJoinRepository.countJoinsByConferenceId(CONFERENCE_ID)).thenAnswer(invocation -> {
+            queryStarted.countDown();
+            release.get(5, TimeUnit.SECONDS);
+            return List.of(new UserJoinCount("alice", 1));
+        });
+        CompletableFuture<Map<String, Long>> first = new CompletableFuture<>();
+        CompletableFuture<Map<String, Long>> second = new CompletableFuture<>();
+        new Thread(() -> first.complete(conferenceService.countJoins(CONFERENCE_ID))).start();
+        assertTrue(queryStarted.await(5, TimeUnit.SECONDS));
+        Thread waiting = new Thread(() -> second.complete(conferenceService.countJoins(CONFERENCE_ID)));
+        waiting.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (waiting.getState() != Thread.State.WAITING) { // parked on the first caller's computation
+            assertTrue(System.nanoTime() < deadline, "second caller did not wait");
+            Thread.sleep(5);
+        }
+        release.complete(null);
+
+        assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        verify(userConferenceJoinRepository, times(1)).countJoinsByConferenceId(CONFERENCE_ID);
+
+        conferenceService.countJoins(CONFERENCE_ID); // finished -> a later caller sees later joins
+        verify(userConferenceJoinRepository, times(2)).countJoinsByConferenceId(CONFERENCE_ID);
+    }
+
+    @Test
+    void failedQueryIsNotKeptForLaterCallers() {
+        when(userConferenceJoinRepository.countJoinsByConferenceId(CONFERENCE_ID))
+                .thenThrow(new IllegalStateException("database is gone"))
+                .thenReturn(List.of());
+
+        assertThrows(IllegalStateException.class, () -> conferenceService.countJoins(CONFERENCE_ID));
+        assertEquals(Map.of(), conferenceService.countJoins(CONFERENCE_ID));
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.dto.conference.ActiveConference;
+import com.example.webConf.model.job.JobCheckpoint;
+import com.example.webConf.model.userJoinConference.ConferenceSessionEvent;
+import com.example.webConf.repository.JobCheckpointRepository;
+import com.example.webConf.repository.UserConferenceJoinRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/// The database is mocked, transactions are no-ops
+class ConferenceSessionServiceTest {
+    private static final String CONFERENCE_ID = "conf-1";
+    private static final Long USER_ID = 7L;
+    private static final int BATCH_SIZE = 2;
+
+    private UserConferenceJoinRepository userConferenceJoinRepository;
+    private JobCheckpointRepository checkpointRepository;
+    private JdbcTemplate jdbcTemplate;
+    private final List<Integer> logBatches = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        userConferenceJoinRepository = mock(UserConferenceJoinRepository.class);
+        checkpointRepository = mock(JobCheckpointRepository.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        doAnswer(invocation -> {
+            logBatches.add(invocation.<Collection<ConferenceSessionEvent>>getArgument(1).size());
+            return new int[0][];
+        }).when(jdbcTemplate).batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    @Test
+    void layoutMigrationRunsOnceUnderTheLock() {
+        when(checkpointRepository.existsById(ConferenceSessionService.COMPACTION_JOB_NAME)).thenReturn(false);
+
+        service("simple").init();
+
+        verify(jdbcTemplate).query(eq("SELECT pg_advisory_xact_lock(?)"), any(RowCallbackHandler.class), any(Object[].class));
+        verify(jdbcTemplate).update(startsWith("UPDATE user_conference_join"));
+        verify(jdbcTemplate).execute(startsWith("CREATE UNIQUE INDEX"));
+        ArgumentCaptor<JobCheckpoint> marker = ArgumentCaptor.forClass(JobCheckpoint.class);
+        verify(checkpointRepository).save(marker.capture());
+        assertEquals(ConferenceSessionService.COMPACTION_JOB_NAME, marker.getValue().getJobName());
+    }
+
+    @Test
+    void recordedMigrationIsNotRunAgain() {
+        when(checkpointRepository.existsById(ConferenceSessionService.COMPACTION_JOB_NAME)).thenReturn(true);
+
+        service("simple").init();
+
+        verify(jdbcTemplate, never()).update(anyString());
+        verify(jdbcTemplate, never()).execute(anyString());
+        verify(checkpointRepository, never()).save(any());
+    }
+
+    @Test
+    void migrationRunByAnotherInstanceWhileWaitingIsSkipped() {
+        when(checkpointRepository.existsById(ConferenceSessionService.COMPACTION_JOB_NAME)).thenReturn(false, true);
+
+        service("simple").init();
+
+        verify(jdbcTemplate).query(eq("SELECT pg_advisory_xact_lock(?)"), any(RowCallbackHandler.class), any(Object[].class));
+        verify(jdbcTemplate, never()).update(anyString());
+        verify(checkpointRepository, never()).save(any());
+    }
+
+    @Test
+    void countersFollowJoinsAndLeaves() {
+        ConferenceSessionService service = service("simple");
+        when(userConferenceJoinRepository.removeSession(CONFERENCE_ID, USER_ID)).thenReturn(1);
+
+        service.join(CONFERENCE_ID, USER_ID);
+        service.join(CONFERENCE_ID, USER_ID); // second tab
+        assertEquals(2, service.getSessions(CONFERENCE_ID, USER_ID));
+        assertTrue(service.isInConference(CONFERENCE_ID, USER_ID));
+
+        assertTrue(service.leave(CONFERENCE_ID, USER_ID));
+        assertEquals(1, service.getSessions(CONFERENCE_ID, USER_ID));
+        assertTrue(service.leave(CONFERENCE_ID, USER_ID));
+        assertEquals(0, service.getSessions(CONFERENCE_ID, USER_ID));
+        verify(userConferenceJoinRepository, never()).hasSession(CONFERENCE_ID, USER_ID); // answered from memory
+    }
+
+    @Test
+    void leaveWithoutSessionIsAnsweredFromMemoryOnASingleInstance() {
+        ConferenceSessionService service = service("simple");
+
+        assertFalse(service.leave(CONFERENCE_ID, USER_ID));
+
+        verifyNoInteractions(userConferenceJoinRepository);
+    }
+
+    @Test
+    void relayModeAsksTheTableForSessionsOfOtherInstances() {
+        ConferenceSessionService service = service("relay");
+        service.join(CONFERENCE_ID, USER_ID);
+        when(userConferenceJoinRepository.hasSession(CONFERENCE_ID, USER_ID)).thenReturn(false);
+        when(userConferenceJoinRepository.removeSession(CONFERENCE_ID, 8L)).thenReturn(1);
+
+        assertFalse(service.isInConference(CONFERENCE_ID, USER_ID)); // left through another instance
+        assertTrue(service.leave(CONFERENCE_ID, 8L)); // joined through another instance
+        verify(userConferenceJoinRepository).deleteIfNoSessions(CONFERENCE_ID, 8L);
+    }
+
+    @Test
+    void sessionLogIsWrittenInBatches() {
+        ConferenceSessionService service = service("simple");
+        when(userConferenceJoinRepository.removeSession(anyString(), any())).thenReturn(1);
+        for (long user = 1; user <= 3; user++) {
+            service.join(CONFERENCE_ID, user);
+        }
+        service.leave(CONFERENCE_ID, 1L);
+        service.join(CONFERENCE_ID, 4L);
+        assertTrue(logBatches.isEmpty(), "joins and leaves are only queued");
+
+        service.flushLog();
+
+        assertEquals(List.of(BATCH_SIZE, BATCH_SIZE, 1), logBatches);
+        service.flushLog();
+        assertEquals(3, logBatches.size(), "nothing left to write");
+    }
+
+    @Test
+    void activeConferencesAreCachedUntilTheUserJoinsOrLeaves() {
+        ConferenceSessionService service = service("simple");
+        List<ActiveConference> none = List.of();
+        when(userConferenceJoinRepository.findActiveConferencesByUserId(USER_ID)).thenReturn(none);
+        when(userConferenceJoinRepository.removeSession(CONFERENCE_ID, USER_ID)).thenReturn(1);
+
+        service.getActiveConferences(USER_ID);
+        service.getActiveConferences(USER_ID);
+        verify(userConferenceJoinRepository, times(1)).findActiveConferencesByUserId(USER_ID);
+
+        service.join(CONFERENCE_ID, USER_ID);
+        service.getActiveConferences(USER_ID);
+        verify(userConferenceJoinRepository, times(2)).findActiveConferencesByUserId(USER_ID);
+
+        service.join(CONFERENCE_ID, 8L); // another user -> still cached
+        service.getActiveConferences(USER_ID);
+        verify(userConferenceJoinRepository, times(2)).findActiveConferencesByUserId(USER_ID);
+
+        service.leave(CONFERENCE_ID, USER_ID);
+        service.getActiveConferences(USER_ID);
+        verify(userConferenceJoinRepository, times(3)).findActiveConferencesByUserId(USER_ID);
+    }
+
+    private ConferenceSessionService service(String brokerMode) {
+        return new ConferenceSessionService(userConferenceJoinRepository, checkpointRepository, jdbcTemplate,
+                new TransactionTemplate(new NoTransactionManager()), BATCH_SIZE, brokerMode);
+    }
+
+    private static class NoTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.service.cipher.AesGcmMessageCipher;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EncoderServiceTest {
+    private static final String PASSWORD = "qwertet23";
+    private static final String ALGORITHM = "PBEWithMD5AndDES";
+    private static final String SALT = "webConf-message-key";
+
+    /// Written by the Jasypt StandardPBEStringEncryptor that encrypted messages before AES-GCM (same password and algorithm)
+    private static final String LEGACY_CIPHER_TEXT = "DdZK7daeHrauXChJZcBcxELIEuV1NuV1nFTfeybum06Cy4VQ6lat1FtXA/64UdiF";
+    private static final String LEGACY_TEXT = "Hello from the old chat, привет!";
+
+    private final EncoderService aesGcm = new EncoderService(PASSWORD, ALGORITHM, "aes-gcm", SALT);
+
+    @Test
+    void newTextsAreVersionedAesGcm() {
+        String cipherText = aesGcm.encryptText("message");
+
+        assertTrue(cipherText.startsWith(AesGcmMessageCipher.PREFIX));
+        assertTrue(aesGcm.isCurrentFormat(cipherText));
+        assertEquals("message", aesGcm.decryptText(cipherText));
+    }
+
+    @Test
+    void oldJasyptRowsStillDecrypt() {
+        assertEquals(LEGACY_TEXT, aesGcm.decryptText(LEGACY_CIPHER_TEXT));
+        assertFalse(aesGcm.isCurrentFormat(LEGACY_CIPHER_TEXT));
+    }
+
+    @Test
+    void oldJasyptRowsAreReEncrypted() {
+        String reEncrypted = aesGcm.reEncrypt(LEGACY_CIPHER_TEXT);
+
+        assertTrue(reEncrypted.startsWith(AesGcmMessageCipher.PREFIX));
+        assertEquals(LEGACY_TEXT, aesGcm.decryptText(reEncrypted));
+    }
+
+    @Test
+    void jasyptEngineReadsBothFormats() {
+        EncoderService jasypt = new EncoderService(PASSWORD, ALGORITHM, "jasypt", SALT);
+
+        assertEquals(LEGACY_TEXT, jasypt.decryptText(LEGACY_CIPHER_TEXT));
+        assertEquals("message", jasypt.decryptText(aesGcm.encryptText("message")));
+        assertTrue(jasypt.isCurrentFormat(jasypt.encryptText("message")));
+    }
+
+    @Test
+    void mixedHistoryDecryptsInOrder() {
+        List<String> cipherTexts = new ArrayList<>();
+        for (int i = 0; i < 40; i++) { // above the parallel threshold
+            cipherTexts.add(i % 2 == 0 ? aesGcm.encryptText("message " + i) : LEGACY_CIPHER_TEXT);
+        }
+        List<String> texts = aesGcm.decryptAll(cipherTexts);
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i % 2 == 0 ? "message " + i : LEGACY_TEXT, texts.get(i));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.webConf.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HmacSignerTest {
+    private final HmacSigner signer = new HmacSigner("test-secret", "simple");
+
+    @Test
+    void signatureVerifiesForItsPurposeOnly() {
+        String signature = signer.sign(HmacSigner.Purpose.CHAT_ACCESS_TOKEN, "1\n7\n1700000000");
+
+        assertTrue(signer.verify(HmacSigner.Purpose.CHAT_ACCESS_TOKEN, "1\n7\n1700000000", signature));
+        assertFalse(signer.verify(HmacSigner.Purpose.ATTACHMENT_URL, "1\n7\n1700000000", signature));
+        assertNotEquals(signature, signer.sign(HmacSigner.Purpose.ATTACHMENT_URL, "1\n7\n1700000000"));
+    }
+
+    @Test
+    void changedPayloadOrMissingSignatureIsRejected() {
+        String signature = signer.sign(HmacSigner.Purpose.ATTACHMENT_URL, "view\n5");
+
+        assertFalse(signer.verify(HmacSigner.Purpose.ATTACHMENT_URL, "view\n6", signature));
+        assertFalse(signer.verify(HmacSigner.Purpose.ATTACHMENT_URL, "view\n5", null));
+    }
+
+    @Test
+    void sameSecretSignsTheSameOnEveryInstance() {
+        HmacSigner other = new HmacSigner("test-secret", "relay");
+
+        assertTrue(other.verify(HmacSigner.Purpose.ATTACHMENT_URL, "view\n5", signer.sign(HmacSigner.Purpose.ATTACHMENT_URL, "view\n5")));
+    }
+
+    @Test
+    void emptySecretIsRandomPerStartOnASingleInstance() {
+        HmacSigner first = new HmacSigner("", "simple");
+        HmacSigner second = new HmacSigner(null, "simple");
+
+        assertFalse(second.verify(HmacSigner.Purpose.ATTACHMENT_URL, "view\n5", first.sign(HmacSigner.Purpose.ATTACHMENT_URL, "view\n5")));
+    }
+
+    @Test
+    void emptySecretIsRefusedInRelayMode() {
+        assertThrows(IllegalStateException.class, () -> new HmacSigner("", "relay"));
+        assertThrows(IllegalStateException.class, () -> new HmacSigner(" ", "RELAY"));
+        assertDoesNotThrow(() -> new HmacSigner("shared-secret", "relay"));
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.model.chat.Chat;
+import com.example.webConf.model.chat.Message;
+import com.example.webConf.model.user.UserEntity;
+import com.example.webConf.repository.MessageRepository;
+import com.example.webConf.service.AttachmentService;
+import org.hibernate.collection.spi.PersistentBag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class MessageServiceImplTest {
+    @Mock
+    private MessageRepository messageRepository;
+    @Mock
+    private AttachmentService attachmentService;
+    @Mock
+    private MessageTextCache messageTextCache;
+    @Mock
+    private RecentMessageBuffer recentMessageBuffer;
+    @InjectMocks
+    private MessageServiceImpl messageService;
+
+    @Test
+    void messageOfAChatWithUnloadedHistoryIsDeleted() throws Exception {
+        UserEntity author = new UserEntity();
+        author.setMessages(new PersistentBag<>()); // lazy, never loaded
+        Chat chat = new Chat();
+        chat.setId(5L);
+        chat.setMessages(new PersistentBag<>());
+        Message message = Message.builder().id(1L).chat(chat).user(author).fileId(9L).build();
+
+        messageService.deleteMessage(message, chat);
+
+        verify(attachmentService).deleteAttachment(5L, 9L);
+        verify(messageRepository).delete(message);
+        verify(messageTextCache).invalidate(1L);
+        verify(recentMessageBuffer).invalidate(5L);
+    }
+
+    @Test
+    void loadedHistoryLosesTheMessage() {
+        Chat chat = new Chat();
+        chat.setId(5L);
+        Message message = Message.builder().id(1L).chat(chat).build();
+        chat.setMessages(new ArrayList<>(List.of(message)));
+
+        messageService.deleteMessage(message, chat);
+
+        assertTrue(chat.getMessages().isEmpty());
+        verify(messageRepository).delete(message);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.config.message.MessageType;
+import com.example.webConf.model.chat.Message;
+import com.example.webConf.service.MessageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/// The "message" table is the list of inserted ids, transactions are no-ops
+class MessageWriteBehindServiceTest {
+    private static final long FLUSH_INTERVAL_MS = 300;
+
+    private final List<Long> table = new CopyOnWriteArrayList<>();
+    private MessageWriteBehindService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        doAnswer(invocation -> {
+            ParameterizedPreparedStatementSetter<Object> setter = invocation.getArgument(3);
+            for (Object row : invocation.<Collection<Object>>getArgument(1)) {
+                PreparedStatement statement = mock(PreparedStatement.class);
+                setter.setValues(statement, row);
+                ArgumentCaptor<Long> id = ArgumentCaptor.forClass(Long.class);
+                verify(statement).setLong(eq(1), id.capture());
+                table.add(id.getValue());
+            }
+            return new int[0][];
+        }).when(jdbcTemplate).batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+
+        EncoderService encoderService = mock(EncoderService.class);
+        when(encoderService.encryptText(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        AtomicLong ids = new AtomicLong();
+        MessageIdAllocator idAllocator = mock(MessageIdAllocator.class);
+        when(idAllocator.nextId()).thenAnswer(invocation -> ids.incrementAndGet());
+
+        service = new MessageWriteBehindService(mock(MessageService.class), encoderService, idAllocator, mock(MessageTextCache.class),
+                mock(RecentMessageBuffer.class), jdbcTemplate, new TransactionTemplate(new NoTransactionManager()),
+                true, 100, 50, FLUSH_INTERVAL_MS, 50);
+        service.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void flushWaitsForTheBatchTheFlusherAlreadyTook() throws InterruptedException {
+        Message message = service.submit(message(), 1L, 7L, "alice");
+        // the background thread takes it and keeps collecting for FLUSH_INTERVAL_MS before writing
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (service.getStats().getQueueDepth() > 0) {
+            assertTrue(System.nanoTime() < deadline, "flusher did not take the message");
+            Thread.sleep(5);
+        }
+
+        service.flush();
+
+        assertTrue(table.contains(message.getId()), "message must be saved when flush() returns");
+    }
+
+    @Test
+    void flushWritesEverythingSubmittedBeforeIt() {
+        for (int i = 0; i < 120; i++) {
+            service.submit(message(), 1L, 7L, "alice");
+        }
+
+        service.flush();
+
+        assertEquals(120, table.size());
+    }
+
+    private static Message message() {
+        Message message = new Message("hello");
+        message.setType(MessageType.CHAT);
+        return message;
+    }
+
+    private static class NoTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
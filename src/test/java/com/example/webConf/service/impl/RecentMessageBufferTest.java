@@ -0,0 +1,141 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.config.message.MessageType;
+import com.example.webConf.dto.message.MessagePage;
+import com.example.webConf.dto.message.MessageView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecentMessageBufferTest {
+    private static final Long CHAT_ID = 1L;
+    private static final int CAPACITY = 4;
+
+    private final RecentMessageBuffer buffer = new RecentMessageBuffer(new ObjectMapper(), true, CAPACITY, 512, 1 << 20, 10, "simple");
+
+    @Test
+    void lowerIdArrivingLaterIsPutInItsPlace() {
+        load(List.of(), false);
+        buffer.append(CHAT_ID, message(10));
+        buffer.append(CHAT_ID, message(12));
+        buffer.append(CHAT_ID, message(11)); // other sender's id block, committed later
+
+        assertEquals(List.of(10L, 11L, 12L), ids(newestPage(CAPACITY)));
+        assertEquals(3, buffer.getStats().getAppends());
+        assertEquals(0, buffer.getStats().getInvalidations());
+    }
+
+    @Test
+    void alreadyBufferedIdIsSkipped() {
+        load(List.of(message(1), message(2)), false);
+        buffer.append(CHAT_ID, message(2));
+
+        assertEquals(List.of(1L, 2L), ids(newestPage(CAPACITY)));
+    }
+
+    @Test
+    void fullRingDropsTheOldestMessage() {
+        load(List.of(message(1), message(2), message(3), message(4)), false);
+        buffer.append(CHAT_ID, message(6));
+        buffer.append(CHAT_ID, message(5));
+
+        MessagePage page = newestPage(CAPACITY);
+        assertEquals(List.of(3L, 4L, 5L, 6L), ids(page));
+        assertTrue(page.isHasMore());
+    }
+
+    @Test
+    void idOlderThanTheBufferedHistoryIsLeftToTheTable() {
+        load(List.of(message(5), message(6)), true);
+        buffer.append(CHAT_ID, message(3));
+
+        assertEquals(List.of(5L, 6L), ids(newestPage(2)));
+        assertEquals(0, buffer.getStats().getInvalidations());
+    }
+
+    @Test
+    void messagesAreServedFromTheBufferOnceLoaded() {
+        load(List.of(message(1)), false);
+        buffer.append(CHAT_ID, message(2));
+
+        MessagePage page = newestPage(CAPACITY);
+        assertEquals(List.of(1L, 2L), ids(page));
+        assertFalse(page.isHasMore());
+        assertEquals(1, buffer.getStats().getHits());
+    }
+
+    @Test
+    void appendInsideATransactionWaitsForTheCommit() {
+        load(List.of(message(1)), false);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            buffer.append(CHAT_ID, message(2));
+
+            assertEquals(List.of(1L), ids(newestPage(CAPACITY)));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(List.of(1L, 2L), ids(newestPage(CAPACITY)));
+    }
+
+    @Test
+    void rolledBackAppendIsNeverBuffered() {
+        load(List.of(message(1)), false);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            buffer.append(CHAT_ID, message(2));
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(List.of(1L), ids(newestPage(CAPACITY)));
+        assertEquals(0, buffer.getStats().getAppends());
+    }
+
+    @Test
+    void failedLoadLeavesNoRingBehind() {
+        assertThrows(IllegalStateException.class, () -> buffer.newestPage(CHAT_ID, CAPACITY, size -> {
+            throw new IllegalStateException("database is gone");
+        }));
+
+        assertEquals(0, buffer.getStats().getChats());
+        assertEquals(1, buffer.getStats().getInvalidations());
+        load(List.of(message(1)), false); // the slab went back to the pool
+        assertEquals(List.of(1L), ids(newestPage(CAPACITY)));
+        assertEquals(1, buffer.getStats().getAllocatedSlabs());
+    }
+
+    private void load(List<MessageView> messages, boolean hasMore) {
+        buffer.newestPage(CHAT_ID, CAPACITY, size -> MessagePage.builder()
+                .messages(new ArrayList<>(messages))
+                .hasMore(hasMore)
+                .build());
+    }
+
+    private MessagePage newestPage(int size) {
+        return buffer.newestPage(CHAT_ID, size, ignored -> {
+            throw new AssertionError("page must come from the buffer");
+        });
+    }
+
+    private static List<Long> ids(MessagePage page) {
+        return page.getMessages().stream().map(MessageView::getId).toList();
+    }
+
+    private static MessageView message(long id) {
+        return new MessageView(id, "message " + id, "author", "2024-01-01 10:00", MessageType.CHAT, null, null, null, null);
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.webConf.service.impl;
+
+import com.example.webConf.config.exception.UploadException;
+import com.example.webConf.model.attachment.StorageUsage;
+import com.example.webConf.repository.StorageUsageRepository;
+import com.example.webConf.repository.UserEntityRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/// Quota charging against a storage_usage table kept in a map, add / addWithinQuota behave like their SQL statements
+class StorageQuotaServiceTest {
+    private static final long USER_QUOTA = 1000;
+    private static final long CHAT_QUOTA = 500;
+
+    private final Map<StorageUsage.Key, long[]> usage = new ConcurrentHashMap<>();
+    private final StorageUsageRepository repository = mock(StorageUsageRepository.class);
+    private StorageQuotaService service;
+
+    @BeforeEach
+    void setUp() {
+        when(repository.addWithinQuota(anyString(), anyLong(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            long[] row = usage.get(key(invocation.getArgument(0), invocation.getArgument(1)));
+            long bytes = invocation.getArgument(2);
+            synchronized (row) { // the row lock of the UPDATE
+                if (row[0] + bytes > invocation.<Long>getArgument(3)) {
+                    return 0;
+                }
+                row[0] += bytes;
+                row[1]++;
+                return 1;
+            }
+        });
+        doAnswer(invocation -> {
+            long[] row = usage.computeIfAbsent(key(invocation.getArgument(0), invocation.getArgument(1)), k -> new long[2]);
+            synchronized (row) {
+                row[0] = Math.max(0, row[0] + invocation.<Long>getArgument(2));
+                row[1] = Math.max(0, row[1] + invocation.<Long>getArgument(3));
+            }
+            return null;
+        }).when(repository).add(anyString(), anyLong(), anyLong(), anyLong());
+        when(repository.findById(any())).thenAnswer(invocation -> Optional.ofNullable(usage.get(invocation.<StorageUsage.Key>getArgument(0)))
+                .map(row -> StorageUsage.builder().bytes(row[0]).files(row[1]).build()));
+
+        service = new StorageQuotaService(repository, mock(UserEntityRepository.class), mock(TransactionTemplate.class), USER_QUOTA, CHAT_QUOTA);
+    }
+
+    @Test
+    void chargeCountsBytesAndFilesOfChatAndUser() {
+        service.charge(1L, 7L, 200);
+        service.charge(1L, 7L, 300);
+
+        assertEquals(500, bytes(StorageUsage.OwnerType.CHAT, 1L));
+        assertEquals(2, usage.get(new StorageUsage.Key(StorageUsage.OwnerType.CHAT, 1L))[1]);
+        assertEquals(500, bytes(StorageUsage.OwnerType.USER, 7L));
+    }
+
+    @Test
+    void chargeOverQuotaIsRejectedAndNotCounted() {
+        service.charge(1L, 7L, 400);
+
+        UploadException e = assertThrows(UploadException.class, () -> service.charge(1L, 7L, 101));
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, e.getStatus());
+        assertEquals(400, bytes(StorageUsage.OwnerType.CHAT, 1L));
+    }
+
+    @Test
+    void releaseMakesRoomAgain() {
+        service.charge(1L, 7L, 500);
+        service.release(1L, 7L, 500);
+
+        service.charge(1L, 7L, 500);
+        assertEquals(500, bytes(StorageUsage.OwnerType.CHAT, 1L));
+    }
+
+    @Test
+    void zeroQuotaIsUnlimited() {
+        StorageQuotaService unlimited = new StorageQuotaService(repository, mock(UserEntityRepository.class), mock(TransactionTemplate.class), 0, 0);
+        unlimited.charge(1L, 7L, 10_000);
+
+        assertEquals(10_000, bytes(StorageUsage.OwnerType.CHAT, 1L));
+    }
+
+    @Test
+    void concurrentChargesNeverExceedTheQuota() throws Exception {
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        service.charge(1L, null, 30);
+                        accepted.incrementAndGet();
+                    } catch (UploadException ignored) {
+                        // over quota
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(CHAT_QUOTA / 30, accepted.get());
+        assertEquals(CHAT_QUOTA / 30 * 30, bytes(StorageUsage.OwnerType.CHAT, 1L));
+    }
+
+    private long bytes(StorageUsage.OwnerType type, Long ownerId) {
+        return usage.get(new StorageUsage.Key(type, ownerId))[0];
+    }
+
+    private static StorageUsage.Key key(String type, Long ownerId) {
+        return new StorageUsage.Key(StorageUsage.OwnerType.valueOf(type), ownerId);
+    }
+}
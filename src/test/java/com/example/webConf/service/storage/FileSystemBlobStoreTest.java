@@ -0,0 +1,214 @@
+package com.example.webConf.service.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/// Which resource a blob is served from (plain blobs as their file, encrypted ones through the decrypting stream) and
+/// chunked upload parts, which are encrypted as they arrive when encryption is on
+class FileSystemBlobStoreTest {
+    private static final byte[] CONTENT = "attachment content".getBytes(StandardCharsets.UTF_8);
+    private static final String KEY = Base64.getEncoder().encodeToString(new byte[32]);
+    private static final int SEGMENT_SIZE = 4096;
+    private static final String UPLOAD_ID = UUID.randomUUID().toString();
+
+    @TempDir
+    Path root;
+
+    @Test
+    void plainBlobIsServedAsItsFile() throws IOException {
+        FileSystemBlobStore store = store(false);
+        String key = put(store);
+
+        Resource resource = store.get(key);
+        assertInstanceOf(FileSystemResource.class, resource);
+        assertArrayEquals(CONTENT, Files.readAllBytes(resource.getFile().toPath()));
+    }
+
+    @Test
+    void plainBlobStaysAFileAfterEncryptionIsSwitchedOn() throws IOException {
+        String key = put(store(false));
+
+        assertInstanceOf(FileSystemResource.class, store(true).get(key));
+    }
+
+    @Test
+    void encryptedBlobIsStreamed() throws IOException {
+        FileSystemBlobStore store = store(true);
+        String key = put(store);
+
+        Resource resource = store.get(key);
+        assertInstanceOf(EncryptedBlobResource.class, resource);
+        assertEquals(CONTENT.length, resource.contentLength());
+        assertThrows(FileNotFoundException.class, resource::getFile);
+        try (InputStream in = resource.getInputStream()) {
+            assertArrayEquals(CONTENT, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void encryptedPartIsNeverPlainAndIsStagedInPlace() throws Exception {
+        FileSystemBlobStore store = store(true);
+        byte[] content = content(3 * SEGMENT_SIZE + 100);
+        int chunk = SEGMENT_SIZE + 1000; // part boundaries inside segments
+        for (int offset = 0; offset < content.length; offset += chunk) {
+            int length = Math.min(chunk, content.length - offset);
+            assertEquals(offset + length, store.writePart(UPLOAD_ID, offset, new ByteArrayInputStream(content, offset, length), chunk));
+            assertFalse(containsPlainBytes(Files.readAllBytes(partFile()), content));
+        }
+        assertEquals(content.length, store.partLength(UPLOAD_ID));
+
+        BlobStore.StagedBlob blob = store.stagePart(UPLOAD_ID);
+        assertEquals(partFile(), blob.file()); // sealed in place, no encrypted copy
+        assertEquals(sha256(content), blob.key());
+        assertEquals(content.length, blob.size());
+        store.commit(blob);
+        assertFalse(Files.exists(partFile()));
+        assertArrayEquals(content, readAll(store.get(blob.key())));
+    }
+
+    @Test
+    void resentEncryptedPartReplacesTheTail() throws Exception {
+        FileSystemBlobStore store = store(true);
+        byte[] first = content(2 * SEGMENT_SIZE);
+        byte[] resent = content(SEGMENT_SIZE);
+        int offset = SEGMENT_SIZE + 300;
+        store.writePart(UPLOAD_ID, 0, new ByteArrayInputStream(first), first.length);
+
+        assertEquals(offset + resent.length, store.writePart(UPLOAD_ID, offset, new ByteArrayInputStream(resent), resent.length));
+
+        byte[] expected = new byte[offset + resent.length];
+        System.arraycopy(first, 0, expected, 0, offset);
+        System.arraycopy(resent, 0, expected, offset, resent.length);
+        assertArrayEquals(expected, readAll(store.get(stageAndCommit(store))));
+    }
+
+    @Test
+    void bytesOfADroppedEncryptedPartAreKept() throws Exception {
+        FileSystemBlobStore store = store(true);
+        byte[] content = content(SEGMENT_SIZE + 500);
+        InputStream dropped = new SequenceInputStream(new ByteArrayInputStream(content), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        });
+
+        assertThrows(IOException.class, () -> store.writePart(UPLOAD_ID, 0, dropped, 2 * SEGMENT_SIZE));
+        assertEquals(content.length, store.partLength(UPLOAD_ID));
+        assertArrayEquals(content, readAll(store.get(stageAndCommit(store))));
+    }
+
+    @Test
+    void oversizedEncryptedPartIsDropped() throws Exception {
+        FileSystemBlobStore store = store(true);
+        byte[] content = content(SEGMENT_SIZE + 10);
+        store.writePart(UPLOAD_ID, 0, new ByteArrayInputStream(content), content.length);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> store.writePart(UPLOAD_ID, 10, new ByteArrayInputStream(content(SEGMENT_SIZE)), SEGMENT_SIZE - 1));
+        assertEquals(10, store.partLength(UPLOAD_ID));
+    }
+
+    @Test
+    void completionCanBeRetried() throws Exception {
+        FileSystemBlobStore store = store(true);
+        byte[] content = content(SEGMENT_SIZE + 10);
+        store.writePart(UPLOAD_ID, 0, new ByteArrayInputStream(content), content.length);
+
+        store.stagePart(UPLOAD_ID); // sealed, then e.g. the quota check failed before commit
+        BlobStore.StagedBlob blob = store.stagePart(UPLOAD_ID);
+
+        assertEquals(sha256(content), blob.key());
+        assertArrayEquals(content, readAll(store.get(commit(store, blob))));
+    }
+
+    @Test
+    void plainPartStartedBeforeEncryptionIsStagedEncrypted() throws Exception {
+        byte[] content = content(SEGMENT_SIZE + 10);
+        store(false).writePart(UPLOAD_ID, 0, new ByteArrayInputStream(content), content.length);
+
+        FileSystemBlobStore store = store(true);
+        assertEquals(content.length, store.partLength(UPLOAD_ID));
+        String key = stageAndCommit(store);
+
+        assertEquals(sha256(content), key);
+        assertInstanceOf(EncryptedBlobResource.class, store.get(key));
+        assertArrayEquals(content, readAll(store.get(key)));
+    }
+
+    private FileSystemBlobStore store(boolean encrypted) throws IOException {
+        return new FileSystemBlobStore(root.toString(), new SegmentedBlobCipher(encrypted, KEY, SEGMENT_SIZE, "unused", "unused"));
+    }
+
+    private Path partFile() {
+        return root.resolve("parts").resolve(UPLOAD_ID + ".part");
+    }
+
+    private static String stageAndCommit(FileSystemBlobStore store) throws IOException {
+        return commit(store, store.stagePart(UPLOAD_ID));
+    }
+
+    private static String commit(FileSystemBlobStore store, BlobStore.StagedBlob blob) throws IOException {
+        store.commit(blob);
+        return blob.key();
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        new Random().nextBytes(content);
+        return content;
+    }
+
+    private static byte[] readAll(Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    /// Any 32 byte run of the plain content in the file
+    private static boolean containsPlainBytes(byte[] file, byte[] content) {
+        for (int start = 0; start + 32 <= content.length; start += 32) {
+            byte[] run = Arrays.copyOfRange(content, start, start + 32);
+            for (int i = 0; i + run.length <= file.length; i++) {
+                if (Arrays.equals(file, i, i + run.length, run, 0, run.length)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String sha256(byte[] content) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+
+    private static String put(FileSystemBlobStore store) throws IOException {
+        BlobStore.StagedBlob blob = store.stage(new ByteArrayInputStream(CONTENT));
+        store.commit(blob);
+        return blob.key();
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.webConf.service.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/// SegmentedBlobCipher and EncryptedBlobResource on real files, with small segments so every blob spans several of them
+class SegmentedBlobCipherTest {
+    private static final int SEGMENT_SIZE = 64;
+    private static final int ENCRYPTED_SEGMENT = SEGMENT_SIZE + SegmentedBlobCipher.TAG_LENGTH;
+
+    private final SegmentedBlobCipher cipher = new SegmentedBlobCipher(true,
+            Base64.getEncoder().encodeToString(new byte[32]), SEGMENT_SIZE, "unused", "unused");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void encryptedBlobReadsBackAsItsPlainContent() throws IOException {
+        byte[] content = content(3 * SEGMENT_SIZE + 10);
+        Path file = encrypt(content);
+
+        Resource resource = cipher.open(file);
+        assertInstanceOf(EncryptedBlobResource.class, resource);
+        assertEquals(content.length, resource.contentLength());
+        assertArrayEquals(content, readAll(resource));
+    }
+
+    @Test
+    void contentOfWholeSegmentsReadsBack() throws IOException {
+        byte[] content = content(2 * SEGMENT_SIZE);
+
+        Resource resource = cipher.open(encrypt(content));
+        assertEquals(content.length, resource.contentLength());
+        assertArrayEquals(content, readAll(resource));
+    }
+
+    @Test
+    void rangeAcrossASegmentBoundaryIsReadAfterSkip() throws IOException {
+        byte[] content = content(4 * SEGMENT_SIZE);
+        Resource resource = cipher.open(encrypt(content));
+
+        try (InputStream in = resource.getInputStream()) {
+            long start = 2 * SEGMENT_SIZE - 20;
+            assertEquals(start, in.skip(start));
+            assertArrayEquals(Arrays.copyOfRange(content, (int) start, (int) start + 40), in.readNBytes(40));
+        }
+    }
+
+    @Test
+    void tamperedSegmentFailsAuthentication() throws IOException {
+        Path file = encrypt(content(3 * SEGMENT_SIZE));
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[SegmentedBlobCipher.HEADER_LENGTH + ENCRYPTED_SEGMENT + 5] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> readAll(cipher.open(file)));
+    }
+
+    @Test
+    void truncatedBlobFails() throws IOException {
+        Path file = encrypt(content(3 * SEGMENT_SIZE));
+        byte[] bytes = Files.readAllBytes(file);
+        // the last segment cut off at a segment boundary: the one before it was not encrypted as the last one
+        Files.write(file, Arrays.copyOf(bytes, SegmentedBlobCipher.HEADER_LENGTH + 2 * ENCRYPTED_SEGMENT));
+
+        assertThrows(IOException.class, () -> readAll(cipher.open(file)));
+    }
+
+    @Test
+    void reorderedSegmentsFail() throws IOException {
+        Path file = encrypt(content(3 * SEGMENT_SIZE));
+        byte[] bytes = Files.readAllBytes(file);
+        int first = SegmentedBlobCipher.HEADER_LENGTH;
+        int second = first + ENCRYPTED_SEGMENT;
+        byte[] swapped = bytes.clone();
+        System.arraycopy(bytes, second, swapped, first, ENCRYPTED_SEGMENT);
+        System.arraycopy(bytes, first, swapped, second, ENCRYPTED_SEGMENT);
+        Files.write(file, swapped);
+
+        assertThrows(IOException.class, () -> readAll(cipher.open(file)));
+    }
+
+    @Test
+    void plainBlobIsReadAsItIs() throws IOException {
+        byte[] content = content(3 * SEGMENT_SIZE);
+        Path file = Files.write(dir.resolve("plain"), content);
+
+        Resource resource = cipher.open(file);
+        assertInstanceOf(FileSystemResource.class, resource);
+        assertArrayEquals(content, readAll(resource));
+    }
+
+    @Test
+    void plainBlobStartingWithTheMagicIsReadAsItIs() throws IOException {
+        byte[] content = Arrays.copyOf("WCB1".getBytes(StandardCharsets.US_ASCII), 2 * SEGMENT_SIZE);
+        Path file = Files.write(dir.resolve("magic"), content);
+
+        assertArrayEquals(content, readAll(cipher.open(file)));
+    }
+
+    private Path encrypt(byte[] content) throws IOException {
+        Path file = dir.resolve("blob");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            assertEquals(content.length, cipher.encrypt(new ByteArrayInputStream(content), out));
+        }
+        return file;
+    }
+
+    private static byte[] readAll(Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+}